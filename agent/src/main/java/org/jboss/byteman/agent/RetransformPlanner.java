@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+package org.jboss.byteman.agent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * index of the classes loaded at the time of a rule upload or unload which is used to identify the
+ * classes which need to be retransformed. loaded classes are indexed by name, by package-less name
+ * and by the name of each direct superclass and interface. the classes affected by a set of rule
+ * scripts can then be computed by looking up each script's target and, for override and interface
+ * rules, walking down the subtype graph from there. only the name index is built up front. the
+ * package-less name index and the subtype index are built on first use since they are only needed
+ * for scripts with package-less targets and for scripts which require a walk. the subsequent lookups are proportional to the
+ * number of candidate classes rather than the number of loaded classes. candidates are a superset of the classes which
+ * actually match so callers must still check each candidate against the relevant scripts.
+ *
+ * n.b. a planner is built from a fresh list of loaded classes for each upload so building the name index is still
+ * proportional to the number of loaded classes. what it saves is running the much more expensive hierarchy match
+ * against every one of them. the index is not maintained incrementally because the transformer is notified of a class
+ * load before the Class object exists, so it has nothing it could add to the index.
+ */
+public class RetransformPlanner
+{
+    /**
+     * loaded classes indexed by name. there may be more than one class with a given name if it has
+     * been loaded by different class loaders
+     */
+    private final Map<String, List<Class<?>>> classesByName;
+
+    /**
+     * loaded classes indexed by name without package prefix or null if the index has not yet been built
+     */
+    private Map<String, List<Class<?>>> classesBySimpleName;
+
+    /**
+     * loaded classes indexed by the name of their direct superclass and of each of their direct
+     * interfaces or null if the index has not yet been built
+     */
+    private Map<String, List<Class<?>>> subtypesByName;
+
+    /**
+     * the classes which have been indexed
+     */
+    private final List<Class<?>> indexed;
+
+    /**
+     * create a planner indexing the supplied classes
+     * @param loaded the currently loaded classes
+     */
+    public RetransformPlanner(Class<?>[] loaded)
+    {
+        classesByName = new HashMap<String, List<Class<?>>>((loaded.length * 4) / 3 + 1);
+        classesBySimpleName = null;
+        subtypesByName = null;
+        indexed = new ArrayList<Class<?>>(loaded.length);
+
+        for (Class<?> clazz : loaded) {
+            // arrays and primitives are never transformed and never appear as supertypes
+            if (clazz.isArray() || clazz.isPrimitive()) {
+                continue;
+            }
+            indexed.add(clazz);
+            addEntry(classesByName, clazz.getName(), clazz);
+        }
+    }
+
+    /**
+     * return the loaded classes whose names are in the supplied collection
+     * @param names the class names to look up
+     * @return the set of loaded classes with any of those names
+     */
+    public Set<Class<?>> classesNamed(Collection<String> names)
+    {
+        Set<Class<?>> result = new LinkedHashSet<Class<?>>();
+        for (String name : names) {
+            addAll(result, classesByName.get(name));
+        }
+        return result;
+    }
+
+    /**
+     * return the loaded classes which might be matched by any of the supplied rule scripts. this
+     * includes every class whose name or package-less name is a script target and, where a script
+     * targets an interface or overriding methods, every loaded subtype of such a class.
+     * @param ruleScripts the scripts to be matched
+     * @return the set of candidate classes
+     */
+    public Set<Class<?>> candidatesFor(Collection<RuleScript> ruleScripts)
+    {
+        Set<Class<?>> result = new LinkedHashSet<Class<?>>();
+        // targets which need their subtypes included, collected so each one is only walked once
+        Set<Class<?>> roots = new HashSet<Class<?>>();
+
+        for (RuleScript ruleScript : ruleScripts) {
+            String target = ruleScript.getTargetClass();
+            boolean walk = ruleScript.isInterface() || ruleScript.isOverride();
+            addTargets(result, roots, classesByName.get(target), walk);
+            if (target.indexOf('.') < 0) {
+                addTargets(result, roots, getSimpleNameIndex().get(target), walk);
+            }
+        }
+
+        if (roots.isEmpty()) {
+            return result;
+        }
+
+        // walk down the subtype graph from each root adding every class we find
+
+        Map<String, List<Class<?>>> subtypesByName = getSubtypeIndex();
+        Set<Class<?>> visited = new HashSet<Class<?>>(roots);
+        List<Class<?>> toVisit = new ArrayList<Class<?>>(roots);
+
+        while (!toVisit.isEmpty()) {
+            Class<?> next = toVisit.remove(toVisit.size() - 1);
+            List<Class<?>> subtypes = subtypesByName.get(next.getName());
+            if (subtypes == null) {
+                continue;
+            }
+            for (Class<?> subtype : subtypes) {
+                if (visited.add(subtype)) {
+                    result.add(subtype);
+                    toVisit.add(subtype);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private Map<String, List<Class<?>>> getSimpleNameIndex()
+    {
+        if (classesBySimpleName == null) {
+            classesBySimpleName = new HashMap<String, List<Class<?>>>((indexed.size() * 4) / 3 + 1);
+            for (Class<?> clazz : indexed) {
+                String name = clazz.getName();
+                int lastDot = name.lastIndexOf('.');
+                if (lastDot >= 0) {
+                    addEntry(classesBySimpleName, name.substring(lastDot + 1), clazz);
+                }
+            }
+        }
+        return classesBySimpleName;
+    }
+
+    private Map<String, List<Class<?>>> getSubtypeIndex()
+    {
+        if (subtypesByName == null) {
+            subtypesByName = new HashMap<String, List<Class<?>>>((indexed.size() * 4) / 3 + 1);
+            for (Class<?> clazz : indexed) {
+                Class<?> superClazz = clazz.getSuperclass();
+                if (superClazz != null) {
+                    addEntry(subtypesByName, superClazz.getName(), clazz);
+                }
+                for (Class<?> interfaze : clazz.getInterfaces()) {
+                    addEntry(subtypesByName, interfaze.getName(), clazz);
+                }
+            }
+        }
+        return subtypesByName;
+    }
+
+    private static void addTargets(Set<Class<?>> result, Set<Class<?>> roots, List<Class<?>> targets, boolean walk)
+    {
+        if (targets == null) {
+            return;
+        }
+        result.addAll(targets);
+        if (walk) {
+            roots.addAll(targets);
+        }
+    }
+
+    private static void addAll(Set<Class<?>> result, List<Class<?>> classes)
+    {
+        if (classes != null) {
+            result.addAll(classes);
+        }
+    }
+
+    private static void addEntry(Map<String, List<Class<?>>> map, String name, Class<?> clazz)
+    {
+        List<Class<?>> entry = map.get(name);
+        if (entry == null) {
+            entry = new ArrayList<Class<?>>(1);
+            map.put(name, entry);
+        }
+        entry.add(clazz);
+    }
+}
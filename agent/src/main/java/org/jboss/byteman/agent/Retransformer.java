@@ -25,11 +25,12 @@ package org.jboss.byteman.agent;
 
 import java.io.PrintWriter;
 import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.jar.JarFile;
 
 import org.jboss.byteman.modules.ModuleSystem;
@@ -39,8 +40,9 @@ import org.jboss.byteman.modules.ModuleSystem;
  */
 public class Retransformer extends Transformer {
 
-    private Set<String> sysJars = new HashSet<String>();  // jar files that were loaded in the sys CL
-    private Set<String> bootJars = new HashSet<String>(); // jar files that were loaded in the boot CL
+    // n.b. these may be listed by one listener worker while another is appending a jar
+    private Set<String> sysJars = new CopyOnWriteArraySet<String>();  // jar files that were loaded in the sys CL
+    private Set<String> bootJars = new CopyOnWriteArraySet<String>(); // jar files that were loaded in the boot CL
 
     /**
      * constructor allowing this transformer to be provided with access to the JVM's instrumentation
@@ -63,8 +65,8 @@ public class Retransformer extends Transformer {
     public void installScript(List<String> scriptTexts, List<String> scriptNames, PrintWriter out) throws Exception
     {
         int length = scriptTexts.size();
-        List<RuleScript> toBeAdded = new LinkedList<RuleScript>();
-        List<RuleScript> toBeRemoved = new LinkedList<RuleScript>();
+        List<RuleScript> toBeAdded = new ArrayList<RuleScript>();
+        List<RuleScript> toBeRemoved = new ArrayList<RuleScript>();
 
         for (int i = 0; i < length ; i++) {
             String scriptText = scriptTexts.get(i);
@@ -74,18 +76,24 @@ public class Retransformer extends Transformer {
             toBeAdded.addAll(ruleScripts);
         }
 
+        // parse the new rules up front so that injecting them into each matching class reuses the
+        // parse tree stored on the script rather than parsing the rule text again
+
+        if (isEagerLoad()) {
+            RulePreparer.parse(toBeAdded);
+        }
+
+        // hold the rules back until all the classes they affect have been retransformed
+
         for (RuleScript ruleScript : toBeAdded) {
-            String name = ruleScript.getName();
-            String className = ruleScript.getTargetClass();
-            String baseName = null;
-            int lastDotIdx = className.lastIndexOf('.');
-            if (lastDotIdx >= 0) {
-                baseName = className.substring(lastDotIdx + 1);
-            }
+            ruleScript.setActive(false);
+        }
 
-            RuleScript previous;
+        List<RuleScript> previousScripts = scriptRepository.addScripts(toBeAdded);
 
-            previous = scriptRepository.addScript(ruleScript);
+        for (int i = 0; i < toBeAdded.size(); i++) {
+            String name = toBeAdded.get(i).getName();
+            RuleScript previous = previousScripts.get(i);
             if (previous != null) {
                 out.println("redefine rule " + name);
                 toBeRemoved.add(previous);
@@ -94,71 +102,148 @@ public class Retransformer extends Transformer {
             }
         }
 
-        // ok, now that we have updated the indexes we need to find all classes which match the scripts and
-        // retransform them
+        try {
+            // ok, now that we have updated the indexes we need to find all classes which match the scripts and
+            // retransform them
 
-        // list all class names for the to be aded and to be removed scripts
+            // list all class names for the to be aded and to be removed scripts
 
-        List<String> deletedClassNames = new LinkedList<String>();
+            Set<String> deletedClassNames = collectTransformedNames(toBeRemoved);
 
-        for (RuleScript ruleScript : toBeRemoved) {
-            List<Transform> transforms = ruleScript.getTransformed();
-            for (Transform transform : transforms) {
-                String className = transform.getInternalClassName();
-                if (!deletedClassNames.contains(className)) {
-                    deletedClassNames.add(className);
+            // for added scripts we have to transform anything which might be a match
+
+            ScriptRepository tmpRepository = new ScriptRepository(skipOverrideRules());
+            tmpRepository.addScripts(toBeAdded);
+
+            // now look for loaded classes whose names are in the deleted list or which match added rules.
+            // the planner lets us restrict the match checks to classes which are related to an added rule's
+            // target by name or by inheritance rather than checking every loaded class
+
+            RetransformPlanner planner = new RetransformPlanner(inst.getAllLoadedClasses());
+            List<Class<?>> transformed = new ArrayList<Class<?>>();
+
+            for (Class<?> clazz : planner.classesNamed(deletedClassNames)) {
+                if (!isSkipClass(clazz)) {
+                    transformed.add(clazz);
+                }
+            }
+
+            for (Class<?> clazz : planner.candidatesFor(toBeAdded)) {
+                if (isSkipClass(clazz) || deletedClassNames.contains(clazz.getName())) {
+                    continue;
                 }
+                if (tmpRepository.matchClass(clazz)) {
+                    transformed.add(clazz);
+                }
+            }
+
+            // retransform all classes whose rules have changed. the new rules only become live once
+            // every batch has been retransformed so that they start firing in all affected classes at once
+
+            retransform(transformed, out, "some rules may not have been correctly injected or uninjected!");
+        } finally {
+            for (RuleScript ruleScript : toBeAdded) {
+                ruleScript.setActive(true);
             }
         }
 
-        // for added scripts we have to transform anything which might be a match
+        // the retransformed classes are all loaded so we can prepare the injected rules straight away
 
-        ScriptRepository tmpRepository = new ScriptRepository(skipOverrideRules());
-        for (RuleScript ruleScript : toBeAdded) {
-            tmpRepository.addScript(ruleScript);
+        if (isEagerLoad()) {
+            RulePreparer.check(toBeAdded);
         }
 
-        // now look for loaded classes whose names are in the deleted list or which match added rules
+        // now we can safely purge keys for all deleted scripts
 
-        List<Class<?>> transformed = new LinkedList<Class<?>>();
+        for (RuleScript ruleScript : toBeRemoved) {
+            ruleScript.purge();
+        }
+    }
 
-        for (Class clazz : inst.getAllLoadedClasses()) {
-            if (isSkipClass(clazz)) {
-                continue;
-            }
-            if (deletedClassNames.contains(clazz.getName())) {
-                transformed.add(clazz);
-            } else if (tmpRepository.matchClass(clazz)) {
-                    transformed.add(clazz);
-            }
+    /**
+     * retransform a list of classes. if a batch size has been configured the classes are passed to
+     * the instrumentation in successive batches, optionally pausing between each one, so that no single
+     * retransformation holds the JVM at a safepoint for too long. progress is reported after each batch.
+     * @param transformed the classes to be retransformed
+     * @param out the writer used to report progress and errors
+     * @param warning the text used to describe the consequences of a VerifyError
+     * @throws Exception if the instrumentation refuses to retransform a class
+     */
+    private void retransform(List<Class<?>> transformed, PrintWriter out, String warning) throws Exception
+    {
+        int total = transformed.size();
+
+        if (total == 0) {
+            return;
         }
-        // retransform all classes whose rules have changed
-
-        if (!transformed.isEmpty()) {
-            Class<?>[] transformedArray = new Class<?>[transformed.size()];
-            transformed.toArray(transformedArray);
-            if (Transformer.isVerbose()) {
-                for (int i = 0; i < transformed.size(); i++) {
-                    System.out.println("retransforming " + transformedArray[i].getName());
-                }
+
+        if (Transformer.isVerbose()) {
+            for (Class<?> clazz : transformed) {
+                System.out.println("retransforming " + clazz.getName());
             }
+        }
+
+        int batchSize = getRetransformBatchSize();
+
+        if (batchSize <= 0 || batchSize > total) {
+            batchSize = total;
+        }
+
+        int done = 0;
+
+        while (done < total) {
+            int end = Math.min(done + batchSize, total);
+            Class<?>[] batch = new Class<?>[end - done];
+            transformed.subList(done, end).toArray(batch);
             synchronized(this) {
                 try {
-                    inst.retransformClasses(transformedArray);
+                    inst.retransformClasses(batch);
                 } catch(VerifyError ve) {
-                    System.out.println("Retransformer : VerifyError during retransformation : some rules may not have been correctly injected or uninjected!");
+                    System.out.println("Retransformer : VerifyError during retransformation : " + warning);
                     ve.printStackTrace();
-                    out.println("VerifyError during retransformation : some rules may not have been correctly injected or uninjected!");
+                    out.println("VerifyError during retransformation : " + warning);
                     ve.printStackTrace(out);
                 }
             }
+            done = end;
+            if (batchSize < total) {
+                // tell the client how far we have got before we start the next batch
+                out.println("retransformed " + done + " of " + total + " classes");
+                out.flush();
+                int pause = getRetransformBatchPause();
+                if (done < total && pause > 0) {
+                    try {
+                        Thread.sleep(pause);
+                    } catch (InterruptedException e) {
+                        // carry on with the next batch but preserve the interrupt
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
         }
+    }
 
-        // now we can safely purge keys for all deleted scripts
+    /**
+     * collect the names of all classes which have been transformed by any of a list of scripts
+     * @param ruleScripts the scripts whose transformed classes are wanted
+     * @return the set of transformed class names
+     */
+    private Set<String> collectTransformedNames(List<RuleScript> ruleScripts)
+    {
+        Set<String> classNames = new HashSet<String>();
 
-        for (RuleScript ruleScript : toBeRemoved) {
-            ruleScript.purge();
+        for (RuleScript ruleScript : ruleScripts) {
+            synchronized (ruleScript) {
+                List<Transform> transforms = ruleScript.getTransformed();
+                if (transforms != null) {
+                    for (Transform transform : transforms) {
+                        classNames.add(transform.getInternalClassName());
+                    }
+                }
+            }
         }
+
+        return classNames;
     }
 
     protected void collectAffectedNames(List<RuleScript> ruleScripts, List<String> classList, List<String> interfaceList,
@@ -206,16 +291,31 @@ public class Retransformer extends Transformer {
                         }
                     }
                 }
+                out.println("Metrics:");
+                ruleScript.getMetrics().writeTo(out);
             }
         }
     }
 
+    public void listMetrics(PrintWriter out)  throws Exception
+    {
+        Iterator<RuleScript> iterator = scriptRepository.currentRules().iterator();
+
+        while (iterator.hasNext()) {
+            RuleScript ruleScript = iterator.next();
+            out.print("RULE ");
+            out.println(ruleScript.getName());
+            ruleScript.getMetrics().writeTo(out);
+        }
+    }
+
     public void removeScripts(List<String> scriptTexts, PrintWriter out) throws Exception
     {
         List<RuleScript> toBeRemoved;
 
         if (scriptTexts != null) {
-            toBeRemoved = new LinkedList<RuleScript>();
+            toBeRemoved = new ArrayList<RuleScript>();
+            Set<RuleScript> found = new HashSet<RuleScript>();
             int length = scriptTexts.size();
             for (int i = 0; i < length ; i++) {
                 String scriptText = scriptTexts.get(i);
@@ -228,7 +328,7 @@ public class Retransformer extends Transformer {
                         if (ruleScript ==  null) {
                             out.print("ERROR failed to find loaded rule with name ");
                             out.println(name);
-                        } else if (toBeRemoved.contains(ruleScript)) {
+                        } else if (!found.add(ruleScript)) {
                             out.print("WARNING duplicate occurence for rule name ");
                             out.println(name);
                         } else {
@@ -259,50 +359,19 @@ public class Retransformer extends Transformer {
 
         // now look for loaded classes whose names are in the list
 
-        List<Class<?>> transformed = new LinkedList<Class<?>>();
-        List<String> deletedClassNames = new LinkedList<String>();
+        Set<String> deletedClassNames = collectTransformedNames(toBeRemoved);
+        RetransformPlanner planner = new RetransformPlanner(inst.getAllLoadedClasses());
+        List<Class<?>> transformed = new ArrayList<Class<?>>();
 
-        for (RuleScript ruleScript : toBeRemoved) {
-            List<Transform> transforms = ruleScript.getTransformed();
-            if (transforms != null) {
-                for (Transform transform : transforms) {
-                    String className = transform.getInternalClassName();
-                    if (!deletedClassNames.contains(className)) {
-                        deletedClassNames.add(className);
-                    }
-                }
-            }
-        }
-
-        for (Class clazz : inst.getAllLoadedClasses()) {
-            if (isSkipClass(clazz)) {
-                continue;
-            }
-
-            if (deletedClassNames.contains(clazz.getName())) {
+        for (Class<?> clazz : planner.classesNamed(deletedClassNames)) {
+            if (!isSkipClass(clazz)) {
                 transformed.add(clazz);
             }
         }
 
         // retransform all classes affected by the change
 
-        if (!transformed.isEmpty()) {
-            Class<?>[] transformedArray = new Class<?>[transformed.size()];
-            transformed.toArray(transformedArray);
-            if (Transformer.isVerbose()) {
-                for (int i = 0; i < transformed.size(); i++) {
-                    System.out.println("retransforming " + transformedArray[i].getName());
-                }
-            }
-            try {
-                inst.retransformClasses(transformedArray);
-            } catch(VerifyError ve) {
-                System.out.println("Retransformer : VerifyError during retransformation : some rules may not have been correctly uninjected!");
-                ve.printStackTrace();
-                out.println("VerifyError during retransformation : some rules may not have been correctly uninjected!");
-                ve.printStackTrace(out);
-            }
-        }
+        retransform(transformed, out, "some rules may not have been correctly uninjected!");
 
         // now we can safely purge keys for all the deleted scripts -- we need to do this
         // after the retransform because the latter removes the trigger code which uses
@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+package org.jboss.byteman.agent;
+
+import org.jboss.byteman.synchronization.Counter;
+
+import java.io.PrintWriter;
+
+/**
+ * execution statistics for a rule script accumulated across every trigger point into which the
+ * rule has been injected. counts are held in striped counters so that threads firing the same rule
+ * concurrently do not contend on a single memory location. n.b. when a simple condition has been
+ * inlined into trigger code a false outcome is decided before the rule is entered so it is not
+ * counted as either a trigger or a false condition.
+ */
+public class RuleMetrics
+{
+    /**
+     * count of the number of times the rule has been entered from trigger code
+     */
+    private final Counter triggered;
+
+    /**
+     * count of the number of times the rule condition evaluated to true, which is also the number of
+     * times execution of the rule action was started
+     */
+    private final Counter conditionTrue;
+
+    /**
+     * count of the number of times the rule condition evaluated to false
+     */
+    private final Counter conditionFalse;
+
+    /**
+     * count of the number of times execution of the rule failed with an unexpected exception
+     */
+    private final Counter errors;
+
+    /**
+     * cumulative nanoseconds spent executing the rule binding, condition and action. this is only
+     * updated when timing is enabled by setting system property
+     * {@link Transformer#METRICS_TIMING}
+     */
+    private final Counter nanos;
+
+    public RuleMetrics()
+    {
+        this.triggered = new Counter();
+        this.conditionTrue = new Counter();
+        this.conditionFalse = new Counter();
+        this.errors = new Counter();
+        this.nanos = new Counter();
+    }
+
+    public void triggered()
+    {
+        triggered.add(1);
+    }
+
+    public void conditionTrue()
+    {
+        conditionTrue.add(1);
+    }
+
+    public void conditionFalse()
+    {
+        conditionFalse.add(1);
+    }
+
+    public void error()
+    {
+        errors.add(1);
+    }
+
+    public void elapsed(long elapsedNanos)
+    {
+        nanos.add(elapsedNanos);
+    }
+
+    public long getTriggerCount()
+    {
+        return triggered.longCount(false);
+    }
+
+    public long getConditionTrueCount()
+    {
+        return conditionTrue.longCount(false);
+    }
+
+    public long getConditionFalseCount()
+    {
+        return conditionFalse.longCount(false);
+    }
+
+    public long getErrorCount()
+    {
+        return errors.longCount(false);
+    }
+
+    public long getElapsedNanos()
+    {
+        return nanos.longCount(false);
+    }
+
+    /**
+     * reset all counts to zero
+     */
+    public void reset()
+    {
+        triggered.longCount(true);
+        conditionTrue.longCount(true);
+        conditionFalse.longCount(true);
+        errors.longCount(true);
+        nanos.longCount(true);
+    }
+
+    public void writeTo(PrintWriter writer)
+    {
+        writer.print("triggered: ");
+        writer.println(getTriggerCount());
+        writer.print("condition true: ");
+        writer.println(getConditionTrueCount());
+        writer.print("condition false: ");
+        writer.println(getConditionFalseCount());
+        writer.print("errors: ");
+        writer.println(getErrorCount());
+        writer.print("elapsed nanos: ");
+        writer.println(getElapsedNanos());
+    }
+}
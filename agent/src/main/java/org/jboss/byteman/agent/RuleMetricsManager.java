@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+package org.jboss.byteman.agent;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * MBean which exposes the execution metrics of the rules installed in a script repository. it is
+ * only registered when system property {@link Transformer#METRICS_JMX} is set at agent startup.
+ */
+public class RuleMetricsManager implements RuleMetricsManagerMBean
+{
+    /**
+     * the name under which the MBean is registered with the platform MBean server
+     */
+    public static final String OBJECT_NAME = "org.jboss.byteman:type=RuleMetrics";
+
+    private final ScriptRepository scriptRepository;
+
+    public RuleMetricsManager(ScriptRepository scriptRepository)
+    {
+        this.scriptRepository = scriptRepository;
+    }
+
+    /**
+     * register an MBean exposing the metrics for rules in a script repository with the platform MBean server
+     * @param scriptRepository the repository whose rules are to be exposed
+     */
+    public static void register(ScriptRepository scriptRepository)
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new RuleMetricsManager(scriptRepository), name);
+        } catch (Exception e) {
+            System.err.println("org.jboss.byteman.agent.RuleMetricsManager : unable to register rule metrics MBean " + e);
+        }
+    }
+
+    public String[] getRuleNames()
+    {
+        List<RuleScript> ruleScripts = scriptRepository.currentRules();
+        String[] names = new String[ruleScripts.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = ruleScripts.get(i).getName();
+        }
+        return names;
+    }
+
+    public String getMetrics()
+    {
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+        for (RuleScript ruleScript : scriptRepository.currentRules()) {
+            writer.print("RULE ");
+            writer.println(ruleScript.getName());
+            ruleScript.getMetrics().writeTo(writer);
+        }
+        writer.flush();
+        return stringWriter.toString();
+    }
+
+    public long getTriggerCount(String ruleName)
+    {
+        RuleMetrics metrics = lookupMetrics(ruleName);
+        return (metrics != null ? metrics.getTriggerCount() : -1L);
+    }
+
+    public long getConditionTrueCount(String ruleName)
+    {
+        RuleMetrics metrics = lookupMetrics(ruleName);
+        return (metrics != null ? metrics.getConditionTrueCount() : -1L);
+    }
+
+    public long getConditionFalseCount(String ruleName)
+    {
+        RuleMetrics metrics = lookupMetrics(ruleName);
+        return (metrics != null ? metrics.getConditionFalseCount() : -1L);
+    }
+
+    public long getErrorCount(String ruleName)
+    {
+        RuleMetrics metrics = lookupMetrics(ruleName);
+        return (metrics != null ? metrics.getErrorCount() : -1L);
+    }
+
+    public long getElapsedNanos(String ruleName)
+    {
+        RuleMetrics metrics = lookupMetrics(ruleName);
+        return (metrics != null ? metrics.getElapsedNanos() : -1L);
+    }
+
+    public void resetMetrics()
+    {
+        for (RuleScript ruleScript : scriptRepository.currentRules()) {
+            ruleScript.getMetrics().reset();
+        }
+    }
+
+    private RuleMetrics lookupMetrics(String ruleName)
+    {
+        RuleScript ruleScript = scriptRepository.scriptForRuleName(ruleName);
+        return (ruleScript != null ? ruleScript.getMetrics() : null);
+    }
+}
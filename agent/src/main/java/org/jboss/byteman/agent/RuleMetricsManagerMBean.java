@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+package org.jboss.byteman.agent;
+
+/**
+ * management interface used to expose the execution metrics of installed rules via JMX. operations
+ * which take a rule name return -1 if no rule with that name is currently installed.
+ */
+public interface RuleMetricsManagerMBean
+{
+    /**
+     * @return the names of all currently installed rules
+     */
+    public String[] getRuleNames();
+
+    /**
+     * @return a listing of the metrics for all currently installed rules in the format employed
+     * by the agent listener METRICS command
+     */
+    public String getMetrics();
+
+    public long getTriggerCount(String ruleName);
+
+    public long getConditionTrueCount(String ruleName);
+
+    public long getConditionFalseCount(String ruleName);
+
+    public long getErrorCount(String ruleName);
+
+    public long getElapsedNanos(String ruleName);
+
+    /**
+     * reset the metrics for all currently installed rules to zero
+     */
+    public void resetMetrics();
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+
+package org.jboss.byteman.agent;
+
+import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.rule.exception.ParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * performs eager preparation of rules when system property {@link Transformer#EAGER_LOAD} is set.
+ * the rule text of a batch of newly loaded scripts is parsed in parallel on a pool of background
+ * threads and the rules injected into already loaded classes are handed to the same pool to be type
+ * checked and compiled. both steps would otherwise be performed by the first thread to trigger each
+ * rule. each task handles one whole script or rule and never splits its work so a fixed pool is used
+ * rather than a fork join pool, which would also require Java 7.
+ */
+public class RulePreparer
+{
+    /**
+     * parse the rule text of a list of scripts in parallel, waiting until all of them have been
+     * parsed. scripts whose text contains errors are left unparsed so that the error is reported
+     * in the usual way when the script is injected.
+     * @param ruleScripts the scripts whose rule text is to be parsed
+     */
+    public static void parse(List<RuleScript> ruleScripts)
+    {
+        if (ruleScripts.size() < 2) {
+            // not worth handing off to another thread
+            for (RuleScript ruleScript : ruleScripts) {
+                parseRuleText(ruleScript);
+            }
+            return;
+        }
+
+        ExecutorService executor = getExecutor();
+        List<Future<?>> futures = new ArrayList<Future<?>>(ruleScripts.size());
+
+        for (final RuleScript ruleScript : ruleScripts) {
+            futures.add(executor.submit(new Runnable() {
+                public void run()
+                {
+                    parseRuleText(ruleScript);
+                }
+            }));
+        }
+
+        boolean interrupted = false;
+
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // parseRuleText does not throw so this should not happen
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * hand the rules injected into already loaded classes by a list of scripts to the background
+     * threads to be type checked and compiled. this does not wait for the work to complete. a rule
+     * which is triggered while it is being checked waits for the check to complete as it would if
+     * another thread had triggered it first.
+     * @param ruleScripts the scripts whose injected rules are to be prepared
+     */
+    public static void check(List<RuleScript> ruleScripts)
+    {
+        List<Rule> rules = new ArrayList<Rule>();
+
+        for (RuleScript ruleScript : ruleScripts) {
+            synchronized (ruleScript) {
+                List<Transform> transforms = ruleScript.getTransformed();
+                if (transforms == null) {
+                    continue;
+                }
+                for (Transform transform : transforms) {
+                    Rule rule = transform.getRule();
+                    if (rule != null && transform.isTransformed()) {
+                        rules.add(rule);
+                    }
+                }
+            }
+        }
+
+        if (rules.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = getExecutor();
+
+        for (final Rule rule : rules) {
+            executor.submit(new Runnable() {
+                public void run()
+                {
+                    rule.prepare();
+                }
+            });
+        }
+    }
+
+    /**
+     * run a task on the background threads used to prepare rules. this is also used to compile
+     * rules in the background when {@link Transformer#COMPILE_IN_BACKGROUND} is set.
+     * @param task the task to be run
+     */
+    public static void background(Runnable task)
+    {
+        getExecutor().execute(task);
+    }
+
+    private static void parseRuleText(RuleScript ruleScript)
+    {
+        try {
+            Rule.parseRuleText(ruleScript);
+        } catch (ParseException e) {
+            if (Transformer.isVerbose()) {
+                System.out.println("RulePreparer.parse : error parsing rule " + ruleScript.getName() + "\n" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * the pool used to prepare rules or null if it has not yet been created
+     */
+    private static ExecutorService executor = null;
+
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                public Thread newThread(final Runnable runnable)
+                {
+                    Thread thread = new Thread("Byteman rule preparer " + count.incrementAndGet())
+                    {
+                        public void run()
+                        {
+                            // make sure we don't trigger rules while preparing them
+                            Rule.disableTriggersInternal();
+                            runnable.run();
+                        }
+                    };
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+}
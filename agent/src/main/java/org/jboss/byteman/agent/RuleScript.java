@@ -24,9 +24,12 @@
 package org.jboss.byteman.agent;
 
 import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.rule.grammar.ParseNode;
 import org.jboss.byteman.rule.type.TypeHelper;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.io.StringWriter;
 import java.io.PrintWriter;
@@ -99,10 +102,28 @@ public class RuleScript
      * true if this rule should be compiled to bytecode otherwise false
      */
     private final boolean compileToBytecode;
+    /**
+     * policy used to decide whether a trigger executes the rule or null if every trigger executes it
+     */
+    private final Sampler sampler;
     /**
      * a list of records identifying contexts in which the rule has been applied.
      */
     private List<Transform> transformed;
+    /**
+     * execution statistics accumulated by every rule instance created from this script
+     */
+    private final RuleMetrics metrics;
+    /**
+     * false while an uploaded rule is being injected into the classes it affects. triggers which have
+     * already been injected do not execute the rule until it is made active.
+     */
+    private volatile boolean active;
+    /**
+     * the parse tree for the rule text or null if it has not yet been parsed. the tree is not
+     * modified once it has been created so it can be shared by every rule created from this script
+     */
+    private volatile ParseNode ruleTree;
 
     /**
      * standard constructor for a rule
@@ -120,6 +141,28 @@ public class RuleScript
      * @param compileToBytecode true if the rule should be compiled otherwise false
      */
     public RuleScript(String name, String targetClass, boolean isInterface, boolean isOverride, String targetMethod, String targetHelper, String[] imports, Location targetLocation, String ruleText, int line, String file, boolean compileToBytecode)
+    {
+        this(name, targetClass, isInterface, isOverride, targetMethod, targetHelper, imports, targetLocation, ruleText, line, file, compileToBytecode, null);
+    }
+
+    /**
+     * constructor for a rule which is only executed by a sample of its triggers
+     * @param name the name of the rule
+     * @param targetClass the name of the class or interface to which the rule applies
+     * @param isInterface true if the ruel applies to an interface false if it appies ot a class
+     * @param isOverride true if the rule should inject down class hierarchies false if it should inly inject into direct implementations
+     * @param targetMethod the name of the method to which the rule applies
+     * @param targetHelper the name of the helper class to be used
+     * @param imports the list of imports for the module system
+     * @param targetLocation description of where the rule should be injected
+     * @param ruleText the body of the rule as text including the BIND, IF and DO clasue
+     * @param line the line at which the rule starts in it's rule script
+     * @param file the path to the file containing the rule
+     * @param compileToBytecode true if the rule should be compiled otherwise false
+     * @param sampler the policy used to select the triggers which execute the rule or null if
+     * every trigger should execute the rule
+     */
+    public RuleScript(String name, String targetClass, boolean isInterface, boolean isOverride, String targetMethod, String targetHelper, String[] imports, Location targetLocation, String ruleText, int line, String file, boolean compileToBytecode, Sampler sampler)
     {
         this.name = name;
         this.targetClass = targetClass;
@@ -133,7 +176,10 @@ public class RuleScript
         this.line = line;
         this.file = file;
         this.compileToBytecode = compileToBytecode;
+        this.sampler = sampler;
         this.transformed = new ArrayList<Transform>();
+        this.metrics = new RuleMetrics();
+        this.active = true;
     }
 
     public String getName() {
@@ -184,6 +230,52 @@ public class RuleScript
 
     public boolean isCompileToBytecode() { return compileToBytecode; }
 
+    public Sampler getSampler()
+    {
+        return sampler;
+    }
+
+    public RuleMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * check whether triggers injected for this script may execute the rule
+     * @return true if the rule is active otherwise false
+     */
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    /**
+     * enable or disable execution of the rule by triggers injected for this script
+     * @param active true if the rule should be active otherwise false
+     */
+    public void setActive(boolean active)
+    {
+        this.active = active;
+    }
+
+    /**
+     * getter for the parse tree of the rule text
+     * @return the parse tree or null if the rule text has not yet been parsed
+     */
+    public ParseNode getRuleTree()
+    {
+        return ruleTree;
+    }
+
+    /**
+     * record the parse tree of the rule text so that it can be reused by subsequently created rules
+     * @param ruleTree the parse tree
+     */
+    public void setRuleTree(ParseNode ruleTree)
+    {
+        this.ruleTree = ruleTree;
+    }
+
     /**
      * getter for list of transforms applied for this script. must be called synchronized on the script.
      * @return the list of transforms
@@ -238,6 +330,25 @@ public class RuleScript
         return recordTransform(loader, internalClassName, null, null, null, th);
     }
 
+    /**
+     * remove the records of successful injections made using a given set of rule instances. this is
+     * used when the injected code is not installed because a later step in the transform failed.
+     * @param rules the rules whose transforms are to be removed
+     */
+    public synchronized void retractTransforms(Collection<Rule> rules)
+    {
+        if (transformed == null) {
+            return;
+        }
+        Iterator<Transform> iterator = transformed.iterator();
+        while (iterator.hasNext()) {
+            Rule rule = iterator.next().getRule();
+            if (rule != null && rules.contains(rule)) {
+                iterator.remove();
+            }
+        }
+    }
+
     /**
      * record the fact that a trigger call has been successfully installed into bytecode associated with a specific
      * class and loader and a corresponding rule instance been installed
@@ -387,6 +498,9 @@ public class RuleScript
         } else {
             writer.write("NOCOMPILE\n");
         }
+        if (sampler != null) {
+            writer.println(sampler.toString());
+        }
         writer.println(targetLocation.toString());
         writer.println(ruleText);
         writer.println("ENDRULE");
@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+package org.jboss.byteman.agent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * policy which decides whether a trigger should go on to execute a rule. a sampler is configured
+ * for a rule by a SAMPLE or RATE clause in its script and is shared by every rule instance created
+ * from that script. it is consulted before the rule's helper is created or any bindings are
+ * installed so a trigger which is not sampled returns to the trigger method at very little cost.
+ */
+public abstract class Sampler
+{
+    /**
+     * decide whether the current trigger should execute the rule
+     * @param state the trigger state of the current thread
+     * @return true if the rule should be executed otherwise false
+     */
+    public abstract boolean sample(TriggerState state);
+
+    /**
+     * return a new sampler with the same policy as this one but with its own sampling state
+     * @return the copy
+     */
+    public abstract Sampler copy();
+
+    /**
+     * return a sampler which selects on average one in every count triggers
+     * @param count the sampling interval which must be greater than zero
+     * @return the sampler
+     */
+    public static Sampler oneIn(int count)
+    {
+        return new OneInSampler(count);
+    }
+
+    /**
+     * return a sampler which admits triggers at an average rate of at most count per second,
+     * allowing a burst of up to count triggers after an idle period
+     * @param count the rate which must be greater than zero
+     * @return the sampler
+     */
+    public static Sampler perSecond(int count)
+    {
+        return new RateSampler(count);
+    }
+
+    /**
+     * sampler which selects triggers at random with probability 1/count. each thread uses its own
+     * pseudo-random generator so concurrent triggers do not contend.
+     */
+    private static class OneInSampler extends Sampler
+    {
+        private final int count;
+
+        private OneInSampler(int count)
+        {
+            this.count = count;
+        }
+
+        public boolean sample(TriggerState state)
+        {
+            if (count == 1) {
+                return true;
+            }
+            // use the high order bits which are the best distributed
+            long random = state.nextRandom() >>> 33;
+            return (random % count) == 0;
+        }
+
+        public Sampler copy()
+        {
+            return new OneInSampler(count);
+        }
+
+        public String toString()
+        {
+            return "SAMPLE " + count;
+        }
+    }
+
+    /**
+     * sampler which admits triggers at a fixed rate allowing bursts of up to one second's worth of
+     * triggers. it tracks the time at which the next trigger would be admitted if triggers arrived
+     * evenly spaced and advances it with a compare and swap so admissions are exact under
+     * concurrent triggering.
+     */
+    private static class RateSampler extends Sampler
+    {
+        private final static long NANOS_PER_SECOND = 1000000000L;
+
+        private final int count;
+
+        /**
+         * the interval in nanoseconds between evenly spaced admissions
+         */
+        private final long interval;
+
+        /**
+         * the theoretical arrival time of the next trigger to be admitted
+         */
+        private final AtomicLong nextArrival;
+
+        private RateSampler(int count)
+        {
+            this.count = count;
+            this.interval = Math.max(NANOS_PER_SECOND / count, 1L);
+            this.nextArrival = new AtomicLong(System.nanoTime() - NANOS_PER_SECOND);
+        }
+
+        public boolean sample(TriggerState state)
+        {
+            long now = System.nanoTime();
+            while (true) {
+                long arrival = nextArrival.get();
+                // an idle sampler accrues at most one second's worth of admissions
+                long start = (arrival - now < -NANOS_PER_SECOND ? now - NANOS_PER_SECOND : arrival);
+                long next = start + interval;
+                if (next - now > 0) {
+                    return false;
+                }
+                if (nextArrival.compareAndSet(arrival, next)) {
+                    return true;
+                }
+            }
+        }
+
+        public Sampler copy()
+        {
+            return new RateSampler(count);
+        }
+
+        public String toString()
+        {
+            return "RATE " + count;
+        }
+    }
+}
@@ -36,10 +36,11 @@ public class ScriptRepository
 {
     public ScriptRepository(boolean skipOverrideRules)
     {
-        targetClassIndex = new HashMap<String, List<RuleScript>>();
-        targetInterfaceIndex = new HashMap<String, List<RuleScript>>();
-        ruleNameIndex = new HashMap<String, RuleScript>();
         this.skipOverrideRules = skipOverrideRules;
+        snapshot = new Snapshot(new HashMap<String, List<RuleScript>>(),
+                new HashMap<String, List<RuleScript>>(),
+                new HashMap<String, RuleScript>(),
+                0, 0);
     }
 
     /**
@@ -70,6 +71,10 @@ public class ScriptRepository
             boolean scriptCompileToBytecode = Transformer.isCompileToBytecode();
             // rule level compilation defaults to script level but may be overridden
             boolean ruleCompileToBytecode = scriptCompileToBytecode;
+            // script level sampling defaults to none but may be overridden
+            Sampler scriptSampler = null;
+            // rule level sampling defaults to script level but may be overridden
+            Sampler ruleSampler = null;
             LocationType locationType = null;
             Location targetLocation = null;
             boolean isInterface = false;
@@ -118,6 +123,24 @@ public class ScriptRepository
                         scriptCompileToBytecode = false;
                         ruleCompileToBytecode = false;
                     }
+                } else if (line.startsWith("SAMPLE ") || line.startsWith("RATE ")) {
+                    boolean isRate = line.startsWith("RATE ");
+                    String countText = line.substring(isRate ? 5 : 7).trim();
+                    int count;
+                    try {
+                        count = Integer.parseInt(countText);
+                    } catch (NumberFormatException e) {
+                        count = 0;
+                    }
+                    if (count <= 0) {
+                        throw new Exception("org.jboss.byteman.agent.Transformer : invalid " + (isRate ? "RATE" : "SAMPLE") + " count " + countText + " at line " + lineNumber + " in script " + scriptFile);
+                    }
+                    Sampler sampler = (isRate ? Sampler.perSecond(count) : Sampler.oneIn(count));
+                    if (inRule) {
+                        ruleSampler = sampler;
+                    } else {
+                        scriptSampler = sampler;
+                    }
                 } else if (line.startsWith("IMPORT ") || line.equals("IMPORT")) {
                     String imp = line.substring(6).trim();
                     if (inRule) {
@@ -189,7 +212,12 @@ public class ScriptRepository
                         if (targetImports == null) {
                             targetImports = (defaultImports != null) ? defaultImports : new String[0];
                         }
-                        RuleScript ruleScript = new RuleScript(name, targetClass, isInterface, isOverride, targetMethod, targetHelper, targetImports, targetLocation, nextRule, startNumber, scriptFile, ruleCompileToBytecode);
+                        // each rule gets its own sampler so rules do not share a sampling budget
+                        Sampler sampler = ruleSampler;
+                        if (sampler == null && scriptSampler != null) {
+                            sampler = scriptSampler.copy();
+                        }
+                        RuleScript ruleScript = new RuleScript(name, targetClass, isInterface, isOverride, targetMethod, targetHelper, targetImports, targetLocation, nextRule, startNumber, scriptFile, ruleCompileToBytecode, sampler);
                         ruleScripts.add(ruleScript);
                     }
                     name = null;
@@ -200,6 +228,7 @@ public class ScriptRepository
                     targetImports = null;
                     // reset rule level compilation to script level setting
                     ruleCompileToBytecode = scriptCompileToBytecode;
+                    ruleSampler = null;
                     nextRule = "";
                     sepr = "";
                     inRule = false;
@@ -230,71 +259,101 @@ public class ScriptRepository
      */
     public RuleScript addScript(RuleScript script)
     {
-        String name = script.getName();
-        RuleScript previous = null;
+        return addScripts(Collections.singletonList(script)).get(0);
+    }
+
+    /**
+     * add a list of rule scripts to the repository publishing a single new snapshot once they have all been
+     * indexed. the result is the same as adding each script in turn using {@link #addScript}.
+     * @param scripts the scripts to be added to the repository
+     * @return a list containing, at the position of each added script, any previous script with the same
+     * name or null. any previous script which is returned will have been deactivated.
+     */
+    public List<RuleScript> addScripts(List<RuleScript> scripts)
+    {
+        List<RuleScript> previousScripts = new ArrayList<RuleScript>(scripts.size());
 
         // sanity check override rule setting and print warning if necessary
 
-        if (skipOverrideRules && script.isOverride()) {
-            Helper.err("ScriptRepository.addScript : injection into overriding methods disabled but found override rules " + script.getName());
+        if (skipOverrideRules) {
+            for (RuleScript script : scripts) {
+                if (script.isOverride()) {
+                    Helper.err("ScriptRepository.addScript : injection into overriding methods disabled but found override rules " + script.getName());
+                }
+            }
         }
 
-        // insert the script by name, invalidating any old script
+        // updates are made to private copies of the current indexes which are then published as a new snapshot
 
-        synchronized (ruleNameIndex) {
-            previous = ruleNameIndex.put(name, script);
-            if (previous != null) {
-                boolean isDeleted = previous.setDeleted();
-                if (isDeleted) {
-                    // it is some other thread's responsibility to remove the script
-                    previous = null;
+        synchronized (updateLock) {
+            Snapshot current = snapshot;
+            Map<String, RuleScript> ruleNameIndex = new HashMap<String, RuleScript>(current.ruleNameIndex);
+            Map<String, List<RuleScript>> targetClassIndex = new HashMap<String, List<RuleScript>>(current.targetClassIndex);
+            Map<String, List<RuleScript>> targetInterfaceIndex = new HashMap<String, List<RuleScript>>(current.targetInterfaceIndex);
+            int overrideRuleCount = current.overrideRuleCount;
+            // index lists already copied during this update which can be modified in place
+            Set<List<RuleScript>> copied = newCopiedSet();
+
+            for (RuleScript script : scripts) {
+                String name = script.getName();
+
+                // insert the script by name, invalidating any old script
+
+                RuleScript previous = ruleNameIndex.put(name, script);
+                if (previous != null) {
+                    boolean isDeleted = previous.setDeleted();
+                    if (isDeleted) {
+                        // it is some other thread's responsibility to remove the script
+                        previous = null;
+                    }
                 }
-            }
-        }
 
-        boolean isOverride = script.isOverride();
+                boolean isOverride = script.isOverride();
 
-        if (previous == null) {
-            // increment override count if necessary before indexing
-            if (isOverride) {
-                overrideRuleCount++;
-            }
-            // now index the new script
+                if (previous == null) {
+                    if (isOverride) {
+                        overrideRuleCount++;
+                    }
+                    // now index the new script
 
-            if (script.isInterface()) {
-                indexTarget(script,  targetInterfaceIndex);
-            } else {
-                indexTarget(script, targetClassIndex);
-            }
-        } else {
-            boolean wasOverride = previous.isOverride();
-            // increment override count if necessary before indexing
-            if (isOverride) {
-                overrideRuleCount++;
-            }
+                    if (script.isInterface()) {
+                        indexTarget(script,  targetInterfaceIndex, copied);
+                    } else {
+                        indexTarget(script, targetClassIndex, copied);
+                    }
+                } else {
+                    boolean wasOverride = previous.isOverride();
+                    if (isOverride) {
+                        overrideRuleCount++;
+                    }
 
-            boolean isInterface =  script.isInterface();
-            boolean wasInterface = previous.isInterface();
-
-            if (isInterface == wasInterface) {
-                // both in the same index so try a reindex
-                Map<String, List<RuleScript>> index = (isInterface ? targetInterfaceIndex : targetClassIndex);
-                reindexTarget(script, previous, index);
-            } else if (isInterface) {
-                // different indexes so unindex then index
-                unindexTarget(previous, targetClassIndex);
-                indexTarget(script, targetInterfaceIndex);
-            } else {
-                unindexTarget(previous, targetInterfaceIndex);
-                indexTarget(script, targetClassIndex);
-            }
-            // decrement count if necessary after unindexing
-            if (wasOverride) {
-                overrideRuleCount--;
+                    boolean isInterface =  script.isInterface();
+                    boolean wasInterface = previous.isInterface();
+
+                    if (isInterface == wasInterface) {
+                        // both in the same index so try a reindex
+                        Map<String, List<RuleScript>> index = (isInterface ? targetInterfaceIndex : targetClassIndex);
+                        reindexTarget(script, previous, index, copied);
+                    } else if (isInterface) {
+                        // different indexes so unindex then index
+                        unindexTarget(previous, targetClassIndex, copied);
+                        indexTarget(script, targetInterfaceIndex, copied);
+                    } else {
+                        unindexTarget(previous, targetInterfaceIndex, copied);
+                        indexTarget(script, targetClassIndex, copied);
+                    }
+                    if (wasOverride) {
+                        overrideRuleCount--;
+                    }
+                }
+
+                previousScripts.add(previous);
             }
+
+            snapshot = new Snapshot(targetClassIndex, targetInterfaceIndex, ruleNameIndex, overrideRuleCount, current.generation + 1);
         }
 
-        return previous;
+        return previousScripts;
     }
 
     /**
@@ -309,12 +368,13 @@ public class ScriptRepository
         String name = script.getName();
         RuleScript current;
 
-        // check for the script by name
+        synchronized (updateLock) {
+            Snapshot currentSnapshot = snapshot;
 
-        synchronized (ruleNameIndex) {
-            current = ruleNameIndex.get(name);
+            // check for the script by name
+
+            current = currentSnapshot.ruleNameIndex.get(name);
             if (current == script) {
-                ruleNameIndex.remove(current.getName());
                 boolean isDeleted = current.setDeleted();
                 if (isDeleted) {
                     // it is some other thread's responsibility to remove the script
@@ -324,22 +384,31 @@ public class ScriptRepository
                 // it is some other thread's responsibility to remove the script
                 current = null;
             }
-        }
 
-        // if we found a script then we have to unindex it
+            // if we found a script then we have to unname and unindex it
 
-        if (current != null) {
-            Map<String, List<RuleScript>> index = (current.isInterface() ? targetInterfaceIndex : targetClassIndex);
-            unindexTarget(current, index);
+            if (current != null) {
+                Map<String, RuleScript> ruleNameIndex = new HashMap<String, RuleScript>(currentSnapshot.ruleNameIndex);
+                Map<String, List<RuleScript>> targetClassIndex = currentSnapshot.targetClassIndex;
+                Map<String, List<RuleScript>> targetInterfaceIndex = currentSnapshot.targetInterfaceIndex;
+                int overrideRuleCount = currentSnapshot.overrideRuleCount;
 
-            boolean wasOverride = current.isOverride();
+                ruleNameIndex.remove(name);
 
-            // decrement count if necessary after unindexing
+                if (current.isInterface()) {
+                    targetInterfaceIndex = new HashMap<String, List<RuleScript>>(targetInterfaceIndex);
+                    unindexTarget(current, targetInterfaceIndex, newCopiedSet());
+                } else {
+                    targetClassIndex = new HashMap<String, List<RuleScript>>(targetClassIndex);
+                    unindexTarget(current, targetClassIndex, newCopiedSet());
+                }
 
-            if (wasOverride) {
-                overrideRuleCount--;
-            }
+                if (current.isOverride()) {
+                    overrideRuleCount--;
+                }
 
+                snapshot = new Snapshot(targetClassIndex, targetInterfaceIndex, ruleNameIndex, overrideRuleCount, currentSnapshot.generation + 1);
+            }
         }
 
         return current;
@@ -369,9 +438,7 @@ public class ScriptRepository
      */
     public RuleScript scriptForRuleName(String name)
     {
-        synchronized (ruleNameIndex) {
-            return ruleNameIndex.get(name);
-        }
+        return snapshot.ruleNameIndex.get(name);
     }
 
     /**
@@ -386,9 +453,7 @@ public class ScriptRepository
 
     public List<RuleScript> scriptsForClassName(String name)
     {
-        synchronized (targetClassIndex) {
-            return targetClassIndex.get(name);
-        }
+        return snapshot.targetClassIndex.get(name);
     }
 
     /**
@@ -403,9 +468,34 @@ public class ScriptRepository
 
     public List<RuleScript> scriptsForInterfaceName(String name)
     {
-        synchronized (targetInterfaceIndex) {
-            return targetInterfaceIndex.get(name);
-        }
+        return snapshot.targetInterfaceIndex.get(name);
+    }
+
+    /**
+     * check whether a class or interface name is used as the target of some rule. this is a quick check
+     * which does not need to lock the indexes so it can be used to reject names before looking them up.
+     * @param name the name of the class or interface which may be package qualified
+     * @param isInterface true if the name should be checked against interface rules or false if it should
+     * be checked against class rules
+     * @return true if scriptsForInterfaceName or scriptsForClassName may return scripts for the name
+     * otherwise false
+     */
+    public boolean isTargetName(String name, boolean isInterface)
+    {
+        Snapshot current = snapshot;
+        Map<String, List<RuleScript>> index = (isInterface ? current.targetInterfaceIndex : current.targetClassIndex);
+
+        return index.containsKey(name);
+    }
+
+    /**
+     * return a count which is incremented whenever a script is added to or removed from the repository.
+     * a result computed from the repository contents can be reused for as long as the count is unchanged.
+     * @return the current generation count
+     */
+    public long getGeneration()
+    {
+        return snapshot.generation;
     }
 
     /**
@@ -422,8 +512,8 @@ public class ScriptRepository
         boolean isOverride = false;
         // we create these lazily to avoid unnecessary work
 
-        LinkedList<Class> visited = null;
-        LinkedList<Class> toVisit = null;
+        Set<Class<?>> visited = null;
+        ArrayDeque<Class<?>> toVisit = null;
 
         while (nextClazz != null) {
             String name = nextClazz.getName();
@@ -443,17 +533,17 @@ public class ScriptRepository
             // ok, now see if we need to inject via any interfaces that the class implements
 
             if (checkInterfaces()) {
-                Class[] interfaces = nextClazz.getInterfaces();
+                Class<?>[] interfaces = nextClazz.getInterfaces();
                 int l = interfaces.length;
                 if (l > 0) {
                     // ok, so we have to create the lists here
                     if (visited == null) {
-                        visited = new LinkedList<Class>();
-                        toVisit = new LinkedList<Class>();
+                        visited = new HashSet<Class<?>>();
+                        toVisit = new ArrayDeque<Class<?>>();
                     }
                     // add the implements list of this class as interfaces to consider
                     for (int i = 0; i < interfaces.length; i++) {
-                        Class interfaze = interfaces[i];
+                        Class<?> interfaze = interfaces[i];
                         if (!visited.contains(interfaze)) {
                             toVisit.add(interfaze);
                         }
@@ -461,7 +551,7 @@ public class ScriptRepository
 
                     while (!toVisit.isEmpty()) {
                         // check the next interface
-                        Class interfaze = toVisit.pop();
+                        Class<?> interfaze = toVisit.pop();
                         name = interfaze.getName();
                         if (matchTarget(name, clazz, true, isOverride)) {
                             return true;
@@ -503,7 +593,7 @@ public class ScriptRepository
      */
     public List<RuleScript> currentRules()
     {
-        return new ArrayList(ruleNameIndex.values());
+        return new ArrayList<RuleScript>(snapshot.ruleNameIndex.values());
     }
 
     /**
@@ -517,46 +607,45 @@ public class ScriptRepository
      * @return true if any scripts are found otherwise false
      */
     private boolean matchTarget(String name, Class<?> clazz, boolean isInterface, boolean isOverride) {
-        Map<String, List<RuleScript>> index = (isInterface ? targetInterfaceIndex : targetClassIndex);
-        synchronized (index) {
-            List<RuleScript> ruleScripts = index.get(name);
-            if (ruleScripts != null) {
-                for (RuleScript ruleScript: ruleScripts) {
-                    if (isOverride && !ruleScript.isOverride()) {
-                        continue;
-                    }
-                    String methodName = ruleScript.getTargetMethod();
-                    int signaturePos = methodName.indexOf("(");
-                    if (signaturePos > 0) {
-                        methodName = methodName.substring(0, signaturePos).trim();
-                    }
-                    int wsPos = methodName.indexOf(' ');
-                    if (wsPos < 0) {
-                       wsPos = methodName.indexOf('\t');
-                    }
-                    if (wsPos > 0) {
-                        // ok, so METHOD spec must be in format "type methodname"
-                        methodName = methodName.substring(wsPos).trim();
-                    }
-                    if ("<init>".equals(methodName) || "<clinit>".equals(methodName)) {
-                        // every class has some sort of constructor so accept it
-                        return true;
-                    }
-                    // this filters out cases where the class does not have a method with the correct name
-                    try {
-                        Method[] declaredMethods = clazz.getDeclaredMethods();
-                        for (int i = 0; i < declaredMethods.length; i++) {
-                            Method method = declaredMethods[i];
-                            if (method.getName().equals(methodName)) {
-                                return true;
-                            }
+        Snapshot current = snapshot;
+        Map<String, List<RuleScript>> index = (isInterface ? current.targetInterfaceIndex : current.targetClassIndex);
+        List<RuleScript> ruleScripts = index.get(name);
+        if (ruleScripts != null) {
+            for (RuleScript ruleScript: ruleScripts) {
+                if (isOverride && !ruleScript.isOverride()) {
+                    continue;
+                }
+                String methodName = ruleScript.getTargetMethod();
+                int signaturePos = methodName.indexOf("(");
+                if (signaturePos > 0) {
+                    methodName = methodName.substring(0, signaturePos).trim();
+                }
+                int wsPos = methodName.indexOf(' ');
+                if (wsPos < 0) {
+                   wsPos = methodName.indexOf('\t');
+                }
+                if (wsPos > 0) {
+                    // ok, so METHOD spec must be in format "type methodname"
+                    methodName = methodName.substring(wsPos).trim();
+                }
+                if ("<init>".equals(methodName) || "<clinit>".equals(methodName)) {
+                    // every class has some sort of constructor so accept it
+                    return true;
+                }
+                // this filters out cases where the class does not have a method with the correct name
+                try {
+                    Method[] declaredMethods = clazz.getDeclaredMethods();
+                    for (int i = 0; i < declaredMethods.length; i++) {
+                        Method method = declaredMethods[i];
+                        if (method.getName().equals(methodName)) {
+                            return true;
                         }
-                    } catch (NoClassDefFoundError e) {
-                        // we cam sometimes get an Error thrown if the class we are lookingb up has unresolved
-                        // refernces ot a non-existent class. don't really know why such classes turn up
-                        // in the inst allLoaddedClasses list but they do.
-                        // ignore
                     }
+                } catch (NoClassDefFoundError e) {
+                    // we cam sometimes get an Error thrown if the class we are lookingb up has unresolved
+                    // refernces ot a non-existent class. don't really know why such classes turn up
+                    // in the inst allLoaddedClasses list but they do.
+                    // ignore
                 }
             }
         }
@@ -564,11 +653,14 @@ public class ScriptRepository
     }
 
     /**
-     * insert a script into the index using the script target class name as the index key.
+     * insert a script into the index using the script target class name as the index key. the index
+     * must be a private copy which has not yet been published but its lists may be shared with the
+     * current snapshot so they are copied before being updated unless already copied during this update.
      * @param script
      * @param index
+     * @param copied the index lists already copied during the current update
      */
-    private void indexTarget(RuleScript script, Map<String, List<RuleScript>> index)
+    private void indexTarget(RuleScript script, Map<String, List<RuleScript>> index, Set<List<RuleScript>> copied)
     {
         String key = script.getTargetClass();
         // synchronize on the new script to avoid ant race with a deleting thread
@@ -576,113 +668,96 @@ public class ScriptRepository
             if (script.isDeleted()) {
                 return;
             }
-            synchronized (index) {
-                List<RuleScript> entry = index.get(key);
-                // always create a new list so that we don't affect any in progress iteration of the previous value
-                if (entry == null) {
-                    entry = new ArrayList();
-                    add(entry, script);
-                } else {
-                    entry = new ArrayList(entry);
-                    add(entry, script);
-                }
-                index.put(key, entry);
-            }
+            List<RuleScript> entry = copyEntry(index, key, copied);
+            add(entry, script);
         }
     }
 
     /**
-     * remove a script from the index using the script target class name as the index key.
+     * remove a script from the index using the script target class name as the index key. the index
+     * must be a private copy which has not yet been published.
      * @param script
      * @param index
+     * @param copied the index lists already copied during the current update
      */
-    private void unindexTarget(RuleScript script, Map<String, List<RuleScript>> index)
+    private void unindexTarget(RuleScript script, Map<String, List<RuleScript>> index, Set<List<RuleScript>> copied)
     {
-        synchronized (index) {
-            String key = script.getTargetClass();
-            List<RuleScript> entry = index.get(key);
-            // check it has not been deleted by another thread
-            if (entry != null && entry.contains(script)) {
-                if (entry.size() == 1) {
-                    // removing the last one so reset entry to null
-                    entry = null;
-                } else {
-                    // always create a new list so that we don't affect any in progress iteration of the previous value
-                    entry = new ArrayList<RuleScript>(entry);
-                    entry.remove(script);
-                }
-                index.put(key, entry);
+        String key = script.getTargetClass();
+        List<RuleScript> entry = index.get(key);
+        // check it has not already been removed
+        if (entry != null && entry.contains(script)) {
+            if (entry.size() == 1) {
+                // removing the last one so drop the key
+                index.remove(key);
+            } else {
+                entry = copyEntry(index, key, copied);
+                entry.remove(script);
             }
         }
-
     }
 
     /**
-     * replace a script in the index using the script target class name as the index key.
+     * replace a script in the index using the script target class name as the index key. the index
+     * must be a private copy which has not yet been published.
      * @param script
      * @param index
+     * @param copied the index lists already copied during the current update
      */
-    private void reindexTarget(RuleScript script, RuleScript previous, Map<String, List<RuleScript>> index)
+    private void reindexTarget(RuleScript script, RuleScript previous, Map<String, List<RuleScript>> index, Set<List<RuleScript>> copied)
     {
         // synchronize on the new script to avoid ant race with a deleting thread
         synchronized (script) {
             if (script.isDeleted()) {
                 // we just need to delete the old script
-                unindexTarget(previous, index);
+                unindexTarget(previous, index, copied);
                 return;
             } else {
                 String key = script.getTargetClass();
                 String oldKey = previous.getTargetClass();
 
-                synchronized (index) {
-                    if (key == oldKey) {
-                        // both in the same list so do one update
-                        List<RuleScript> entry = index.get(key);
-                        // check old one  has not been deleted by another thread
-                        if (entry == null || !entry.contains(previous)) {
-                            // some other thread must have deleted the old one so just insert the new one
-
-                            // always create a new list so that we don't affect any in progress iteration of the previous value
-                            entry = new ArrayList<RuleScript>(entry);
-                            add(entry, script);
-                        } else {
-                            // always create a new list so that we don't affect any in progress iteration of the previous value
-                            entry = new ArrayList(entry);
-                            entry.remove(previous);
-                            add(entry, script);
-                        }
-                        index.put(key, entry);
-                    } else {
-                        List<RuleScript> entry = index.get(oldKey);
-                        // check old one  has not been deleted by another thread
-                        if (entry != null && entry.contains(previous)) {
-                            // unindex the previous script
-                            if (entry.size() == 1) {
-                                // removing the last one so reset entry to null
-                                entry = null;
-                            } else {
-                                // always create a new list so that we don't affect any in progress iteration of the previous value
-                                entry = new ArrayList<RuleScript>(entry);
-                                entry.remove(previous);
-                            }
-                            index.put(oldKey, entry);
-                        }
-                        // now index the new one
-                        entry = index.get(key);
-                        // always create a new list so that we don't affect any in progress iteration of the previous value
-                        if (entry == null) {
-                            entry = new ArrayList<RuleScript>();
-                        } else {
-                            entry = new ArrayList<RuleScript>(entry);
-                        }
-                        add(entry, script);
-                        index.put(key, entry);
-                    }
+                if (key.equals(oldKey)) {
+                    // both in the same list so do one update
+                    List<RuleScript> entry = copyEntry(index, key, copied);
+                    entry.remove(previous);
+                    add(entry, script);
+                } else {
+                    unindexTarget(previous, index, copied);
+                    indexTarget(script, index, copied);
                 }
             }
         }
     }
 
+    /**
+     * return a private copy of the index list for a key, creating an empty list if there is no entry, and
+     * install it in the index. a list which has already been copied during the current update is returned
+     * as is. copying ensures we don't affect any in progress iteration of a published list.
+     * @param index the index being updated
+     * @param key the key for the list
+     * @param copied the lists already copied during the current update
+     * @return a list which can be modified
+     */
+    private static List<RuleScript> copyEntry(Map<String, List<RuleScript>> index, String key, Set<List<RuleScript>> copied)
+    {
+        List<RuleScript> entry = index.get(key);
+        if (entry != null && copied.contains(entry)) {
+            return entry;
+        }
+        entry = (entry == null ? new ArrayList<RuleScript>() : new ArrayList<RuleScript>(entry));
+        copied.add(entry);
+        index.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * create a set for tracking the index lists copied during an update. lists are compared by identity
+     * @return an empty set
+     */
+    private static Set<List<RuleScript>> newCopiedSet()
+    {
+        return Collections.newSetFromMap(new IdentityHashMap<List<RuleScript>, Boolean>());
+    }
+
     /**
      * add a rule script to start or end of the index list according to its location type. AT ENTRY rules
      * are pushed so they are sorted in reverse load order. other rules are appended so they are sorted
@@ -701,25 +776,64 @@ public class ScriptRepository
         }
     }
     /**
-     * a 1-1 mapping from target class names which appear in rules to a script object holding the
-     * rule details
+     * an immutable view of the repository contents. a new snapshot is built and published whenever
+     * a script is added or removed so that lookups never need to lock.
      */
-
-    private final Map<String, List<RuleScript>> targetClassIndex;
+    private static class Snapshot
+    {
+        /**
+         * a 1-m mapping from target class names which appear in rules to a script object holding the
+         * rule details
+         */
+        final Map<String, List<RuleScript>> targetClassIndex;
+
+        /**
+         * a 1-m mapping from target interface names which appear in rules to a script object holding the
+         * rule details
+         */
+        final Map<String, List<RuleScript>> targetInterfaceIndex;
+
+        /**
+         * a 1-1 mapping from rule names which appear in rules to a script object holding the
+         * rule details
+         */
+        final Map<String, RuleScript> ruleNameIndex;
+
+        /**
+         * a count of how many rules there are in the script repository which employ injection into hierarchies
+         */
+        final int overrideRuleCount;
+
+        /**
+         * count of the updates which have been published
+         */
+        final long generation;
+
+        Snapshot(Map<String, List<RuleScript>> targetClassIndex,
+                 Map<String, List<RuleScript>> targetInterfaceIndex,
+                 Map<String, RuleScript> ruleNameIndex,
+                 int overrideRuleCount,
+                 long generation)
+        {
+            this.targetClassIndex = Collections.unmodifiableMap(targetClassIndex);
+            this.targetInterfaceIndex = Collections.unmodifiableMap(targetInterfaceIndex);
+            this.ruleNameIndex = Collections.unmodifiableMap(ruleNameIndex);
+            this.overrideRuleCount = overrideRuleCount;
+            this.generation = generation;
+        }
+    }
 
     /**
-     * a 1-m mapping from target interface names which appear in rules to a script object holding the
-     * rule details
+     * the current repository contents
      */
 
-    private final Map<String, List<RuleScript>> targetInterfaceIndex;
+    private volatile Snapshot snapshot;
 
     /**
-     * a 1-m mapping from rule names which appear in rules to a script object holding the
-     * rule details
+     * lock used to serialize updates to the repository
      */
 
-    private final Map<String, RuleScript> ruleNameIndex;
+    private final Object updateLock = new Object();
 
     /**
      * a flag derived from the transformer which enables us to avoid testing superclass rules for
@@ -728,28 +842,18 @@ public class ScriptRepository
 
     private final boolean skipOverrideRules;
 
-    /**
-     * a count of how many rules there are in the script repository which employ injection into hierarchies
-     */
-    private int overrideRuleCount = 0;
-
     /**
      * see if we need to do any transformation of interfaces
      * @return true if there are any interface rules false if there are none
      */
     public boolean checkInterfaces()
     {
-        // n.b. this probably ought to be called synchronized rather than ddo its own synchronization
-        // so the caller can avoid the timing window between checking and responding to the check.
-        // but this is a grey area given that there is no way of knowing exactly when a transform
-        // request will be sent to the Transformer and the repsonse is not to ransform anything. if
-        // an uupdate affects a loaded class then it will get retransformed anyway so the risk here
-        // si that the rule gets applied alittle late. we still synchornize here anyway to ensure
-        // the isEmpty check does not get a partial view of the index.
-
-        synchronized (targetInterfaceIndex) {
-            return !targetInterfaceIndex.isEmpty();
-        }
+        // n.b. there is no way of knowing exactly when a transform request will be sent to the
+        // Transformer relative to an update so a caller may see a slightly stale answer. if an
+        // update affects a loaded class then it will get retransformed anyway so the risk here
+        // is that the rule gets applied a little late.
+
+        return !snapshot.targetInterfaceIndex.isEmpty();
     }
 
     /**
@@ -760,7 +864,7 @@ public class ScriptRepository
         if (skipOverrideRules) {
             return true;
         } else {
-            return overrideRuleCount == 0;
+            return snapshot.overrideRuleCount == 0;
         }
     }
 }
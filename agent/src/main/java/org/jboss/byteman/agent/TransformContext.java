@@ -74,6 +74,20 @@ public class TransformContext
     }
 
     public byte[] transform(byte[] targetClassBytes)
+    {
+        if (!check(targetClassBytes)) {
+            return targetClassBytes;
+        }
+
+        return inject(targetClassBytes, true);
+    }
+
+    /**
+     * parse the rule and check whether the supplied class contains a matching trigger method and location
+     * @param targetClassBytes the current class bytecode
+     * @return true if the rule can be injected into the class by calling {@link #inject} otherwise false
+     */
+    public boolean check(byte[] targetClassBytes)
     {
         final Location handlerLocation = ruleScript.getTargetLocation();
 
@@ -85,13 +99,13 @@ public class TransformContext
                 System.out.println("org.jboss.byteman.agent.Transformer : error parsing rule " + ruleName + "\n" + pe);
             }
             recordFailedTransform(pe);
-            return targetClassBytes;
+            return false;
         } catch (Throwable th) {
             if (Transformer.isVerbose()) {
                 System.out.println("org.jboss.byteman.agent.Transformer : unexpected error parsing rule " + ruleName + "\n" + th);
             }
             recordFailedTransform(th);
-            return targetClassBytes;
+            return false;
         }
 
         // ok, we have a rule with a matching trigger class and a target method and location
@@ -110,7 +124,7 @@ public class TransformContext
         // but sometimes we can only back out by throwing an exception from within a bytecode
         // visitor and th eonly safe ting to do is back out the whole transform.
 
-        ClassReader cr = new ClassReader(targetClassBytes);
+        ClassReader cr = getClassReader(targetClassBytes);
         // need to provide a real writer here so that labels get resolved
         ClassWriter dummy = getNonLoadingClassWriter(0);
         RuleCheckAdapter checkAdapter = handlerLocation.getRuleCheckAdapter(dummy, this);
@@ -121,7 +135,7 @@ public class TransformContext
             cr.accept(localScopeAdapter, ClassReader.EXPAND_FRAMES);
         } catch (TransformFailure te) {
             // will already be notified
-            return targetClassBytes;
+            return false;
         } catch (Throwable th) {
             // hmm, unexpected error
             if (Transformer.isVerbose()) {
@@ -129,19 +143,34 @@ public class TransformContext
                 th.printStackTrace(System.out);
             }
             recordFailedTransform(th);
-            return targetClassBytes;
+            return false;
         }
         // only insert the rule trigger call if there is a suitable location in the target method
         if (!checkAdapter.isVisited()) {
             //  there was no matching method so ignore
-            return targetClassBytes;
+            return false;
         }
 
         if (Transformer.isVerbose()) {
             System.out.println("org.jboss.byteman.agent.Transformer : possible trigger for rule " + ruleScript.getName() + " in class " + triggerClassName);
         }
-        cr = new ClassReader(targetClassBytes);
-        ClassWriter cw = getNonLoadingClassWriter(ClassWriter.COMPUTE_MAXS|ClassWriter.COMPUTE_FRAMES);
+
+        return true;
+    }
+
+    /**
+     * inject the rule into the supplied class. this must only be called after a successful call to
+     * {@link #check} for the same class bytecode.
+     * @param targetClassBytes the current class bytecode
+     * @param computeFrames true if stack map frames should be computed for the transformed class or false if
+     * frame computation can be omitted because the returned bytecode will be transformed again
+     * @return the transformed bytecode or the original bytecode if the injection failed
+     */
+    public byte[] inject(byte[] targetClassBytes, boolean computeFrames)
+    {
+        final Location handlerLocation = ruleScript.getTargetLocation();
+        ClassReader cr = getClassReader(targetClassBytes);
+        ClassWriter cw = getNonLoadingClassWriter(computeFrames ? ClassWriter.COMPUTE_MAXS|ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
         RuleTriggerAdapter adapter = handlerLocation.getRuleAdapter(cw, this);
         // insert a JSR inliner between the reader and the adapter so we don't see JSR/RET sequences
         // we use a specialised version which provides us with info about vars going in and out of scope
@@ -174,6 +203,35 @@ public class TransformContext
         }
     }
 
+    /**
+     * recompute the stack map frames for a class which was transformed by calls to {@link #inject}
+     * with computeFrames false
+     * @param targetClassBytes the transformed class bytecode
+     * @return the bytecode with correct frames
+     */
+    public byte[] computeFrames(byte[] targetClassBytes)
+    {
+        ClassReader cr = getClassReader(targetClassBytes);
+        ClassWriter cw = getNonLoadingClassWriter(ClassWriter.COMPUTE_MAXS|ClassWriter.COMPUTE_FRAMES);
+        cr.accept(cw, ClassReader.SKIP_FRAMES);
+        return cw.toByteArray();
+    }
+
+    /**
+     * return a reader for the supplied bytecode, reusing the reader employed by the last check or
+     * inject call if it was created for the same bytecode
+     * @param targetClassBytes the class bytecode
+     * @return a reader for the bytecode
+     */
+    private ClassReader getClassReader(byte[] targetClassBytes)
+    {
+        if (classReader == null || classReaderBytes != targetClassBytes) {
+            classReader = new ClassReader(targetClassBytes);
+            classReaderBytes = targetClassBytes;
+        }
+        return classReader;
+    }
+
     public void parseRule() throws Exception {
         Rule rule = Rule.create(ruleScript, loader, helperManager);
         // stash this rule away under the class name so we can reuse it for the first matching method
@@ -270,6 +328,19 @@ public class TransformContext
         purgeRules();
     }
 
+    /**
+     * record that the code injected by an earlier successful call to {@link #inject} was not installed
+     * because a later step in the transform failed. the successful transforms recorded by the injection
+     * are replaced with a failed transform and the injected rules are purged.
+     * @param th the Throwable recording details of the failure
+     */
+    public void recordFailedInstall(Throwable th)
+    {
+        ruleScript.retractTransforms(ruleMap.values());
+
+        recordFailedTransform(th);
+    }
+
     public boolean matchTargetMethod(int access, String name, String desc)
     {
         // check the method is one we are really targeting
@@ -622,4 +693,10 @@ public class TransformContext
     private HashMap<String, Rule> ruleMap;
 
     private Rule firstRule;
+
+    /**
+     * the reader created for the most recently checked or injected bytecode and the bytecode it reads
+     */
+    private ClassReader classReader;
+    private byte[] classReaderBytes;
 }
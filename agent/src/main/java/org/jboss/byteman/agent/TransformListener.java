@@ -35,17 +35,31 @@ import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.jar.JarFile;
 
 import org.jboss.byteman.rule.Rule;
 
 /**
- * a socket based listener class which reads scripts from stdin and installs them in the current runtime
+ * a socket based listener class which reads scripts from stdin and installs them in the current runtime.
+ * each connection is handled by a worker thread so that several clients can be served at once. commands
+ * which only read agent state are executed concurrently. commands which install or remove rules, add jars
+ * or update system properties are passed to a bounded pool of update workers. these read the request in
+ * full and then apply updates one at a time in the order in which they were read. update requests which
+ * are waiting for an update worker, for their client or for their turn to apply never hold up a read only
+ * command.
  */
 public class TransformListener extends Thread
 {
@@ -55,9 +69,43 @@ public class TransformListener extends Thread
     private static ServerSocket theServerSocket;
     private Retransformer retransformer;
 
+    /**
+     * the maximum number of update requests handled at once. further update requests wait for a free
+     * update worker
+     */
+    private static final int MAX_UPDATERS = 8;
+
+    /**
+     * how long in milliseconds a worker waits for the next line of a request before dropping the connection
+     */
+    private static final int READ_TIMEOUT = 30000;
+
+    /**
+     * the pool of threads used to read the command from each connection and execute read only commands.
+     * threads are created on demand so a read only command never waits for a free thread
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * the bounded pool of threads used to read and apply update requests
+     */
+    private final ThreadPoolExecutor updaters;
+
+    /**
+     * lock used to serialize commands which modify agent state. it is only taken once the request
+     * has been read so a slow client cannot hold up other updates. the lock is fair so that queued
+     * updates are applied in the order in which they were read
+     */
+    private final ReentrantLock updateLock;
+
     private TransformListener(Retransformer retransformer)
     {
         this.retransformer = retransformer;
+        this.updateLock = new ReentrantLock(true);
+        this.workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new WorkerThreadFactory("Byteman listener worker "));
+        this.updaters = new ThreadPoolExecutor(MAX_UPDATERS, MAX_UPDATERS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory("Byteman listener updater "));
+        // let the update pool shrink back to nothing when the listener is idle
+        this.updaters.allowCoreThreadTimeOut(true);
         setDaemon(true);
     }
 
@@ -116,6 +164,9 @@ public class TransformListener extends Thread
             } catch (InterruptedException e) {
                 // ignore
             }
+            // connections which are already being handled are allowed to complete
+            theTransformListener.workers.shutdown();
+            theTransformListener.updaters.shutdown();
 
             theTransformListener = null;
             theServerSocket = null;
@@ -155,15 +206,27 @@ public class TransformListener extends Thread
                 System.out.println("TransformListener() : handling connection on port " + socket.getLocalPort());
             }
             try {
-                handleConnection(socket);
-            } catch (Exception e) {
-                System.out.println("TransformListener() : error handling connection on port " + socket.getLocalPort());
-                try {
-                    socket.close();
-                } catch (IOException e1) {
-                    // do nothing
-                }
+                socket.setSoTimeout(READ_TIMEOUT);
+            } catch (IOException e) {
+                System.out.println("TransformListener.run : exception setting socket timeout " + e);
             }
+            final Socket connection = socket;
+            workers.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try {
+                        handleConnection(connection);
+                    } catch (Exception e) {
+                        System.out.println("TransformListener() : error handling connection on port " + connection.getLocalPort());
+                        try {
+                            connection.close();
+                        } catch (IOException e1) {
+                            // do nothing
+                        }
+                    }
+                }
+            });
         }
     }
 
@@ -212,6 +275,41 @@ public class TransformListener extends Thread
             e.printStackTrace();
         }
 
+        if (line != null && isUpdate(line)) {
+            // hand the request over so that it only ever waits for other updates
+            final Socket connection = socket;
+            final BufferedReader input = in;
+            final PrintWriter output = out;
+            final String command = line;
+            updaters.execute(new Runnable()
+            {
+                public void run()
+                {
+                    handleCommand(connection, input, output, command);
+                }
+            });
+        } else {
+            handleCommand(socket, in, out, line);
+        }
+    }
+
+    /**
+     * check whether a command modifies agent state
+     * @param command the command read from the connection
+     * @return true if the command must be handled by an update worker otherwise false
+     */
+    private static boolean isUpdate(String command)
+    {
+        return (command.equals("BOOT") ||
+                command.equals("SYS") ||
+                command.equals("LOAD") ||
+                command.equals("DELETE") ||
+                command.equals("DELETEALL") ||
+                command.equals("SETSYSPROPS"));
+    }
+
+    private void handleCommand(Socket socket, BufferedReader in, PrintWriter out, String line)
+    {
         try {
             if (line == null) {
                 out.println("ERROR");
@@ -227,6 +325,8 @@ public class TransformListener extends Thread
                 deleteScripts(in, out);
             } else if (line.equals("LIST")) {
                 listScripts(in, out);
+            } else if (line.equals("METRICS")) {
+                listMetrics(in, out);
             } else if (line.equals("DELETEALL")) {
                 purgeScripts(in, out);
             } else if (line.equals("VERSION")) {
@@ -275,20 +375,29 @@ public class TransformListener extends Thread
     private void loadJars(BufferedReader in, PrintWriter out, boolean isBoot) throws IOException
     {
         final String endMarker = (isBoot) ? "ENDBOOT" : "ENDSYS";
+        List<String> jarPaths = new ArrayList<String>();
         String line = in.readLine().trim();
         while (line != null && !line.equals(endMarker)) {
-            try {
-                JarFile jarfile = new JarFile(new File(line));
-                retransformer.appendJarFile(out, jarfile, isBoot);
-            } catch (Exception e) {
-                out.append("EXCEPTION ");
-                out.append("Unable to add jar file " + line + "\n");
-                out.append(e.toString());
-                out.append("\n");
-                e.printStackTrace(out);
-            }
+            jarPaths.add(line);
             line = in.readLine().trim();
         }
+        updateLock.lock();
+        try {
+            for (String jarPath : jarPaths) {
+                try {
+                    JarFile jarfile = new JarFile(new File(jarPath));
+                    retransformer.appendJarFile(out, jarfile, isBoot);
+                } catch (Exception e) {
+                    out.append("EXCEPTION ");
+                    out.append("Unable to add jar file " + jarPath + "\n");
+                    out.append(e.toString());
+                    out.append("\n");
+                    e.printStackTrace(out);
+                }
+            }
+        } finally {
+            updateLock.unlock();
+        }
         if (line == null || !line.equals(endMarker)) {
             out.append("ERROR\n");
             out.append("Unexpected end of line reading " + ((isBoot) ? "boot" : "system") + " jars\n");
@@ -342,6 +451,7 @@ public class TransformListener extends Thread
             return;
         }
 
+        updateLock.lock();
         try {
             if (doDelete) {
                 retransformer.removeScripts(scripts, out);
@@ -353,6 +463,8 @@ public class TransformListener extends Thread
             out.append(e.toString());
             out.append('\n');
             e.printStackTrace(out);
+        } finally {
+            updateLock.unlock();
         }
         out.println("OK");
         out.flush();
@@ -360,7 +472,12 @@ public class TransformListener extends Thread
 
     private void purgeScripts(BufferedReader in, PrintWriter out) throws Exception
     {
-        retransformer.removeScripts(null, out);
+        updateLock.lock();
+        try {
+            retransformer.removeScripts(null, out);
+        } finally {
+            updateLock.unlock();
+        }
         out.println("OK");
         out.flush();
     }
@@ -372,6 +489,13 @@ public class TransformListener extends Thread
         out.flush();
     }
 
+    private void listMetrics(BufferedReader in, PrintWriter out) throws Exception
+    {
+        retransformer.listMetrics(out);
+        out.println("OK");
+        out.flush();
+    }
+
     private void listBootJars(BufferedReader in, PrintWriter out) throws Exception
     {
         Set<String> jars = retransformer.getLoadedBootJars();
@@ -400,7 +524,13 @@ public class TransformListener extends Thread
             strictMode = true;
         }
 
-        for (Map.Entry<Object, Object> entry : sysProps.entrySet()) {
+        // copy the entries while holding the properties lock so a concurrent update cannot break the iteration
+        List<Map.Entry<Object, Object>> entries;
+        synchronized (sysProps) {
+            entries = new ArrayList<Map.Entry<Object, Object>>(sysProps.entrySet());
+        }
+
+        for (Map.Entry<Object, Object> entry : entries) {
             String name = entry.getKey().toString();
             if (!strictMode || name.startsWith("org.jboss.byteman.")) {
                String value = entry.getValue().toString();
@@ -419,43 +549,20 @@ public class TransformListener extends Thread
         }
 
         final String endMarker = "ENDSETSYSPROPS";
+        List<String> settings = new ArrayList<String>();
         String line = in.readLine().trim();
         while (line != null && !line.equals(endMarker)) {
-            try {
-                String[] nameValuePair = line.split("=", 2);
-                if (nameValuePair.length != 2 ) {
-                    throw new Exception("missing '='");
-                }
-                String name = nameValuePair[0];
-                String value = nameValuePair[1];
-                if (strictMode && !name.startsWith("org.jboss.byteman.")) {
-                    throw new Exception("strict mode is enabled, cannot set non-byteman system property");
-                }
-                if (name.equals(Transformer.SYSPROPS_STRICT_MODE) && !value.equals("true")) {
-                    // nice try
-                    throw new Exception("cannot turn off strict mode");
-                }
-
-                // everything looks good and we are allowed to set the system property now
-                if (value.length() > 0) {
-                	// "some.sys.prop=" means the client wants to delete the system property
-                	System.setProperty(name, value);
-                	out.append("Set system property [" + name + "] to value [" + value + "]\n");
-                } else {
-                	System.clearProperty(name);
-                	out.append("Deleted system property [" + name + "]\n");
-                }
-                // ok, now tell the transformer a property has changed
-                retransformer.updateConfiguration(name);
-            } catch (Exception e) {
-                out.append("EXCEPTION ");
-                out.append("Unable to set system property [" + line + "]\n");
-                out.append(e.toString());
-                out.append("\n");
-                e.printStackTrace(out);
-            }
+            settings.add(line);
             line = in.readLine().trim();
         }
+        updateLock.lock();
+        try {
+            for (String setting : settings) {
+                setSystemProperty(setting, strictMode, out);
+            }
+        } finally {
+            updateLock.unlock();
+        }
         if (line == null || !line.equals(endMarker)) {
             out.append("ERROR\n");
             out.append("Unexpected end of line reading system properties\n");
@@ -463,4 +570,71 @@ public class TransformListener extends Thread
         out.println("OK");
         out.flush();
     }
+
+    private void setSystemProperty(String line, boolean strictMode, PrintWriter out)
+    {
+        try {
+            String[] nameValuePair = line.split("=", 2);
+            if (nameValuePair.length != 2 ) {
+                throw new Exception("missing '='");
+            }
+            String name = nameValuePair[0];
+            String value = nameValuePair[1];
+            if (strictMode && !name.startsWith("org.jboss.byteman.")) {
+                throw new Exception("strict mode is enabled, cannot set non-byteman system property");
+            }
+            if (name.equals(Transformer.SYSPROPS_STRICT_MODE) && !value.equals("true")) {
+                // nice try
+                throw new Exception("cannot turn off strict mode");
+            }
+
+            // everything looks good and we are allowed to set the system property now
+            if (value.length() > 0) {
+            	// "some.sys.prop=" means the client wants to delete the system property
+            	System.setProperty(name, value);
+            	out.append("Set system property [" + name + "] to value [" + value + "]\n");
+            } else {
+            	System.clearProperty(name);
+            	out.append("Deleted system property [" + name + "]\n");
+            }
+            // ok, now tell the transformer a property has changed
+            retransformer.updateConfiguration(name);
+        } catch (Exception e) {
+            out.append("EXCEPTION ");
+            out.append("Unable to set system property [" + line + "]\n");
+            out.append(e.toString());
+            out.append("\n");
+            e.printStackTrace(out);
+        }
+    }
+
+    /**
+     * factory for listener threads. triggering is disabled in every thread it creates
+     */
+    private static class WorkerThreadFactory implements ThreadFactory
+    {
+        private final String prefix;
+
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        WorkerThreadFactory(String prefix)
+        {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(final Runnable runnable)
+        {
+            Thread thread = new Thread(prefix + count.incrementAndGet())
+            {
+                public void run()
+                {
+                    // we don't want to see any triggers in the worker threads
+                    Rule.disableTriggersInternal();
+                    runnable.run();
+                }
+            };
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
\ No newline at end of file
@@ -67,10 +67,14 @@ public class Transformer implements ClassFileTransformer {
     {
         this.inst = inst;
         this.isRedefine = isRedefine;
-        scriptRepository = new ScriptRepository(skipOverrideRules);
+        scriptRepository = new ScriptRepository(configuration.skipOverrideRules);
         loadCache = new LoadCache(inst);
         helperManager = new HelperManager(inst, moduleSystem);
 
+        // collect all the scripts and add them in one batch so the repository only publishes one update
+
+        List<RuleScript> allScripts = new ArrayList<RuleScript>();
+        Map<String, RuleScript> scriptsByName = new HashMap<String, RuleScript>();
         Iterator<String> scriptsIter = scriptTexts.iterator();
         Iterator<String> filesIter = scriptPaths.iterator();
         while (scriptsIter.hasNext()) {
@@ -79,9 +83,13 @@ public class Transformer implements ClassFileTransformer {
             List<RuleScript> ruleScripts = scriptRepository.processScripts(scriptText, file);
             for (RuleScript ruleScript : ruleScripts) {
                 String name = ruleScript.getName();
-                RuleScript previous = scriptRepository.scriptForRuleName(name);
+                RuleScript previous = scriptsByName.get(name);
+                if (previous == null) {
+                    previous = scriptRepository.scriptForRuleName(name);
+                }
                 if (previous == null) {
-                    scriptRepository.addScript(ruleScript);
+                    scriptsByName.put(name, ruleScript);
+                    allScripts.add(ruleScript);
                 } else {
                     StringBuffer buffer = new StringBuffer();
                     buffer.append("Transformer : duplicate script name ");
@@ -99,6 +107,16 @@ public class Transformer implements ClassFileTransformer {
                 }
             }
         }
+
+        scriptRepository.addScripts(allScripts);
+
+        if (isEagerLoad()) {
+            RulePreparer.parse(scriptRepository.currentRules());
+        }
+
+        if (isMetricsJMX()) {
+            RuleMetricsManager.register(scriptRepository);
+        }
     }
 
     /**
@@ -116,9 +134,9 @@ public class Transformer implements ClassFileTransformer {
 
         List<Class<?>> transformed = new LinkedList<Class<?>>();
 
-        Class<?>[] loaded = inst.getAllLoadedClasses();
+        RetransformPlanner planner = new RetransformPlanner(inst.getAllLoadedClasses());
 
-        for (Class clazz : loaded) {
+        for (Class<?> clazz : planner.candidatesFor(scriptRepository.currentRules())) {
 
             if (isSkipClass(clazz)) {
                 continue;
@@ -140,6 +158,12 @@ public class Transformer implements ClassFileTransformer {
             }
             inst.retransformClasses(transformedArray);
         }
+
+        // the affected classes are all loaded so we can prepare the injected rules straight away
+
+        if (isEagerLoad()) {
+            RulePreparer.check(scriptRepository.currentRules());
+        }
     }
 
     public void installPolicy()
@@ -213,8 +237,10 @@ public class Transformer implements ClassFileTransformer {
     {
         boolean enabled = true;
         ClassLoader loader = originalLoader;
+        // look up the thread's trigger state once and reuse it to reenable triggering
+        TriggerState triggerState = TriggerState.current();
         try {
-            enabled = Rule.disableTriggersInternal();
+            enabled = triggerState.disable(false);
 
             byte[] newBuffer = classfileBuffer;
             // we only transform certain classes -- we do allow bootstrap classes whose loader is null
@@ -225,11 +251,29 @@ public class Transformer implements ClassFileTransformer {
                 return null;
             }
 
+            // if we have already checked this class and found no rule targets in its hierarchy then
+            // there is nothing to do unless scripts have been added or removed since
+
+            long generation = scriptRepository.getGeneration();
+
+            if (loadCache.isNoMatch(internalName, originalLoader, generation)) {
+                return null;
+            }
+
             // we will need the super class name any outer class name and the name of the interfaces the class implements
 
             ClassChecker checker = getClassChecker(newBuffer);// new ClassChecker(newBuffer);
 
-            if (checker == null || checker.isInterface()) {
+            if (checker == null) {
+                return null;
+            }
+
+            // record the checker so that lookups of this class as a super or interface of some
+            // subsequently loaded class do not need to find and parse its bytecode again
+
+            loadCache.addChecker(internalName, originalLoader, checker);
+
+            if (checker.isInterface()) {
                 return null;
             }
 
@@ -253,17 +297,21 @@ public class Transformer implements ClassFileTransformer {
             LinkedList<String> toVisit = null;
             HashSet<String> visited = null;
 
+            // track whether any name in the hierarchy is a rule target
+
+            HierarchyWalk walk = new HierarchyWalk(isSinglePassTransform());
+
             // ok, we need to check whether there are any class scripts associated with this class and if so
             // we will consider transforming the byte code
 
             // TODO -- there are almost certainly concurrency issues to deal with here if rules are being loaded/unloaded
 
-            newBuffer = tryTransform(newBuffer, internalName, loader, internalName, false);
+            newBuffer = tryTransform(newBuffer, internalName, loader, internalName, false, walk);
 
             int dotIdx = internalName.lastIndexOf('.');
 
             if (dotIdx > 0) {
-                newBuffer = tryTransform(newBuffer, internalName, loader, internalName.substring(dotIdx + 1), false);
+                newBuffer = tryTransform(newBuffer, internalName, loader, internalName.substring(dotIdx + 1), false, walk);
             }
 
             if (scriptRepository.checkInterfaces()) {
@@ -296,10 +344,10 @@ public class Transformer implements ClassFileTransformer {
                         // avoid visiting  this interface again
                         visited.add(interfaceName);
                         // now see if we have any rules for this interface
-                        newBuffer = tryTransform(newBuffer, internalName, loader, internalInterfaceName, true);
+                        newBuffer = tryTransform(newBuffer, internalName, loader, internalInterfaceName, true, walk);
                         dotIdx = internalInterfaceName.lastIndexOf('.');
                         if (dotIdx >= 0) {
-                            newBuffer = tryTransform(newBuffer, internalName, loader, internalInterfaceName.substring(dotIdx + 1), true);
+                            newBuffer = tryTransform(newBuffer, internalName, loader, internalInterfaceName.substring(dotIdx + 1), true, walk);
                         }
                         // check the extends list of this interface for new interfaces to consider
                         ClassChecker newChecker = getClassChecker(interfaceName, originalLoader);
@@ -309,6 +357,8 @@ public class Transformer implements ClassFileTransformer {
                                 interfaceName = newChecker.getInterface(i);
                                 toVisit.add(interfaceName);
                             }
+                        } else {
+                            walk.complete = false;
                         }
                     }
                 }
@@ -322,6 +372,10 @@ public class Transformer implements ClassFileTransformer {
                 String superName = checker.getSuper();
 
                 while (superName != null) {
+                    // if an earlier walk found no rule targets above this super then there is no need to go further
+                    if (loadCache.isNoMatch(superName, originalLoader, generation)) {
+                        break;
+                    }
                     // we need to check the super class structure
                     // n.b. we use the original loader here because we don't want to search the system loader
                     // when we have a class in the bootstrap loader
@@ -329,13 +383,16 @@ public class Transformer implements ClassFileTransformer {
 
                     if (checker == null) {
                         // we must have a super to continue
+                        walk.complete = false;
                         break;
                     }
 
-                    newBuffer = tryTransform(newBuffer, internalName, loader, superName, false, true);
+                    walk.supers.add(superName);
+
+                    newBuffer = tryTransform(newBuffer, internalName, loader, superName, false, true, walk);
                     dotIdx = superName.lastIndexOf('.');
                     if (dotIdx > 0) {
-                        newBuffer = tryTransform(newBuffer, internalName, loader, superName.substring(dotIdx + 1), false, true);
+                        newBuffer = tryTransform(newBuffer, internalName, loader, superName.substring(dotIdx + 1), false, true, walk);
                     }
 
                     if (scriptRepository.checkInterfaces()) {
@@ -357,10 +414,10 @@ public class Transformer implements ClassFileTransformer {
                                 // avoid visiting  this interface again
                                 visited.add(interfaceName);
                                 // now see if we have any rules for this interface
-                                newBuffer = tryTransform(newBuffer, internalName, loader, internalInterfaceName, true, true);
+                                newBuffer = tryTransform(newBuffer, internalName, loader, internalInterfaceName, true, true, walk);
                                 dotIdx = interfaceName.lastIndexOf('.');
                                 if (dotIdx >= 0) {
-                                    newBuffer = tryTransform(newBuffer, internalName, loader, internalInterfaceName.substring(dotIdx + 1), true, true);
+                                    newBuffer = tryTransform(newBuffer, internalName, loader, internalInterfaceName.substring(dotIdx + 1), true, true, walk);
                                 }
                                 // check the extends list of this interface for new interfaces to consider
                                 ClassChecker newChecker = getClassChecker(interfaceName, originalLoader);
@@ -370,6 +427,8 @@ public class Transformer implements ClassFileTransformer {
                                         interfaceName = newChecker.getInterface(i);
                                         toVisit.add(interfaceName);
                                     }
+                                } else {
+                                    walk.complete = false;
                                 }
                             }
                         }
@@ -379,6 +438,18 @@ public class Transformer implements ClassFileTransformer {
                 }
             }
 
+            if (walk.pending != null && !walk.pending.isEmpty()) {
+                newBuffer = transform(walk.pending, loader, internalName, newBuffer);
+            }
+
+            if (!walk.matched && walk.complete) {
+                // no rule can apply to this class or any of the supers we visited until scripts change
+                loadCache.addNoMatch(internalName, originalLoader, generation);
+                for (String superName : walk.supers) {
+                    loadCache.addNoMatch(superName, originalLoader, generation);
+                }
+            }
+
             if (newBuffer != classfileBuffer) {
                 // see if we need to dump the transformed bytecode for checking
                 maybeDumpClass(internalName, newBuffer);
@@ -389,7 +460,7 @@ public class Transformer implements ClassFileTransformer {
             }
         } finally {
             if (enabled) {
-                Rule.enableTriggersInternal();
+                triggerState.enable(false);
             }
         }
     }
@@ -503,6 +574,137 @@ public class Transformer implements ClassFileTransformer {
      */
     public static final String DISALLOW_DOWNCAST = BYTEMAN_PACKAGE_PREFIX + "disallow.downcast";
 
+    /**
+     * system property which enables reuse of helper instances for rules which employ the default
+     * helper. each thread retains a spare helper instance per rule which is reset and reused at
+     * the next firing rather than allocating a new helper on every firing.
+     */
+    public static final String POOL_HELPERS = BYTEMAN_PACKAGE_PREFIX + "pool.helpers";
+
+    /**
+     * system property which enables inlining of simple rule conditions into trigger code. when a
+     * rule has no BIND variables and its condition only compares trigger method parameters against
+     * numeric literals the trigger code evaluates the condition itself and only calls into the rule
+     * engine when it holds.
+     */
+    public static final String INLINE_CONDITIONS = BYTEMAN_PACKAGE_PREFIX + "inline.conditions";
+
+    /**
+     * system property which enables single pass transformation of classes matched by more than one
+     * rule. when set all rules which apply to a class are collected before any of them is injected and
+     * stack map frames are only computed once for the final transformed bytecode rather than once per rule.
+     */
+    public static final String SINGLE_PASS_TRANSFORM = BYTEMAN_PACKAGE_PREFIX + "single.pass.transform";
+
+    /**
+     * system property which enables asynchronous trace output. when set trace streams which write
+     * to files queue trace messages which are written in batches by a background thread rather than
+     * writing and flushing each message in the calling thread.
+     */
+    public static final String ASYNC_TRACE = BYTEMAN_PACKAGE_PREFIX + "async.trace";
+
+    /**
+     * system property which configures the interval in milliseconds between writes of queued
+     * asynchronous trace output.
+     */
+    public static final String ASYNC_TRACE_INTERVAL = BYTEMAN_PACKAGE_PREFIX + "async.trace.interval";
+
+    /**
+     * default interval in milliseconds between writes of queued asynchronous trace output
+     */
+    public static final int DEFAULT_ASYNC_TRACE_INTERVAL = 100;
+
+    /**
+     * system property which configures the maximum number of messages which may be queued for
+     * any one asynchronous trace stream before the overflow policy applies.
+     */
+    public static final String ASYNC_TRACE_QUEUE_SIZE = BYTEMAN_PACKAGE_PREFIX + "async.trace.queue.size";
+
+    /**
+     * default maximum number of messages which may be queued for an asynchronous trace stream
+     */
+    public static final int DEFAULT_ASYNC_TRACE_QUEUE_SIZE = 8192;
+
+    /**
+     * system property which selects the overflow policy for asynchronous trace output. when set
+     * messages which arrive while a trace stream queue is full are discarded and a count of the
+     * discarded messages is written to the stream. when unset the tracing thread waits for the
+     * background writer to make space in the queue.
+     */
+    public static final String ASYNC_TRACE_DROP = BYTEMAN_PACKAGE_PREFIX + "async.trace.drop";
+
+    /**
+     * system property which configures the maximum number of links retained by any one LinkMap. once
+     * a map is full linking a new name discards the least recently used link. when unset maps are unbounded.
+     */
+    public static final String LINK_MAP_SIZE = BYTEMAN_PACKAGE_PREFIX + "link.map.size";
+
+    /**
+     * default maximum number of links retained by a LinkMap. 0 means unbounded
+     */
+    public static final int DEFAULT_LINK_MAP_SIZE = 0;
+
+    /**
+     * system property which configures the time in milliseconds for which a link is retained by a LinkMap
+     * after it was last linked. expired links are treated as absent. when unset links never expire.
+     */
+    public static final String LINK_MAP_TTL = BYTEMAN_PACKAGE_PREFIX + "link.map.ttl";
+
+    /**
+     * system property which enables accumulation of the time spent executing each rule's binding, condition and action.
+     */
+    public static final String METRICS_TIMING = BYTEMAN_PACKAGE_PREFIX + "metrics.timing";
+
+    /**
+     * system property which causes the agent to register an MBean exposing the execution metrics for each installed rule.
+     */
+    public static final String METRICS_JMX = BYTEMAN_PACKAGE_PREFIX + "metrics.jmx";
+
+    /**
+     * system property which configures the maximum number of classes passed to any one call to
+     * Instrumentation.retransformClasses when rules are uploaded or unloaded. when a rule change affects
+     * more classes than this they are retransformed in successive batches. when unset all affected classes
+     * are retransformed in a single call.
+     */
+    public static final String RETRANSFORM_BATCH_SIZE = BYTEMAN_PACKAGE_PREFIX + "retransform.batch.size";
+
+    /**
+     * default maximum number of classes retransformed in one batch. 0 means no batching
+     */
+    public static final int DEFAULT_RETRANSFORM_BATCH_SIZE = 0;
+
+    /**
+     * system property which configures the time in milliseconds the agent waits between successive
+     * retransformation batches, allowing the application to make progress between the safepoints needed
+     * to retransform each batch. when unset the next batch is started immediately.
+     */
+    public static final String RETRANSFORM_BATCH_PAUSE = BYTEMAN_PACKAGE_PREFIX + "retransform.batch.pause";
+
+    /**
+     * system property which enables eager preparation of rules. when set the rule text of scripts
+     * loaded at startup or via the agent listener is parsed in parallel before the scripts are installed
+     * and rules injected into already loaded classes are type checked and compiled in the background
+     * rather than when they are first triggered.
+     */
+    public static final String EAGER_LOAD = BYTEMAN_PACKAGE_PREFIX + "eager.load";
+
+    /**
+     * system property which enables tiered compilation of rules which are to be compiled to bytecode.
+     * when set such a rule is interpreted from its first triggering while its compiled helper adapter is
+     * generated on a background thread. the compiled adapter is used for subsequent firings once it is ready.
+     */
+    public static final String COMPILE_IN_BACKGROUND = BYTEMAN_PACKAGE_PREFIX + "compile.background";
+
+    /**
+     * default time in milliseconds to wait between retransformation batches
+     */
+    public static final int DEFAULT_RETRANSFORM_BATCH_PAUSE = 0;
+
+    /**
+     * default lifetime in milliseconds of a LinkMap link. 0 means links never expire
+     */
+    public static final int DEFAULT_LINK_MAP_TTL = 0;
+
     /**
      * disable triggering of rules inside the current thread
      * @param isUser true if this was called by rule code false if called internally by Byteman
@@ -510,17 +712,7 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean disableTriggers(boolean isUser)
     {
-        Integer enabled = isEnabled.get();
-        if (enabled == ENABLED) {
-            isEnabled.set((isUser ? DISABLED_USER : DISABLED));
-
-            return true;
-        }
-        if (enabled == DISABLED && isUser) {
-            isEnabled.set(DISABLED_USER);
-        }
-
-        return false;
+        return TriggerState.current().disable(isUser);
     }
 
     /**
@@ -532,16 +724,7 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean enableTriggers(boolean isReset)
     {
-        Integer enabled = isEnabled.get();
-        if (enabled == ENABLED) {
-            return true;
-        }
-
-        if (isReset || enabled == DISABLED) {
-            isEnabled.set(ENABLED);
-        }
-
-        return false;
+        return TriggerState.current().enable(isReset);
     }
 
     /**
@@ -550,7 +733,7 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean isTriggeringEnabled()
     {
-        return isEnabled.get() == ENABLED;
+        return TriggerState.current().isEnabled();
     }
 
     /**
@@ -559,12 +742,7 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean isVerbose()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return verbose;
-            }
-        }
-        return verbose;
+        return configuration.verbose;
     }
 
     /**
@@ -573,12 +751,7 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean isDumpCFG()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return dumpCFG;
-            }
-        }
-        return dumpCFG;
+        return configuration.dumpCFG;
     }
 
     /**
@@ -587,42 +760,22 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean isDumpCFGPartial()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return dumpCFGPartial;
-            }
-        }
-        return dumpCFGPartial;
+        return configuration.dumpCFGPartial;
     }
 
     protected static boolean isDumpGeneratedClasses()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return dumpGeneratedClasses;
-            }
-        }
-        return dumpGeneratedClasses;
+        return configuration.dumpGeneratedClasses;
     }
 
     protected static String getDumpGeneratedClassesDir()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return dumpGeneratedClassesDir;
-            }
-        }
-        return dumpGeneratedClassesDir;
+        return configuration.dumpGeneratedClassesDir;
     }
 
     protected static boolean isDumpGeneratedClassesIntermediate()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return dumpGeneratedClassesIntermediate;
-            }
-        }
-        return dumpGeneratedClassesIntermediate;
+        return configuration.dumpGeneratedClassesIntermediate;
     }
 
     /**
@@ -631,12 +784,8 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean isDebug()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return debug || verbose;
-            }
-        }
-        return debug || verbose;
+        Configuration config = configuration;
+        return config.debug || config.verbose;
     }
 
     /**
@@ -645,12 +794,7 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean isCompileToBytecode()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return compileToBytecode;
-            }
-        }
-        return compileToBytecode;
+        return configuration.compileToBytecode;
     }
 
     /**
@@ -659,12 +803,143 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean disallowDowncast()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return disallowDowncast;
-            }
-        }
-        return disallowDowncast;
+        return configuration.disallowDowncast;
+    }
+
+    /**
+     * check whether reuse of helper instances is enabled or disabled
+     * @return true if helper instances may be pooled otherwise false
+     */
+    public static boolean isPoolHelpers()
+    {
+        return configuration.poolHelpers;
+    }
+
+    /**
+     * check whether inlining of simple rule conditions into trigger code is enabled or disabled
+     * @return true if simple conditions may be inlined otherwise false
+     */
+    public static boolean isInlineConditions()
+    {
+        return configuration.inlineConditions;
+    }
+
+    /**
+     * check whether single pass transformation of classes matched by more than one rule is enabled or disabled
+     * @return true if single pass transformation is enabled otherwise false
+     */
+    public static boolean isSinglePassTransform()
+    {
+        return configuration.singlePassTransform;
+    }
+
+    /**
+     * check whether asynchronous trace output is enabled or disabled
+     * @return true if trace files should be written asynchronously otherwise false
+     */
+    public static boolean isAsyncTrace()
+    {
+        return configuration.asyncTrace;
+    }
+
+    /**
+     * return the interval in milliseconds between writes of queued asynchronous trace output
+     * @return the interval
+     */
+    public static int getAsyncTraceInterval()
+    {
+        return configuration.asyncTraceInterval;
+    }
+
+    /**
+     * return the maximum number of messages which may be queued for an asynchronous trace stream
+     * @return the queue size
+     */
+    public static int getAsyncTraceQueueSize()
+    {
+        return configuration.asyncTraceQueueSize;
+    }
+
+    /**
+     * check whether asynchronous trace messages are dropped or the tracing thread blocks when a queue is full
+     * @return true if messages should be dropped otherwise false
+     */
+    public static boolean isAsyncTraceDrop()
+    {
+        return configuration.asyncTraceDrop;
+    }
+
+    /**
+     * return the maximum number of links retained by a LinkMap or 0 if maps are unbounded
+     * @return the maximum number of links
+     */
+    public static int getLinkMapSize()
+    {
+        return configuration.linkMapSize;
+    }
+
+    /**
+     * return the time in milliseconds for which a LinkMap retains a link or 0 if links never expire
+     * @return the link lifetime
+     */
+    public static int getLinkMapTTL()
+    {
+        return configuration.linkMapTTL;
+    }
+
+    /**
+     * check whether the time spent executing rules is accumulated in the rule metrics
+     * @return true if rule execution is timed otherwise false
+     */
+    public static boolean isMetricsTiming()
+    {
+        return configuration.metricsTiming;
+    }
+
+    /**
+     * check whether rule metrics are exposed via JMX
+     * @return true if a rule metrics MBean should be registered otherwise false
+     */
+    public static boolean isMetricsJMX()
+    {
+        return configuration.metricsJMX;
+    }
+
+    /**
+     * return the maximum number of classes retransformed in one batch or 0 if all affected classes are
+     * retransformed in a single call
+     * @return the batch size
+     */
+    public static int getRetransformBatchSize()
+    {
+        return configuration.retransformBatchSize;
+    }
+
+    /**
+     * return the time in milliseconds to wait between retransformation batches
+     * @return the pause between batches
+     */
+    public static int getRetransformBatchPause()
+    {
+        return configuration.retransformBatchPause;
+    }
+
+    /**
+     * check whether rules should be parsed, type checked and compiled eagerly
+     * @return true if eager preparation is enabled otherwise false
+     */
+    public static boolean isEagerLoad()
+    {
+        return configuration.eagerLoad;
+    }
+
+    /**
+     * check whether compiled rules are interpreted until their bytecode has been generated in the background
+     * @return true if tiered compilation is enabled otherwise false
+     */
+    public static boolean isCompileInBackground()
+    {
+        return configuration.compileInBackground;
     }
 
     /**
@@ -710,7 +985,7 @@ public class Transformer implements ClassFileTransformer {
          * java.lang is normally excluded but we can make an exception if asked
          */
         if (className.startsWith(JAVA_LANG_PACKAGE_PREFIX)) {
-            return transformAll;
+            return configuration.transformAll;
         }
 
         return true;
@@ -783,13 +1058,117 @@ public class Transformer implements ClassFileTransformer {
         return false;
     }
 
-    private byte[] tryTransform(byte[] buffer, String name, ClassLoader loader, String key, boolean isInterface)
+    /**
+     * inject a list of rule scripts into a class one after another, omitting computation of stack map
+     * frames for all but the last injection. the scripts are parsed and checked against the bytecode
+     * produced by the preceding injection so the result is the same as transforming with each script in turn.
+     * @param ruleScripts the scripts to inject in order
+     * @param loader the loader of the class being injected into
+     * @param className the name of the class being injected into
+     * @param targetClassBytes the current class bytecode
+     * @return the transformed bytecode or the original bytecode if no transform was applied
+     */
+    private byte[] transform(List<RuleScript> ruleScripts, ClassLoader loader, String className, byte[] targetClassBytes)
+    {
+        byte[] newBuffer = targetClassBytes;
+        // the context used for the last frameless injection or null if frames are up to date
+        TransformContext staleContext = null;
+        // the contexts of all injections which modified the bytecode
+        List<TransformContext> injectedContexts = new ArrayList<TransformContext>(ruleScripts.size());
+        int count = ruleScripts.size();
+
+        for (int i = 0; i < count; i++) {
+            RuleScript ruleScript = ruleScripts.get(i);
+            boolean isLast = (i == count - 1);
+            try {
+                // only do the transform if the script has not been deleted
+                synchronized (ruleScript) {
+                    if (!ruleScript.isDeleted()) {
+                        maybeDumpClassIntermediate(className, newBuffer);
+                        TransformContext transformContext = new TransformContext(this, ruleScript, className, loader, helperManager);
+                        if (transformContext.check(newBuffer)) {
+                            byte[] injected = transformContext.inject(newBuffer, isLast);
+                            if (injected != newBuffer) {
+                                newBuffer = injected;
+                                staleContext = (isLast ? null : transformContext);
+                                injectedContexts.add(transformContext);
+                            }
+                        }
+                    }
+                }
+            } catch (Throwable th) {
+                // as for tryTransform a failed transform must not stop the load or the remaining transforms
+                Helper.err("Transformer.transform : caught throwable " + th);
+                Helper.errTraceException(th);
+            }
+        }
+
+        if (staleContext != null) {
+            // the last script did not get injected so frames still need computing
+            try {
+                newBuffer = staleContext.computeFrames(newBuffer);
+            } catch (Throwable th) {
+                Helper.err("Transformer.transform : caught throwable computing frames for " + className + " : " + th);
+                Helper.errTraceException(th);
+                // none of the injected code is going to be installed so the scripts must not
+                // report it as a successful transform
+                for (TransformContext transformContext : injectedContexts) {
+                    transformContext.recordFailedInstall(th);
+                }
+                return targetClassBytes;
+            }
+        }
+
+        return newBuffer;
+    }
+
+    /**
+     * details of an in progress walk over the hierarchy of a class being transformed
+     */
+    private static class HierarchyWalk
     {
-        return tryTransform(buffer, name, loader, key, isInterface, false);
+        /**
+         * in single pass mode matching scripts are collected here and all injected once every key
+         * has been tried otherwise null
+         */
+        final List<RuleScript> pending;
+
+        /**
+         * the supers visited during the walk
+         */
+        final List<String> supers = new ArrayList<String>();
+
+        /**
+         * true if some name in the hierarchy is the target of a rule
+         */
+        boolean matched = false;
+
+        /**
+         * false if some super or interface in the hierarchy could not be checked
+         */
+        boolean complete = true;
+
+        HierarchyWalk(boolean singlePass)
+        {
+            pending = (singlePass ? new ArrayList<RuleScript>() : null);
+        }
+    }
+
+    private byte[] tryTransform(byte[] buffer, String name, ClassLoader loader, String key, boolean isInterface, HierarchyWalk walk)
+    {
+        return tryTransform(buffer, name, loader, key, isInterface, false, walk);
     }
 
-    private byte[] tryTransform(byte[] buffer, String name, ClassLoader loader, String key, boolean isInterface, boolean isOverride)
+    private byte[] tryTransform(byte[] buffer, String name, ClassLoader loader, String key, boolean isInterface, boolean isOverride, HierarchyWalk walk)
     {
+        // reject names which no rule targets without locking the script indexes
+
+        if (!scriptRepository.isTargetName(key, isInterface)) {
+            return buffer;
+        }
+
+        walk.matched = true;
+
         List<RuleScript> ruleScripts;
 
         if (isInterface) {
@@ -810,6 +1189,11 @@ public class Transformer implements ClassFileTransformer {
                     // we only transform via isOverride rules if isOverride is true
                     // we transform via any matching rules if isOverride is false
                     if (!isOverride || ruleScript.isOverride()) {
+                        if (walk.pending != null) {
+                            // defer the transform until all matching scripts have been found
+                            walk.pending.add(ruleScript);
+                            continue;
+                        }
                         // only do the transform if the script has not been deleted
                         synchronized (ruleScript) {
                             if (!ruleScript.isDeleted()) {
@@ -911,11 +1295,22 @@ public class Transformer implements ClassFileTransformer {
         // may not have loaded the super. if we force a load now then transforms will not be performed on
         // the super class. this may cause us to miss the chance to apply rule injection into the super
 
+        // see if we already have a checker for this class either from transforming it
+        // or from a previous lookup
+
+        org.jboss.byteman.agent.check.ClassChecker checker = loadCache.lookupChecker(name, baseLoader);
+
+        if (checker != null) {
+            return checker;
+        }
+
         ClassLoader loader = baseLoader;
         Class clazz = loadCache.lookupClass(name, loader);
 
         if (clazz != null) {
-            return new org.jboss.byteman.agent.check.LoadedClassChecker(clazz);
+            checker = new org.jboss.byteman.agent.check.LoadedClassChecker(clazz);
+            loadCache.addChecker(name, baseLoader, checker);
+            return checker;
         }
 
         // ok, instead try loading the bytecode as a resource - user-defined loaders may not support this but
@@ -940,7 +1335,9 @@ public class Transformer implements ClassFileTransformer {
                     }
                     count += read;
                 }
-                return new org.jboss.byteman.agent.check.BytecodeChecker(bytecode);
+                checker = new org.jboss.byteman.agent.check.BytecodeChecker(bytecode);
+                loadCache.addChecker(name, baseLoader, checker);
+                return checker;
             } else {
                 // throw new IOException("unable to load bytecode for for class " + name);
                 if (isVerbose()) {
@@ -1033,7 +1430,7 @@ public class Transformer implements ClassFileTransformer {
      */
     private byte[] maybeVerifyTransformedBytes(ClassLoader loader, String classname, ProtectionDomain protectionDomain, byte[] bytes)
     {
-        if (verifyTransformedBytes) {
+        if (configuration.verifyTransformedBytes) {
             return verifyTransformedBytes(loader, classname, protectionDomain, bytes);
         } else {
             return bytes;
@@ -1100,65 +1497,227 @@ public class Transformer implements ClassFileTransformer {
     /* configuration values defined via system property settings */
 
     /**
-     *  switch to control verbose output during rule processing
+     * an immutable snapshot of the configuration values defined via system property settings. when
+     * allowConfigUpdate is true a property update installs a new snapshot rather than modifying the
+     * current one so readers only ever need a single volatile read to see a consistent configuration.
      */
-    private static boolean verbose = computeVerbose();
+    private static final class Configuration
+    {
+        /**
+         *  switch to control verbose output during rule processing
+         */
+        final boolean verbose;
 
-    /**
-     *  switch to control control flow graph output during rule processing
-     */
-    private static boolean dumpCFGPartial = computeDumpCFGPartial();
+        /**
+         *  switch to control control flow graph output during rule processing
+         */
+        final boolean dumpCFGPartial;
 
-    /**
-     *  switch to control control flow graph output during rule processing
-     */
-    private static boolean dumpCFG = computeDumpCFG();
+        /**
+         *  switch to control control flow graph output during rule processing
+         */
+        final boolean dumpCFG;
 
-    /**
-     *  switch to control debug output during rule processing
-     */
-    private static boolean debug = computeDebug();
+        /**
+         *  switch to control debug output during rule processing
+         */
+        final boolean debug;
 
-    /**
-     *  switch to control whether rules are compiled to bytecode or not
-     */
-    private static boolean compileToBytecode = computeCompileToBytecode();
+        /**
+         *  switch to control whether rules are compiled to bytecode or not
+         */
+        final boolean compileToBytecode;
 
-    /**
-     *  switch to control whether rules are injected into overriding methods
-     */
-    private static boolean skipOverrideRules = computeSkipOverrideRules();
+        /**
+         *  switch to control whether rules are injected into overriding methods
+         */
+        final boolean skipOverrideRules;
 
-    /**
-     *  switch to control dumping of generated bytecode to .class files
-     */
-    private static boolean dumpGeneratedClasses = computeDumpGeneratedClasses();
+        /**
+         *  switch to control dumping of generated bytecode to .class files
+         */
+        final boolean dumpGeneratedClasses;
 
-    /**
-     *  switch to control dumping of generated bytecode to .class files
-     */
-    private static boolean dumpGeneratedClassesIntermediate = computeDumpGeneratedClassesIntermediate();
+        /**
+         *  switch to control dumping of generated bytecode to .class files
+         */
+        final boolean dumpGeneratedClassesIntermediate;
 
-    /**
-     *  directory in which to dump generated bytecode .class files (defaults to "."
-     */
-    private static String dumpGeneratedClassesDir = computeDumpGeneratedClassesDir();
+        /**
+         *  directory in which to dump generated bytecode .class files (defaults to "."
+         */
+        final String dumpGeneratedClassesDir;
 
-    /**
-     *  switch to control whether transformations will be applied to java.lang.* classes
-     */
-    private static boolean transformAll = computeTransformAll();
+        /**
+         *  switch to control whether transformations will be applied to java.lang.* classes
+         */
+        final boolean transformAll;
 
-    /**
-     * switch to control whether we attempt to verify transformed bytecode before returning it by
-     * consructing a temporary class from it.
-     */
-    private static boolean verifyTransformedBytes = computeVerifyTransformedBytes();
+        /**
+         * switch to control whether we attempt to verify transformed bytecode before returning it by
+         * consructing a temporary class from it.
+         */
+        final boolean verifyTransformedBytes;
+
+        /**
+         * switch which determines whether downcasts in binding initialisations are disallowed
+         */
+        final boolean disallowDowncast;
+
+        /**
+         * switch which determines whether helper instances are reused across rule firings
+         */
+        final boolean poolHelpers;
+
+        /**
+         * switch which determines whether simple rule conditions are evaluated inline in trigger code
+         */
+        final boolean inlineConditions;
+
+        /**
+         * switch which determines whether all rules which apply to a class are injected in a single pass
+         */
+        final boolean singlePassTransform;
+
+        /**
+         * switch which determines whether trace files are written asynchronously
+         */
+        final boolean asyncTrace;
+
+        /**
+         * the interval in milliseconds between writes of queued asynchronous trace output
+         */
+        final int asyncTraceInterval;
+
+        /**
+         * the maximum number of messages which may be queued for an asynchronous trace stream
+         */
+        final int asyncTraceQueueSize;
+
+        /**
+         * switch which determines whether asynchronous trace messages are dropped when a queue is full
+         */
+        final boolean asyncTraceDrop;
+
+        /**
+         * the maximum number of links retained by a LinkMap or 0 if maps are unbounded
+         */
+        final int linkMapSize;
+
+        /**
+         * the time in milliseconds for which a LinkMap retains a link or 0 if links never expire
+         */
+        final int linkMapTTL;
+
+        /**
+         * switch which determines whether the time spent executing rules is accumulated in the rule metrics
+         */
+        final boolean metricsTiming;
+
+        /**
+         * switch which determines whether a rule metrics MBean is registered at agent startup
+         */
+        final boolean metricsJMX;
+
+        /**
+         * the maximum number of classes retransformed in one batch or 0 if batching is disabled
+         */
+        final int retransformBatchSize;
+
+        /**
+         * the time in milliseconds to wait between retransformation batches
+         */
+        final int retransformBatchPause;
+
+        /**
+         * switch which determines whether rules are parsed, type checked and compiled eagerly
+         */
+        final boolean eagerLoad;
+
+        /**
+         * switch which determines whether compiled rules are generated in the background
+         */
+        final boolean compileInBackground;
+
+        /**
+         * create a snapshot using the values currently defined via system property settings
+         */
+        Configuration()
+        {
+            verbose = computeVerbose();
+            dumpCFGPartial = computeDumpCFGPartial();
+            dumpCFG = computeDumpCFG();
+            debug = computeDebug();
+            compileToBytecode = computeCompileToBytecode();
+            skipOverrideRules = computeSkipOverrideRules();
+            dumpGeneratedClasses = computeDumpGeneratedClasses();
+            dumpGeneratedClassesIntermediate = computeDumpGeneratedClassesIntermediate();
+            dumpGeneratedClassesDir = computeDumpGeneratedClassesDir();
+            transformAll = computeTransformAll();
+            verifyTransformedBytes = computeVerifyTransformedBytes();
+            disallowDowncast = computeDisallowDowncast();
+            poolHelpers = computePoolHelpers();
+            inlineConditions = computeInlineConditions();
+            singlePassTransform = computeSinglePassTransform();
+            asyncTrace = computeAsyncTrace();
+            asyncTraceInterval = computeAsyncTraceInterval();
+            asyncTraceQueueSize = computeAsyncTraceQueueSize();
+            asyncTraceDrop = computeAsyncTraceDrop();
+            linkMapSize = computeLinkMapSize();
+            linkMapTTL = computeLinkMapTTL();
+            metricsTiming = computeMetricsTiming();
+            metricsJMX = computeMetricsJMX();
+            retransformBatchSize = computeRetransformBatchSize();
+            retransformBatchPause = computeRetransformBatchPause();
+            eagerLoad = computeEagerLoad();
+            compileInBackground = computeCompileInBackground();
+        }
+
+        /**
+         * create a snapshot which copies the values in a previous snapshot except for the setting
+         * controlled by an updated property, which is recomputed from its current system property value
+         * @param previous the snapshot to be copied
+         * @param property the org.jboss.byteman.* system property which has been updated
+         */
+        Configuration(Configuration previous, String property)
+        {
+            // n.b. this needs to be kept up to date with each new config setting that is added
+            // n.b. DUMP_CFG_PARTIAL, DUMP_CFG, SKIP_OVERRIDE_RULES and METRICS_JMX deliberately cannot be overridden
+
+            verbose = (VERBOSE.equals(property) ? computeVerbose() : previous.verbose);
+            dumpCFGPartial = previous.dumpCFGPartial;
+            dumpCFG = previous.dumpCFG;
+            debug = (DEBUG.equals(property) ? computeDebug() : previous.debug);
+            compileToBytecode = (COMPILE_TO_BYTECODE.equals(property) ? computeCompileToBytecode() : previous.compileToBytecode);
+            skipOverrideRules = previous.skipOverrideRules;
+            dumpGeneratedClasses = (DUMP_GENERATED_CLASSES.equals(property) ? computeDumpGeneratedClasses() : previous.dumpGeneratedClasses);
+            dumpGeneratedClassesIntermediate = (DUMP_GENERATED_CLASSES_INTERMEDIATE.equals(property) ? computeDumpGeneratedClassesIntermediate() : previous.dumpGeneratedClassesIntermediate);
+            dumpGeneratedClassesDir = (DUMP_GENERATED_CLASSES_DIR.equals(property) ? computeDumpGeneratedClassesDir() : previous.dumpGeneratedClassesDir);
+            transformAll = (TRANSFORM_ALL.equals(property) ? computeTransformAll() : previous.transformAll);
+            verifyTransformedBytes = previous.verifyTransformedBytes;
+            disallowDowncast = (DISALLOW_DOWNCAST.equals(property) ? computeDisallowDowncast() : previous.disallowDowncast);
+            poolHelpers = (POOL_HELPERS.equals(property) ? computePoolHelpers() : previous.poolHelpers);
+            inlineConditions = (INLINE_CONDITIONS.equals(property) ? computeInlineConditions() : previous.inlineConditions);
+            singlePassTransform = (SINGLE_PASS_TRANSFORM.equals(property) ? computeSinglePassTransform() : previous.singlePassTransform);
+            asyncTrace = (ASYNC_TRACE.equals(property) ? computeAsyncTrace() : previous.asyncTrace);
+            asyncTraceInterval = (ASYNC_TRACE_INTERVAL.equals(property) ? computeAsyncTraceInterval() : previous.asyncTraceInterval);
+            asyncTraceQueueSize = (ASYNC_TRACE_QUEUE_SIZE.equals(property) ? computeAsyncTraceQueueSize() : previous.asyncTraceQueueSize);
+            asyncTraceDrop = (ASYNC_TRACE_DROP.equals(property) ? computeAsyncTraceDrop() : previous.asyncTraceDrop);
+            linkMapSize = (LINK_MAP_SIZE.equals(property) ? computeLinkMapSize() : previous.linkMapSize);
+            linkMapTTL = (LINK_MAP_TTL.equals(property) ? computeLinkMapTTL() : previous.linkMapTTL);
+            metricsTiming = (METRICS_TIMING.equals(property) ? computeMetricsTiming() : previous.metricsTiming);
+            metricsJMX = previous.metricsJMX;
+            retransformBatchSize = (RETRANSFORM_BATCH_SIZE.equals(property) ? computeRetransformBatchSize() : previous.retransformBatchSize);
+            retransformBatchPause = (RETRANSFORM_BATCH_PAUSE.equals(property) ? computeRetransformBatchPause() : previous.retransformBatchPause);
+            eagerLoad = (EAGER_LOAD.equals(property) ? computeEagerLoad() : previous.eagerLoad);
+            compileInBackground = (COMPILE_IN_BACKGROUND.equals(property) ? computeCompileInBackground() : previous.compileInBackground);
+        }
+    }
 
     /**
-     * switch which determines whether downcasts in binding initialisations are disallowed
+     * the current configuration snapshot
      */
-    private static boolean disallowDowncast = computeDisallowDowncast();
+    private static volatile Configuration configuration = new Configuration();
 
     /**
      * master switch which determines whether or not config values can be updated
@@ -1166,10 +1725,10 @@ public class Transformer implements ClassFileTransformer {
     private static boolean allowConfigUpdate = (System.getProperty(ALLOW_CONFIG_UPDATE) != null);
 
     /**
-     * lock object used to control getters and setters when allowConfigUpdate is true
+     * lock object used to serialize installation of configuration snapshots when allowConfigUpdate is true
      */
 
-    private static Object configLock = new Object();
+    private static final Object configLock = new Object();
 
     /* methods which compute values to be used for the verbose configuration setting */
 
@@ -1243,102 +1802,138 @@ public class Transformer implements ClassFileTransformer {
         return (System.getProperty(DISALLOW_DOWNCAST) != null);
     }
 
-    private void checkConfiguration(String property)
-    {
-        // n.b. this needs to be kept up to date with each new config setting that is added
+    private static boolean computePoolHelpers() {
+        return (System.getProperty(POOL_HELPERS) != null);
+    }
 
-        if (VERBOSE.equals(property)) {
-            boolean value = computeVerbose();
-            synchronized (configLock) {
-                verbose = value;
-            }
-            return;
-        }
+    private static boolean computeInlineConditions() {
+        return (System.getProperty(INLINE_CONDITIONS) != null);
+    }
 
-        /*
-         * hmm. don't think we want to allow this to be overridden
-        if (DUMP_CFG_PARTIAL.equals(property)) {
-            boolean value = computeDumpCFGPartial();
-            boolean value2 = computeDumpCFG();
-            synchronized (configLock) {
-                dumpCFGPartial = value;
-                dumpCFG = value2;
-            }
-            return;
-        }
-         */
+    private static boolean computeSinglePassTransform() {
+        return (System.getProperty(SINGLE_PASS_TRANSFORM) != null);
+    }
 
-        /*
-         * hmm. don't think we want to allow this to be overridden
-        if (DUMP_CFG.equals(property)) {
-            boolean value = computeDumpCFG();
-            synchronized (configLock) {
-                dumpCFG = value;
-            }
-            return;
-        }
-         */
+    private static boolean computeAsyncTrace() {
+        return (System.getProperty(ASYNC_TRACE) != null);
+    }
 
-        if (DEBUG.equals(property)) {
-            boolean value = computeDebug();
-            synchronized (configLock) {
-                debug = value;
+    private static int computeAsyncTraceInterval() {
+        String value = System.getProperty(ASYNC_TRACE_INTERVAL);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                // fall through to the default
             }
-            return;
         }
+        return DEFAULT_ASYNC_TRACE_INTERVAL;
+    }
 
-        // n.b. this deliberately cannot be mixed with the old compatibility property -- user beware!
-        if (COMPILE_TO_BYTECODE.equals(property)) {
-            boolean value = computeCompileToBytecode();
-            synchronized (configLock) {
-                compileToBytecode = value;
+    private static int computeAsyncTraceQueueSize() {
+        String value = System.getProperty(ASYNC_TRACE_QUEUE_SIZE);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                // fall through to the default
             }
         }
+        return DEFAULT_ASYNC_TRACE_QUEUE_SIZE;
+    }
 
-        /*
-         * hmm. don't think we want to allow this to be overridden
-        if (SKIP_OVERRIDE_RULES.equals(property)) {
-            boolean value = computeSkipOverrideRules();
-            synchronized (configLock) {
-                skipOverrideRules = value;
-            }
-            return;
-        }
-         */
+    private static boolean computeAsyncTraceDrop() {
+        return (System.getProperty(ASYNC_TRACE_DROP) != null);
+    }
 
-        if (DUMP_GENERATED_CLASSES.equals(property)) {
-            boolean value = computeDumpGeneratedClasses();
-            synchronized (configLock) {
-                dumpGeneratedClasses = value;
+    private static int computeLinkMapSize() {
+        String value = System.getProperty(LINK_MAP_SIZE);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                // fall through to the default
             }
         }
+        return DEFAULT_LINK_MAP_SIZE;
+    }
 
-        if (DUMP_GENERATED_CLASSES_DIR.equals(property)) {
-            String value = computeDumpGeneratedClassesDir();
-            synchronized (configLock) {
-                dumpGeneratedClassesDir = value;
+    private static int computeLinkMapTTL() {
+        String value = System.getProperty(LINK_MAP_TTL);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                // fall through to the default
             }
         }
+        return DEFAULT_LINK_MAP_TTL;
+    }
+
+    private static boolean computeMetricsTiming() {
+        return (System.getProperty(METRICS_TIMING) != null);
+    }
 
-        if (DUMP_GENERATED_CLASSES_INTERMEDIATE.equals(property)) {
-            boolean value = computeDumpGeneratedClassesIntermediate();
-            synchronized (configLock) {
-                dumpGeneratedClassesIntermediate = value;
+    private static boolean computeMetricsJMX() {
+        return (System.getProperty(METRICS_JMX) != null);
+    }
+
+    private static int computeRetransformBatchSize() {
+        String value = System.getProperty(RETRANSFORM_BATCH_SIZE);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                // fall through to the default
             }
         }
+        return DEFAULT_RETRANSFORM_BATCH_SIZE;
+    }
 
-        if (TRANSFORM_ALL.equals(property)) {
-            boolean value = computeTransformAll();
-            synchronized (configLock) {
-                transformAll = value;
+    private static int computeRetransformBatchPause() {
+        String value = System.getProperty(RETRANSFORM_BATCH_PAUSE);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                // fall through to the default
             }
         }
+        return DEFAULT_RETRANSFORM_BATCH_PAUSE;
+    }
 
-        if (DISALLOW_DOWNCAST.equals(property)) {
-            boolean value = computeDisallowDowncast();
-            synchronized (configLock) {
-                disallowDowncast = value;
-            }
+    private static boolean computeEagerLoad() {
+        return (System.getProperty(EAGER_LOAD) != null);
+    }
+
+    private static boolean computeCompileInBackground() {
+        return (System.getProperty(COMPILE_IN_BACKGROUND) != null);
+    }
+
+    private void checkConfiguration(String property)
+    {
+        // install a new snapshot rather than updating the current one so that readers never need to lock
+
+        synchronized (configLock) {
+            configuration = new Configuration(configuration, property);
         }
     }
 
@@ -1401,13 +1996,5 @@ public class Transformer implements ClassFileTransformer {
             return file.mkdirs();
         }
     }
-    /**
-     * Thread local holding a per thread Boolean which is true if triggering is disabled and false if triggering is
-     * enabled
-     */
-    private static ThreadLocal<Integer> isEnabled = new ThreadLocal<Integer>();
-    private final static Integer DISABLED_USER = Integer.valueOf(0);
-    private final static Integer DISABLED = Integer.valueOf(1);
-    private final static Integer ENABLED = null;
 
 }
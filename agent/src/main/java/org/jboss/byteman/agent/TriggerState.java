@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+package org.jboss.byteman.agent;
+
+import org.jboss.byteman.rule.helper.HelperAdapter;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * mutable per thread record of whether rule triggering is enabled in that thread. a single instance
+ * is associated with each thread which consults it so that a change of state updates a field rather
+ * than replacing the value held by the thread local. callers which need to check and then update
+ * the state, such as the rule execute path, can look up the instance once and reuse it. the instance
+ * also holds any helpers pooled by rules fired in the thread, indexed by rule table index.
+ */
+public final class TriggerState
+{
+    /**
+     * triggering is enabled
+     */
+    private final static int ENABLED = 0;
+
+    /**
+     * triggering was disabled by Byteman and may be reenabled by Byteman or by rule code
+     */
+    private final static int DISABLED = 1;
+
+    /**
+     * triggering was disabled by rule code and may only be reenabled by rule code
+     */
+    private final static int DISABLED_USER = 2;
+
+    private int state;
+
+    /**
+     * state for the per thread pseudo-random generator used when sampling rule firings
+     */
+    private long seed;
+
+    private TriggerState()
+    {
+        this.state = ENABLED;
+        this.seed = seeder.addAndGet(SEED_INCREMENT) | 1L;
+    }
+
+    /**
+     * return the trigger state for the current thread
+     * @return the trigger state
+     */
+    public static TriggerState current()
+    {
+        return threadState.get();
+    }
+
+    /**
+     * disable triggering of rules inside the owning thread
+     * @param isUser true if this was called by rule code false if called internally by Byteman
+     * @return true if triggering was previously enabled and false if it was already disabled
+     */
+    public boolean disable(boolean isUser)
+    {
+        if (state == ENABLED) {
+            state = (isUser ? DISABLED_USER : DISABLED);
+            return true;
+        }
+        if (state == DISABLED && isUser) {
+            state = DISABLED_USER;
+        }
+        return false;
+    }
+
+    /**
+     * enable triggering of rules inside the owning thread
+     * @param isReset true if this was called by rule code and hence should reset a setting
+     *                enabled by rule code false if called internally by Byteman and hence
+     *                should not reset a setting enabled by rule code
+     * @return true if triggering was previously enabled and false if it was already disabled
+     */
+    public boolean enable(boolean isReset)
+    {
+        if (state == ENABLED) {
+            return true;
+        }
+        if (isReset || state == DISABLED) {
+            state = ENABLED;
+        }
+        return false;
+    }
+
+    /**
+     * check if triggering of rules is enabled inside the owning thread
+     * @return true if triggering is enabled and false if it is disabled
+     */
+    public boolean isEnabled()
+    {
+        return state == ENABLED;
+    }
+
+    /**
+     * return the next value from a pseudo-random sequence private to the owning thread. the
+     * generator is an xorshift64* generator so it needs no synchronization and is cheap enough
+     * to be consulted on every trigger.
+     * @return a pseudo-random 64 bit value
+     */
+    public long nextRandom()
+    {
+        long x = seed;
+        x ^= (x >>> 12);
+        x ^= (x << 25);
+        x ^= (x >>> 27);
+        seed = x;
+        return x * 0x2545F4914F6CDD1DL;
+    }
+
+    /**
+     * remove and return the helper pooled in the owning thread for the rule with a given rule
+     * table index
+     * @param index the rule table index of the rule
+     * @return the pooled helper or null if there is none
+     */
+    public HelperAdapter pollHelper(int index)
+    {
+        AtomicReferenceArray<HelperAdapter> pool = helpers;
+        if (pool == null || index >= pool.length()) {
+            return null;
+        }
+        HelperAdapter helper = pool.get(index);
+        if (helper != null) {
+            pool.set(index, null);
+        }
+        return helper;
+    }
+
+    /**
+     * pool a helper in the owning thread for the rule with a given rule table index. the caller
+     * must check that the rule still occupies its slot after pooling the helper and withdraw it using
+     * {@link #unpoolHelper} if not. that ensures the helper cannot escape a concurrent call to
+     * {@link #discardHelpers}.
+     * @param index the rule table index of the rule
+     * @param helper the helper to be pooled
+     */
+    public void poolHelper(int index, HelperAdapter helper)
+    {
+        AtomicReferenceArray<HelperAdapter> pool = helpers;
+        if (pool == null || index >= pool.length()) {
+            // the old pool is dropped rather than copied. copying could resurrect a helper
+            // discarded from the old pool after it had been read
+            int length = (pool == null ? MIN_POOL_SIZE : pool.length() * 2);
+            while (length <= index) {
+                length *= 2;
+            }
+            if (pool == null) {
+                synchronized (poolingStates) {
+                    poolingStates.add(new WeakReference<TriggerState>(this));
+                }
+            }
+            pool = new AtomicReferenceArray<HelperAdapter>(length);
+            helpers = pool;
+        }
+        pool.set(index, helper);
+    }
+
+    /**
+     * withdraw a helper pooled in the owning thread if it is still present
+     * @param index the rule table index of the rule
+     * @param helper the helper to be withdrawn
+     */
+    public void unpoolHelper(int index, HelperAdapter helper)
+    {
+        AtomicReferenceArray<HelperAdapter> pool = helpers;
+        if (pool != null && index < pool.length()) {
+            pool.compareAndSet(index, helper, null);
+        }
+    }
+
+    /**
+     * discard the helpers pooled in every thread for a given rule table index. this is called
+     * once a rule has been removed from its slot so that pooled helpers do not keep the rule, and
+     * hence its trigger class loader, reachable from threads which no longer fire it.
+     * @param index the rule table index of the removed rule
+     */
+    public static void discardHelpers(int index)
+    {
+        synchronized (poolingStates) {
+            Iterator<WeakReference<TriggerState>> iterator = poolingStates.iterator();
+            while (iterator.hasNext()) {
+                TriggerState triggerState = iterator.next().get();
+                if (triggerState == null) {
+                    iterator.remove();
+                    continue;
+                }
+                AtomicReferenceArray<HelperAdapter> pool = triggerState.helpers;
+                if (pool != null && index < pool.length()) {
+                    pool.set(index, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * helpers pooled by rules fired in the owning thread indexed by rule table index or null if no
+     * rule has pooled a helper in this thread. only the owning thread installs entries but entries
+     * may be cleared by other threads when a rule is removed.
+     */
+    private volatile AtomicReferenceArray<HelperAdapter> helpers;
+
+    /**
+     * the initial size of a helper pool
+     */
+    private final static int MIN_POOL_SIZE = 16;
+
+    /**
+     * all trigger states which have pooled a helper. these are held weakly so that the state of
+     * an exited thread can be collected along with its pooled helpers.
+     */
+    private static final List<WeakReference<TriggerState>> poolingStates = new ArrayList<WeakReference<TriggerState>>();
+
+    /**
+     * spacing between the seeds of successive threads' generators
+     */
+    private final static long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    private static AtomicLong seeder = new AtomicLong(System.nanoTime());
+
+    private static ThreadLocal<TriggerState> threadState = new ThreadLocal<TriggerState>()
+    {
+        protected TriggerState initialValue()
+        {
+            return new TriggerState();
+        }
+    };
+}
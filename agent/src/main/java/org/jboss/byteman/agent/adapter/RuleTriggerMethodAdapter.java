@@ -32,6 +32,14 @@ import org.objectweb.asm.commons.Method;
 import org.jboss.byteman.rule.type.TypeHelper;
 import org.jboss.byteman.rule.binding.Bindings;
 import org.jboss.byteman.rule.binding.Binding;
+import org.jboss.byteman.rule.expression.BooleanLiteral;
+import org.jboss.byteman.rule.expression.ComparisonExpression;
+import org.jboss.byteman.rule.expression.DollarExpression;
+import org.jboss.byteman.rule.expression.Expression;
+import org.jboss.byteman.rule.expression.LogicalExpression;
+import org.jboss.byteman.rule.expression.NotExpression;
+import org.jboss.byteman.rule.expression.NumericLiteral;
+import org.jboss.byteman.rule.expression.OperExpression;
 import org.jboss.byteman.agent.adapter.cfg.*;
 import org.jboss.byteman.agent.Transformer;
 import org.jboss.byteman.agent.RuleScript;
@@ -491,6 +499,50 @@ public class RuleTriggerMethodAdapter extends RuleGeneratorAdapter
         return doUpdates;
     }
 
+    /**
+     * stack the value of the rule's single binding without boxing it into an argument array. this is
+     * only possible when the rule has one binding supplied by the trigger method which is a parameter,
+     * return value or throwable and the rule does not update it.
+     * @param saveSlot a local variable slot containing either the return value or the throwable value
+     * @return the type of the execute method parameter used to pass the stacked value or null if the
+     * rule requires an argument array in which case nothing has been stacked
+     */
+    private Type doTypedArgLoad(int saveSlot)
+    {
+        if (callArrayBindings.size() != 1) {
+            return null;
+        }
+        Binding binding = callArrayBindings.get(0);
+        if (binding != rule.getTypedCallBinding()) {
+            return null;
+        }
+        Type type;
+        if (binding.isParam()) {
+            int idx = binding.getIndex() - 1;
+            type = argumentTypes[idx];
+            loadArg(idx);
+        } else if (binding.isThrowable() || binding.isReturn()) {
+            type = saveValueType;
+            loadLocal(saveSlot);
+        } else {
+            return null;
+        }
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+            case Type.BYTE:
+            case Type.CHAR:
+            case Type.SHORT:
+            case Type.INT:
+                return Type.INT_TYPE;
+            case Type.LONG:
+            case Type.FLOAT:
+            case Type.DOUBLE:
+                return type;
+            default:
+                return Type.getType(Object.class);
+        }
+    }
+
     /**
      * plant code to copy back any updated values from the argument array to the relevant local variable slots
      */
@@ -1072,13 +1124,22 @@ public class RuleTriggerMethodAdapter extends RuleGeneratorAdapter
         // we need to set this here to avoid recursive re-entry into inject routine
 
         rule.setTypeInfo(getTriggerClassName(), access, name, descriptor, exceptions);
-        String key = rule.getKey();
+        int slot = rule.getSlot();
         Type ruleType = Type.getType(TypeHelper.externalizeType("org.jboss.byteman.rule.Rule"));
-        Method method = Method.getMethod("void execute(String, Object, Object[])");
+        Method method = Method.getMethod("void execute(int, Object, Object[])");
         // we are at the relevant line in the method -- so add a trigger call here
         if (Transformer.isVerbose()) {
             System.out.println("RuleTriggerMethodAdapter.injectTriggerPoint : inserting trigger into " + getTriggerClassName() + "." + getMethodName() + " for rule " + rule.getName());
         }
+        // if the condition is simple enough then evaluate it here and skip the trigger call when it is false
+        Label skipLabel = null;
+        if (Transformer.isInlineConditions() && canInlineCondition()) {
+            if (Transformer.isVerbose()) {
+                System.out.println("RuleTriggerMethodAdapter.injectTriggerPoint : inlining condition for rule " + rule.getName());
+            }
+            skipLabel = newLabel();
+            inlineCondition(rule.getCondition().getExpression(), false, skipLabel, true);
+        }
         Label startLabel = newLabel();
         Label endLabel = newLabel();
         visitTriggerStart(startLabel);
@@ -1099,14 +1160,21 @@ public class RuleTriggerMethodAdapter extends RuleGeneratorAdapter
         } else {
             saveValueSlot = -1;
         }
-        push(key);
+        push(slot);
         if ((access & Opcodes.ACC_STATIC) == 0) {
             loadThis();
         } else {
             push((Type)null);
         }
         boolean handleUpdates;
-        handleUpdates = doArgLoad(saveValueSlot);
+        Type valueType = doTypedArgLoad(saveValueSlot);
+        if (valueType != null) {
+            // the value was passed directly so we need the matching execute method
+            method = new Method("execute", Type.VOID_TYPE, new Type[] { Type.INT_TYPE, Type.getType(Object.class), valueType });
+            handleUpdates = false;
+        } else {
+            handleUpdates = doArgLoad(saveValueSlot);
+        }
         // free the local slot if we need to
         if (saveValueSlot >= 0) {
             popLocal(saveValueSlot);
@@ -1117,5 +1185,231 @@ public class RuleTriggerMethodAdapter extends RuleGeneratorAdapter
             doArgUpdate();
         }
         visitTriggerEnd(endLabel);
+        if (skipLabel != null) {
+            // the rule engine is not called when an inlined condition is false so tell it the
+            // rule was triggered and failed its condition. this keeps the rule metrics the same
+            // whether or not the condition is inlined
+            Label doneLabel = newLabel();
+            goTo(doneLabel);
+            visitLabel(skipLabel);
+            push(slot);
+            invokeStatic(ruleType, Method.getMethod("void conditionSkipped(int)"));
+            visitLabel(doneLabel);
+        }
+    }
+
+    /**
+     * check whether the rule condition can be evaluated by trigger code before calling into the rule
+     * engine. this is only possible if the rule has no BIND variables, since their initialisers must be
+     * executed whatever the outcome of the condition, and the condition only combines comparisons of
+     * primitive trigger method parameters and numeric literals using boolean operators.
+     * @return true if the condition can be inlined otherwise false
+     */
+    private boolean canInlineCondition()
+    {
+        Expression expression = rule.getCondition().getExpression();
+        if (expression == null) {
+            return false;
+        }
+        Iterator<Binding> iterator = rule.getBindings().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isBindVar()) {
+                return false;
+            }
+        }
+        return getInlineType(expression) == Type.BOOLEAN_TYPE;
+    }
+
+    /**
+     * compute the type of value an inlined expression will stack
+     * @param expression an expression from the rule condition
+     * @return the type of the value or null if the expression cannot be inlined
+     */
+    private Type getInlineType(Expression expression)
+    {
+        if (expression instanceof BooleanLiteral) {
+            return Type.BOOLEAN_TYPE;
+        } else if (expression instanceof NumericLiteral) {
+            return (((NumericLiteral)expression).getValue() instanceof Integer ? Type.INT_TYPE : Type.FLOAT_TYPE);
+        } else if (expression instanceof DollarExpression) {
+            int index = ((DollarExpression)expression).getIndex();
+            if (index < 1 || index > argumentTypes.length) {
+                return null;
+            }
+            Type type = argumentTypes[index - 1];
+            switch (type.getSort()) {
+                case Type.BOOLEAN:
+                    return Type.BOOLEAN_TYPE;
+                case Type.BYTE:
+                case Type.CHAR:
+                case Type.SHORT:
+                case Type.INT:
+                    return Type.INT_TYPE;
+                case Type.LONG:
+                case Type.FLOAT:
+                case Type.DOUBLE:
+                    return type;
+                default:
+                    return null;
+            }
+        } else if (expression instanceof NotExpression) {
+            if (getInlineType(((NotExpression)expression).getOperand(0)) == Type.BOOLEAN_TYPE) {
+                return Type.BOOLEAN_TYPE;
+            }
+        } else if (expression instanceof LogicalExpression) {
+            LogicalExpression logical = (LogicalExpression)expression;
+            if (getInlineType(logical.getOperand(0)) == Type.BOOLEAN_TYPE &&
+                    getInlineType(logical.getOperand(1)) == Type.BOOLEAN_TYPE) {
+                return Type.BOOLEAN_TYPE;
+            }
+        } else if (expression instanceof ComparisonExpression) {
+            ComparisonExpression comparison = (ComparisonExpression)expression;
+            Type type1 = getInlineType(comparison.getOperand(0));
+            Type type2 = getInlineType(comparison.getOperand(1));
+            if (type1 != null && type1 != Type.BOOLEAN_TYPE && type2 != null && type2 != Type.BOOLEAN_TYPE) {
+                return Type.BOOLEAN_TYPE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * plant code to evaluate an inlineable boolean expression and jump to a label depending upon the outcome
+     * @param expression the expression to evaluate
+     * @param jumpIfTrue true if the jump should be taken when the expression is true or false if it should
+     * be taken when the expression is false
+     * @param label the jump target
+     * @param labelSkips true if the jump target skips the call to the rule engine or false if it
+     * leads to the call
+     */
+    private void inlineCondition(Expression expression, boolean jumpIfTrue, Label label, boolean labelSkips)
+    {
+        if (expression instanceof BooleanLiteral) {
+            if (((BooleanLiteral)expression).getValue() == jumpIfTrue) {
+                goTo(label);
+            }
+        } else if (expression instanceof DollarExpression) {
+            // a boolean parameter
+            loadArg(((DollarExpression)expression).getIndex() - 1);
+            visitJumpInsn((jumpIfTrue ? Opcodes.IFNE : Opcodes.IFEQ), label);
+        } else if (expression instanceof NotExpression) {
+            inlineCondition(((NotExpression)expression).getOperand(0), !jumpIfTrue, label, labelSkips);
+        } else if (expression instanceof LogicalExpression) {
+            LogicalExpression logical = (LogicalExpression)expression;
+            // jump to the label as soon as the outcome is known, otherwise skip past the second test
+            // to the code which follows this expression
+            boolean shortCircuit = (logical.getOper() == OperExpression.OR);
+            if (shortCircuit == jumpIfTrue) {
+                inlineCondition(logical.getOperand(0), jumpIfTrue, label, labelSkips);
+                inlineCondition(logical.getOperand(1), jumpIfTrue, label, labelSkips);
+            } else {
+                Label next = newLabel();
+                inlineCondition(logical.getOperand(0), shortCircuit, next, !labelSkips);
+                inlineCondition(logical.getOperand(1), jumpIfTrue, label, labelSkips);
+                visitLabel(next);
+            }
+        } else {
+            ComparisonExpression comparison = (ComparisonExpression)expression;
+            Expression operand1 = comparison.getOperand(0);
+            Expression operand2 = comparison.getOperand(1);
+            Type type = promoteInlineType(getInlineType(operand1), getInlineType(operand2));
+            int oper = comparison.getOper();
+            int mode;
+            switch (oper) {
+                case OperExpression.EQ:
+                    mode = (jumpIfTrue ? EQ : NE);
+                    break;
+                case OperExpression.NE:
+                    mode = (jumpIfTrue ? NE : EQ);
+                    break;
+                case OperExpression.GT:
+                    mode = (jumpIfTrue ? GT : LE);
+                    break;
+                case OperExpression.LT:
+                    mode = (jumpIfTrue ? LT : GE);
+                    break;
+                case OperExpression.GE:
+                    mode = (jumpIfTrue ? GE : LT);
+                    break;
+                default: // LE
+                    mode = (jumpIfTrue ? LE : GT);
+                    break;
+            }
+            inlineOperand(operand1, type);
+            inlineOperand(operand2, type);
+            switch (type.getSort()) {
+                case Type.INT:
+                    ifICmp(mode, label);
+                    break;
+                case Type.LONG:
+                    visitInsn(Opcodes.LCMP);
+                    visitJumpInsn(mode, label);
+                    break;
+                default:
+                    // interpreted and compiled rules do not agree on the outcome of an ordered
+                    // comparison with NaN so choose the compare instruction which ensures a NaN
+                    // operand leads to the call into the rule engine and let it decide
+                    boolean nanGreater = ((mode == GT || mode == GE) == !labelSkips);
+                    if (type.getSort() == Type.FLOAT) {
+                        visitInsn(nanGreater ? Opcodes.FCMPG : Opcodes.FCMPL);
+                    } else {
+                        visitInsn(nanGreater ? Opcodes.DCMPG : Opcodes.DCMPL);
+                    }
+                    visitJumpInsn(mode, label);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * plant code to stack a numeric operand of an inlined comparison converting it to the comparison type
+     * @param expression a parameter reference or numeric literal
+     * @param type the type used to perform the comparison
+     */
+    private void inlineOperand(Expression expression, Type type)
+    {
+        if (expression instanceof NumericLiteral) {
+            Number value = ((NumericLiteral)expression).getValue();
+            boolean integral = (value instanceof Integer);
+            // literals are converted as they would be by a compiled rule
+            switch (type.getSort()) {
+                case Type.INT:
+                    push(value.intValue());
+                    break;
+                case Type.LONG:
+                    push((long)value.intValue());
+                    break;
+                case Type.FLOAT:
+                    push(integral ? (float)value.intValue() : value.floatValue());
+                    break;
+                default:
+                    push(integral ? (double)value.intValue() : (double)value.floatValue());
+                    break;
+            }
+        } else {
+            int index = ((DollarExpression)expression).getIndex() - 1;
+            loadArg(index);
+            cast(getInlineType(expression), type);
+        }
+    }
+
+    /**
+     * compute the type used to compare two inlined numeric operands following the promotion rules
+     * applied when the rule is type checked
+     * @param type1 the type of the first operand
+     * @param type2 the type of the second operand
+     * @return the comparison type
+     */
+    private Type promoteInlineType(Type type1, Type type2)
+    {
+        if (type1 == Type.DOUBLE_TYPE || type2 == Type.DOUBLE_TYPE) {
+            return Type.DOUBLE_TYPE;
+        } else if (type1 == Type.FLOAT_TYPE || type2 == Type.FLOAT_TYPE) {
+            return Type.FLOAT_TYPE;
+        } else if (type1 == Type.LONG_TYPE || type2 == Type.LONG_TYPE) {
+            return Type.LONG_TYPE;
+        } else {
+            return Type.INT_TYPE;
+        }
     }
 }
@@ -26,104 +26,208 @@
 package org.jboss.byteman.agent.check;
 
 import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A cache used to allow the association between a class name and the corresponding class in the context
  * of any given class loader to be cached. caching is used to improve performance of the transformer
  * when checking the superclass hierarchy of a class which is a candidate for transformation to identify
  * if it is a target for rules which inject into overriding methods. the cache is a map keyed by classloader
- * whose value is itself a map. each nested map translates a fully qualified class name to an instance of
- * Class. The outer map is a WeakHashMap ensuring that it doe snot hold on to loaders once all references to
+ * whose value is an entry holding an index of class checkers keyed by fully qualified class name. the
+ * index is fed with the checker the transformer creates for every class it is asked to transform, so a
+ * class loaded after the agent was installed can always be checked without loading or parsing it again.
+ * it is also fed with the checkers the transformer derives from loaded classes or class file resources.
+ * classes loaded before the agent was installed are found using a second index of the classes initiated
+ * by the loader. that index is built with a single call to getInitiatedClasses the first time a lookup
+ * misses rather than by scanning the loaded classes on every lookup. the entry also caches verdicts
+ * recording that no rule applies to a class or its supers.
+ *
+ * entries are never evicted. an entry only holds class names and weak references to classes so it lives
+ * exactly as long as its loader and the classes it describes. lookups do not lock the entry.
+ * The outer map is a WeakHashMap ensuring that it does not hold on to loaders once all references to
  * them have been dropped.
  *
  */
 public class LoadCache
 {
-
     public LoadCache(Instrumentation inst)
     {
         this.inst = inst;
     }
 
     private Instrumentation inst;
-    private WeakHashMap<ClassLoader, HashMap<String, Class>> loaderMaps = new WeakHashMap<ClassLoader, HashMap<String, Class>>();
-    private HashMap<String, Class> bootMap = new HashMap<String, Class>();
+    private WeakHashMap<ClassLoader, LoaderEntry> loaderEntries = new WeakHashMap<ClassLoader, LoaderEntry>();
+    private LoaderEntry bootEntry = new LoaderEntry();
 
-    public Class lookupClass(String name, ClassLoader baseLoader)
+    /**
+     * the cached details for one class loader
+     */
+    private static class LoaderEntry
     {
-        // if we get used by the offline type checker inst will be null so fail quick without an NPE
-        if (inst == null) {
-            return null;
+        /**
+         * index of the classes initiated by the loader or null if it has not yet been built. classes are
+         * only weakly referenced so that the index does not stop them being unloaded. the index is
+         * built under the entry lock and never modified once published.
+         */
+        volatile HashMap<String, WeakReference<Class>> classIndex = null;
+
+        /**
+         * index of checkers for classes defined by or visible from the loader
+         */
+        final ConcurrentHashMap<String, ClassChecker> checkers = new ConcurrentHashMap<String, ClassChecker>();
+
+        /**
+         * map from the names of classes for which no rule target was found anywhere in their hierarchy
+         * to the script repository generation at which the hierarchy was checked
+         */
+        final ConcurrentHashMap<String, Long> noMatchVerdicts = new ConcurrentHashMap<String, Long>();
+    }
+
+    private LoaderEntry getLoaderEntry(ClassLoader loader)
+    {
+        if (loader == null) {
+            return bootEntry;
         }
 
-        HashMap<String, Class> baseLoaderMap = null;
-        Class clazz;
+        synchronized (loaderEntries) {
+            LoaderEntry entry = loaderEntries.get(loader);
+            if (entry == null) {
+                entry = new LoaderEntry();
+                loaderEntries.put(loader, entry);
+            }
+            return entry;
+        }
+    }
 
-        // see if we have cached the cahe in the map associated with this loader
+    /**
+     * record a checker for a class so that subsequent lookups via the same loader or one of its children
+     * can avoid loading or parsing the class
+     * @param name the fully qualified name of the class
+     * @param loader the loader which defines the class or from which the class was looked up
+     * @param checker the checker for the class
+     */
+    public void addChecker(String name, ClassLoader loader, ClassChecker checker)
+    {
+        getLoaderEntry(loader).checkers.put(name, checker);
+    }
 
-        if (baseLoader == null) {
-            baseLoaderMap = bootMap;
-        } else {
-            synchronized (loaderMaps) {
-                baseLoaderMap = loaderMaps.get(baseLoader);
-                if (baseLoaderMap == null) {
-                    baseLoaderMap = new HashMap<String, Class>();
-                    loaderMaps.put(baseLoader, baseLoaderMap);
-                }
+    /**
+     * lookup a previously recorded checker for a class looking first in the supplied loader and then in
+     * its parent loaders
+     * @param name the fully qualified name of the class
+     * @param baseLoader the loader from which the class is being looked up
+     * @return the checker or null if none has been recorded
+     */
+    public ClassChecker lookupChecker(String name, ClassLoader baseLoader)
+    {
+        ClassLoader loader = baseLoader;
+
+        // use a do while loop so we don't omit to look in the bootstrap entry
+        do {
+            ClassChecker checker = getLoaderEntry(loader).checkers.get(name);
+            if (checker != null) {
+                return checker;
             }
-        }
+            if (loader != null) {
+                loader = loader.getParent();
+            }
+        } while (loader != null);
 
-        synchronized (baseLoaderMap) {
-            clazz = baseLoaderMap.get(name);
-        }
+        // we fall out of the loop before trying the boot entry when the base loader is a child of it
 
-        if (clazz != null) {
-            return clazz;
+        if (baseLoader != null) {
+            return bootEntry.checkers.get(name);
         }
 
-        // ok, look it up the hard way
+        return null;
+    }
+
+    /**
+     * record that no rule target was found when checking the hierarchy of a class
+     * @param name the fully qualified name of the class
+     * @param loader the loader from which the hierarchy was checked
+     * @param generation the script repository generation at which the check was started
+     */
+    public void addNoMatch(String name, ClassLoader loader, long generation)
+    {
+        getLoaderEntry(loader).noMatchVerdicts.put(name, generation);
+    }
+
+    /**
+     * check whether a previous check of the hierarchy of a class found no rule target and the
+     * script repository has not changed since
+     * @param name the fully qualified name of the class
+     * @param loader the loader from which the hierarchy is being checked
+     * @param generation the current script repository generation
+     * @return true if no rule can apply to the class or its supers otherwise false
+     */
+    public boolean isNoMatch(String name, ClassLoader loader, long generation)
+    {
+        Long verdict = getLoaderEntry(loader).noMatchVerdicts.get(name);
+        return (verdict != null && verdict.longValue() == generation);
+    }
+
+    public Class lookupClass(String name, ClassLoader baseLoader)
+    {
+        // if we get used by the offline type checker inst will be null so fail quick without an NPE
+        if (inst == null) {
+            return null;
+        }
 
-        HashMap<String, Class> loaderMap = baseLoaderMap;
         ClassLoader loader = baseLoader;
 
         // use a do while loop so we don't omit to look in the bootstrap classpath
         do
         {
-            Class[] classes = inst.getInitiatedClasses(loader);
-            for (int i = 0; i < classes.length; i++) {
-                clazz = classes[i];
-                if (clazz.getName().equals(name)) {
-                    // ok, install this class in the base map and the map we found it in
-                    synchronized (loaderMap) {
-                        loaderMap.put(name, clazz);
-                        if (loader != baseLoader) {
-                            synchronized (baseLoaderMap) {
-                                baseLoaderMap.put(name, clazz);
-                            }
-                        }
-                        return clazz;
-                    }
-                }
+            Class clazz = lookupIndex(name, loader);
+
+            if (clazz != null) {
+                return clazz;
             }
 
             if (loader != null) {
                 loader = loader.getParent();
                 if (loader == null) {
-                    loaderMap = bootMap;
-                } else {
-                    synchronized (loaderMaps) {
-                        loaderMap = loaderMaps.get(loader);
-                        if (loaderMap == null) {
-                            loaderMap = new HashMap<String, Class>();
-                            loaderMaps.put(loader, loaderMap);
-                        }
-                    }
+                    // look in the bootstrap index before we drop out of the loop
+                    return lookupIndex(name, null);
                 }
             }
         } while (loader != null);
 
         return null;
     }
+
+    /**
+     * lookup a class in the index of classes initiated by a specific loader, building the index if this is
+     * the first lookup via that loader. classes loaded after the index is built are not added to it. the
+     * transformer records checkers for those classes as they are transformed so it only needs to look up
+     * classes which were loaded before the agent was installed.
+     * @param name the fully qualified name of the class
+     * @param loader the loader whose index should be searched
+     * @return the class or null if it is not in the index
+     */
+    private Class lookupIndex(String name, ClassLoader loader)
+    {
+        LoaderEntry entry = getLoaderEntry(loader);
+        HashMap<String, WeakReference<Class>> classIndex = entry.classIndex;
+        if (classIndex == null) {
+            synchronized (entry) {
+                classIndex = entry.classIndex;
+                if (classIndex == null) {
+                    Class[] classes = inst.getInitiatedClasses(loader);
+                    classIndex = new HashMap<String, WeakReference<Class>>(classes.length * 2);
+                    for (int i = 0; i < classes.length; i++) {
+                        Class clazz = classes[i];
+                        classIndex.put(clazz.getName(), new WeakReference<Class>(clazz));
+                    }
+                    entry.classIndex = classIndex;
+                }
+            }
+        }
+        WeakReference<Class> ref = classIndex.get(name);
+        return (ref != null ? ref.get() : null);
+    }
 }
@@ -26,11 +26,12 @@
 package org.jboss.byteman.agent.check;
 
 public class LoadedClassChecker implements ClassChecker {
-    final static Class[] EMPTY = new Class[0];
+    final static String[] EMPTY = new String[0];
     boolean isInterface;
     String superName;
     boolean hasOuterClass;
-    Class[] interfaces;
+    // names rather than classes so that a cached checker does not keep the classes or their loaders alive
+    String[] interfaces;
 
     public LoadedClassChecker(Class<?> clazz) {
         isInterface = clazz.isInterface();
@@ -40,7 +41,11 @@ public class LoadedClassChecker implements ClassChecker {
         // but if we call getEnclosingClass or getDeclaringClass we get risk tripping a ClassCircularityException
         hasOuterClass = (clazz.getName().contains("$"));
         if (!hasOuterClass) {
-            interfaces = clazz.getInterfaces();
+            Class[] interfaceClasses = clazz.getInterfaces();
+            interfaces = new String[interfaceClasses.length];
+            for (int i = 0; i < interfaceClasses.length; i++) {
+                interfaces[i] = interfaceClasses[i].getName();
+            }
         } else {
             interfaces = EMPTY;
         }
@@ -63,6 +68,6 @@ public class LoadedClassChecker implements ClassChecker {
     }
 
     public String getInterface(int idx) {
-        return interfaces[idx].getName();
+        return interfaces[idx];
     }
 }
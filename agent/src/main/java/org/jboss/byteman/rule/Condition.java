@@ -129,5 +129,14 @@ public class Condition extends RuleElement
         stringWriter.write("\n");
     }
 
+    /**
+     * return the expression which implements this condition
+     * @return the condition expression or null if the condition is empty
+     */
+    public Expression getExpression()
+    {
+        return condition;
+    }
+
     private Expression condition;
 }
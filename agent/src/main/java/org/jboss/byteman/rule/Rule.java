@@ -37,9 +37,15 @@ import org.jboss.byteman.rule.grammar.ParseNode;
 import org.jboss.byteman.rule.helper.HelperAdapter;
 import org.jboss.byteman.rule.helper.Helper;
 import org.jboss.byteman.rule.helper.InterpretedHelper;
+import org.jboss.byteman.rule.helper.ReusableHelperAdapter;
+import org.jboss.byteman.rule.helper.TypedHelperAdapter;
 import org.jboss.byteman.agent.Location;
 import org.jboss.byteman.agent.Transformer;
+import org.jboss.byteman.agent.RulePreparer;
 import org.jboss.byteman.agent.RuleScript;
+import org.jboss.byteman.agent.RuleMetrics;
+import org.jboss.byteman.agent.Sampler;
+import org.jboss.byteman.agent.TriggerState;
 import org.objectweb.asm.Opcodes;
 
 import org.jboss.byteman.rule.compiler.Compiler;
@@ -51,6 +57,7 @@ import java.lang.reflect.Modifier;
 import java.util.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import java_cup.runtime.Symbol;
 
@@ -64,6 +71,15 @@ public class Rule
      * the script defining this rule
      */
     private RuleScript ruleScript;
+    /**
+     * the execution statistics shared by all rules created from the same script
+     */
+    private final RuleMetrics metrics;
+    /**
+     * the policy shared by all rules created from the same script which selects the triggers that
+     * execute the rule or null if every trigger executes it
+     */
+    private final Sampler sampler;
     /**
      * the name of this rule supplied in the rule script
      */
@@ -154,6 +170,15 @@ public class Rule
 
     private String key;
 
+    /**
+     * the slot in the rule registry under which this rule is indexed or -1 if no slot has been
+     * allocated. this value is pushed by injected trigger code and used to locate the rule at
+     * execution time. it combines the index of the rule's entry in the rule table with the
+     * generation of that entry.
+     */
+
+    private int slot;
+
     /**
      * lifecycle event manager for rule helpers
      */
@@ -174,6 +199,8 @@ public class Rule
         ParseNode ruleTree;
 
         this.ruleScript = ruleScript;
+        this.metrics = ruleScript.getMetrics();
+        this.sampler = ruleScript.getSampler();
         this.helperClass = null;
         this.targetLoader = loader;
 
@@ -189,32 +216,14 @@ public class Rule
         // this is only set when the rule is created via a real installed transformer
         this.helperManager =  helperManager;
 
-        ECAGrammarParser parser = null;
-        try {
-            String file = getFile();
-            ECATokenLexer lexer = new ECATokenLexer(new StringReader(ruleScript.getRuleText()));
-            lexer.setStartLine(getLine());
-            lexer.setFile(file);
-            parser = new ECAGrammarParser(lexer);
-            parser.setFile(file);
-            Symbol parse = (debugParse ? parser.debug_parse() : parser.parse());
-            if (parser.getErrorCount() != 0) {
-                String message = "rule " + ruleScript.getName();
-                message += parser.getErrors();
-                throw new ParseException(message);
-            }
-            ruleTree = (ParseNode) parse.value;
-        } catch (ParseException pe) {
-            throw pe;
-        } catch (Throwable th) {
-            String message = "rule " + ruleScript.getName();
-            if (parser != null && parser.getErrorCount() != 0) {
-                message += parser.getErrors();
-            }
-            message += "\n" + th.getMessage();
-            throw new ParseException(message);
-        }
+        // the parse tree is shared by every rule created from the same script
+
+        ruleTree = ruleScript.getRuleTree();
 
+        if (ruleTree == null) {
+            ruleTree = parse(ruleScript);
+            ruleScript.setRuleTree(ruleTree);
+        }
 
         // set up the TypeGroup, which needs to see the correct classes
         // ensure that we have a valid helper class
@@ -246,6 +255,56 @@ public class Rule
         condition = Condition.create(this, conditionTree);
         action = Action.create(this, actionTree);
         key = null;
+        slot = -1;
+    }
+
+    /**
+     * parse the rule text of a script
+     * @param ruleScript the script whose rule text is to be parsed
+     * @return the parse tree for the rule event, condition and action
+     * @throws ParseException if the rule text contains syntax errors
+     */
+    private static ParseNode parse(RuleScript ruleScript) throws ParseException
+    {
+        ECAGrammarParser parser = null;
+        try {
+            String file = ruleScript.getFile();
+            ECATokenLexer lexer = new ECATokenLexer(new StringReader(ruleScript.getRuleText()));
+            lexer.setStartLine(ruleScript.getLine());
+            lexer.setFile(file);
+            parser = new ECAGrammarParser(lexer);
+            parser.setFile(file);
+            Symbol parse = (debugParse ? parser.debug_parse() : parser.parse());
+            if (parser.getErrorCount() != 0) {
+                String message = "rule " + ruleScript.getName();
+                message += parser.getErrors();
+                throw new ParseException(message);
+            }
+            return (ParseNode) parse.value;
+        } catch (ParseException pe) {
+            throw pe;
+        } catch (Throwable th) {
+            String message = "rule " + ruleScript.getName();
+            if (parser != null && parser.getErrorCount() != 0) {
+                message += parser.getErrors();
+            }
+            message += "\n" + th.getMessage();
+            throw new ParseException(message);
+        }
+    }
+
+    /**
+     * parse the rule text of a script ahead of the creation of any rule from it, so that rules created
+     * when the script is injected can reuse the parse tree. this may be called concurrently for
+     * different scripts.
+     * @param ruleScript the script whose rule text is to be parsed
+     * @throws ParseException if the rule text contains syntax errors
+     */
+    public static void parseRuleText(RuleScript ruleScript) throws ParseException
+    {
+        if (ruleScript.getRuleTree() == null) {
+            ruleScript.setRuleTree(parse(ruleScript));
+        }
     }
 
     public TypeGroup getTypeGroup()
@@ -258,6 +317,34 @@ public class Rule
         return bindings;
     }
 
+    /**
+     * identify whether the trigger code can pass the values for this rule's bindings directly rather
+     * than in an Object array. this is only possible when there is a single binding whose value is
+     * supplied by the trigger method, that binding is a method parameter, return value or throwable
+     * and the rule does not assign it a new value.
+     * @return the binding whose value may be passed directly or null if an array must be used
+     */
+    public Binding getTypedCallBinding()
+    {
+        Binding typedBinding = null;
+        Iterator<Binding> iterator = bindings.iterator();
+        while (iterator.hasNext()) {
+            Binding binding = iterator.next();
+            if (binding.isAlias() || binding.isHelper() || binding.isRecipient() || binding.isBindVar()) {
+                continue;
+            }
+            if (typedBinding != null) {
+                // more than one value has to be passed
+                return null;
+            }
+            if (binding.isUpdated() || !(binding.isParam() || binding.isReturn() || binding.isThrowable())) {
+                return null;
+            }
+            typedBinding = binding;
+        }
+        return typedBinding;
+    }
+
     public String getName() {
         return ruleScript.getName();
     }
@@ -315,6 +402,23 @@ public class Rule
         return action;
     }
 
+    /**
+     * called by the helper executing this rule when the rule condition evaluates to true and
+     * the rule action is about to be executed
+     */
+    public void conditionTrue()
+    {
+        metrics.conditionTrue();
+    }
+
+    /**
+     * called by the helper executing this rule when the rule condition evaluates to false
+     */
+    public void conditionFalse()
+    {
+        metrics.conditionFalse();
+    }
+
     public String getTriggerClass() {
         return triggerClass;
     }
@@ -486,7 +590,13 @@ public class Rule
             String detail = "";
             try {
                 typeCheck();
-                compile();
+                if (Transformer.isCompileInBackground() && doCompileToBytecode()) {
+                    // interpret the rule until the compiled version is ready
+                    installHelperAdapter(false);
+                    compileInBackground();
+                } else {
+                    compile();
+                }
                 checked = true;
                 installed();
             } catch (TypeWarningException te) {
@@ -525,6 +635,17 @@ public class Rule
         return true;
     }
 
+    /**
+     * type check and compile the rule ahead of its first triggering so that the work is not done
+     * by the first thread to reach the trigger point. the caller must ensure that the trigger class
+     * has already been defined.
+     * @return true if the rule was successfully type checked and compiled otherwise false
+     */
+    public boolean prepare()
+    {
+        return ensureTypeCheckedCompiled();
+    }
+
     /**
      * type check this rule
      * @throws TypeException if the rule contains type errors
@@ -572,17 +693,72 @@ public class Rule
     public void compile()
             throws CompileException
     {
-        boolean doCompileToBytecode = doCompileToBytecode();
+        installHelperAdapter(doCompileToBytecode());
+    }
+
+    /**
+     * install a helper class used to execute this rule
+     * @param doCompileToBytecode true if the rule binding, condition and action should be compiled to bytecode
+     * or false if they should be interpreted
+     * @throws CompileException if the helper class cannot be generated
+     */
+    private void installHelperAdapter(boolean doCompileToBytecode)
+            throws CompileException
+    {
         String[] imports = ruleScript.getImports();
 
         if (helperClass == Helper.class && !doCompileToBytecode && imports.length == 0) {
             // we can use the builtin interpreted helper adapter for class Helper
            helperImplementationClass = InterpretedHelper.class;
+           helperConstructor = null;
         } else {
             // we need to generate a helper adapter class which either interprets or compiles
 
             helperImplementationClass = Compiler.getHelperAdapter(this, helperClass, doCompileToBytecode);
+            try {
+                helperConstructor = helperImplementationClass.getConstructor(Rule.class);
+            } catch (NoSuchMethodException e) {
+                // should not happen!!!
+                throw new CompileException("Rule.compile : cannot find constructor " + helperImplementationClass.getCanonicalName() + "(Rule) for helper class", e);
+            }
         }
+
+        // the default helper retains no state between firings other than what reset clears
+        // so its instances can safely be reused
+
+        poolHelpers = (helperClass == Helper.class && Transformer.isPoolHelpers());
+    }
+
+    /**
+     * generate the compiled helper adapter for this rule on a background thread and switch over to
+     * it once it has been loaded. until then triggers execute the rule using the interpreted helper
+     * installed by the caller. if compilation fails the rule continues to be interpreted.
+     */
+    private void compileInBackground()
+    {
+        RulePreparer.background(new Runnable() {
+            public void run()
+            {
+                Class<?> adapterClass;
+                Constructor<?> adapterConstructor;
+                try {
+                    adapterClass = Compiler.getHelperAdapter(Rule.this, helperClass, true);
+                    adapterConstructor = adapterClass.getConstructor(Rule.class);
+                } catch (Exception e) {
+                    System.out.println("Rule.compileInBackground : error compiling rule " + getName() + " : continuing to interpret rule");
+                    e.printStackTrace(System.out);
+                    return;
+                }
+                // any pooled interpreted helpers are dropped when they are next polled
+                synchronized (Rule.this) {
+                    helperImplementationClass = adapterClass;
+                    helperConstructor = adapterConstructor;
+                }
+                if (Transformer.isVerbose()) {
+                    System.out.println("Rule.compileInBackground : installed compiled helper for rule " + getName());
+                }
+            }
+        });
     }
 
     /**
@@ -716,71 +892,307 @@ public class Rule
      * triggered or null if it was a static method
      * @param args the arguments of the method from which execution of the rule was
      * triggered
+     * @deprecated injected trigger code now identifies the rule using its registry slot. this
+     * version is retained for compatibility and locates the slot from the numeric suffix of the key
      */
+    @Deprecated
     public static void execute(String key, Object recipient, Object[] args) throws ExecuteException
     {
-        boolean enabled = isTriggeringEnabled();
-        if (!enabled) {
-            // we don't trigger code while we are doing rule housekeeping
+        int idx = key.lastIndexOf('_');
+        int slot;
+        try {
+            slot = Integer.parseInt(key.substring(idx + 1));
+        } catch (NumberFormatException e) {
+            slot = -1;
+        }
+        execute(slot, recipient, args);
+    }
+
+    /**
+     * forward an execute request a rule identified by its unique registry slot
+     * @param slot an integer slot identifying the rule instance to be fired
+     * @param recipient the recipient of the method from which execution of the rule was
+     * triggered or null if it was a static method
+     * @param args the arguments of the method from which execution of the rule was
+     * triggered
+     */
+    public static void execute(int slot, Object recipient, Object[] args) throws ExecuteException
+    {
+        TriggerState state = TriggerState.current();
+        Rule rule = enterRule(slot, state);
+        if (rule == null) {
             return;
         }
+        try {
+            rule.execute(state, recipient, args, VALUE_ARRAY, 0L, 0.0D, null);
+        } finally {
+            // restore the status quo -- we must have been enabled if we got to this method
+            state.enable(true);
+        }
+    }
 
-        // disable triggering until we get into actual rule code
-        
-        disableTriggersInternal();
+    /**
+     * forward an execute request a rule identified by its unique registry slot where the rule
+     * employs a single binding with a boolean, byte, char, short or int value which is not updated
+     * @param slot an integer slot identifying the rule instance to be fired
+     * @param recipient the recipient of the method from which execution of the rule was
+     * triggered or null if it was a static method
+     * @param value the value of the binding widened to an int
+     */
+    public static void execute(int slot, Object recipient, int value) throws ExecuteException
+    {
+        TriggerState state = TriggerState.current();
+        Rule rule = enterRule(slot, state);
+        if (rule == null) {
+            return;
+        }
+        try {
+            rule.execute(state, recipient, null, VALUE_INT, value, 0.0D, null);
+        } finally {
+            // restore the status quo -- we must have been enabled if we got to this method
+            state.enable(true);
+        }
+    }
 
+    /**
+     * forward an execute request a rule identified by its unique registry slot where the rule
+     * employs a single binding with a long value which is not updated
+     * @param slot an integer slot identifying the rule instance to be fired
+     * @param recipient the recipient of the method from which execution of the rule was
+     * triggered or null if it was a static method
+     * @param value the value of the binding
+     */
+    public static void execute(int slot, Object recipient, long value) throws ExecuteException
+    {
+        TriggerState state = TriggerState.current();
+        Rule rule = enterRule(slot, state);
+        if (rule == null) {
+            return;
+        }
         try {
-        Rule rule = ruleKeyMap.get(key);
-        if (Transformer.isVerbose()) {
-            System.out.println("Rule.execute called for " + key);
+            rule.execute(state, recipient, null, VALUE_LONG, value, 0.0D, null);
+        } finally {
+            // restore the status quo -- we must have been enabled if we got to this method
+            state.enable(true);
+        }
+    }
+
+    /**
+     * forward an execute request a rule identified by its unique registry slot where the rule
+     * employs a single binding with a float value which is not updated
+     * @param slot an integer slot identifying the rule instance to be fired
+     * @param recipient the recipient of the method from which execution of the rule was
+     * triggered or null if it was a static method
+     * @param value the value of the binding
+     */
+    public static void execute(int slot, Object recipient, float value) throws ExecuteException
+    {
+        TriggerState state = TriggerState.current();
+        Rule rule = enterRule(slot, state);
+        if (rule == null) {
+            return;
         }
+        try {
+            rule.execute(state, recipient, null, VALUE_FLOAT, 0L, value, null);
+        } finally {
+            // restore the status quo -- we must have been enabled if we got to this method
+            state.enable(true);
+        }
+    }
 
-        // if the key is no longer present it just means the rule has been decommissioned so return
+    /**
+     * forward an execute request a rule identified by its unique registry slot where the rule
+     * employs a single binding with a double value which is not updated
+     * @param slot an integer slot identifying the rule instance to be fired
+     * @param recipient the recipient of the method from which execution of the rule was
+     * triggered or null if it was a static method
+     * @param value the value of the binding
+     */
+    public static void execute(int slot, Object recipient, double value) throws ExecuteException
+    {
+        TriggerState state = TriggerState.current();
+        Rule rule = enterRule(slot, state);
         if (rule == null) {
-            if (Transformer.isVerbose()) {
-                System.out.println("Rule.execute for decommissioned key " + key);
-            }
             return;
         }
+        try {
+            rule.execute(state, recipient, null, VALUE_DOUBLE, 0L, value, null);
+        } finally {
+            // restore the status quo -- we must have been enabled if we got to this method
+            state.enable(true);
+        }
+    }
 
-        rule.execute(recipient, args);
+    /**
+     * forward an execute request a rule identified by its unique registry slot where the rule
+     * employs a single binding with an object value which is not updated
+     * @param slot an integer slot identifying the rule instance to be fired
+     * @param recipient the recipient of the method from which execution of the rule was
+     * triggered or null if it was a static method
+     * @param value the value of the binding
+     */
+    public static void execute(int slot, Object recipient, Object value) throws ExecuteException
+    {
+        TriggerState state = TriggerState.current();
+        Rule rule = enterRule(slot, state);
+        if (rule == null) {
+            return;
+        }
+        try {
+            rule.execute(state, recipient, null, VALUE_OBJECT, 0L, 0.0D, value);
         } finally {
             // restore the status quo -- we must have been enabled if we got to this method
-            enableTriggers();
-        }            
+            state.enable(true);
+        }
+    }
+
+    /**
+     * record a firing of a rule whose condition was evaluated by the trigger code and found to be
+     * false. the rule engine is not called in that case so this updates the rule metrics exactly as
+     * a call to execute would have done when the condition failed, including ignoring the firing
+     * when triggering is disabled, the rule is inactive or the trigger was not sampled.
+     * @param slot an integer slot identifying the rule instance which was triggered
+     */
+    public static void conditionSkipped(int slot)
+    {
+        TriggerState state = TriggerState.current();
+        Rule rule = enterRule(slot, state);
+        if (rule == null) {
+            return;
+        }
+        rule.metrics.triggered();
+        rule.metrics.conditionFalse();
+        state.enable(true);
     }
 
+    /**
+     * common entry code for the execute methods called from trigger code. this checks that
+     * triggering is enabled, disables it and locates the rule in its slot. if a rule is returned
+     * then the caller must reenable triggering once the rule has been executed.
+     * @param slot an integer slot identifying the rule instance to be fired
+     * @param state the trigger state of the current thread, looked up once by the caller and
+     * reused to reenable triggering
+     * @return the rule or null if triggering is disabled, the rule has been decommissioned or it is
+     * not yet active
+     */
+    private static Rule enterRule(int slot, TriggerState state)
+    {
+        // check and disable in one step -- we don't trigger code while we are doing rule housekeeping
+        // and triggering stays disabled until we get into actual rule code
+
+        if (!state.disable(false)) {
+            return null;
+        }
+
+        Rule rule = lookupSlot(slot);
+        if (Transformer.isVerbose()) {
+            System.out.println("Rule.execute called for " + (rule != null ? rule.key : "slot " + slot));
+        }
+
+        // if the slot is no longer occupied it just means the rule has been decommissioned so return
+        if (rule == null) {
+            if (Transformer.isVerbose()) {
+                System.out.println("Rule.execute for decommissioned slot " + slot);
+            }
+            state.enable(true);
+            return null;
+        }
+
+        // a rule which is still being injected does not fire until injection is complete
+
+        if (!rule.ruleScript.isActive()) {
+            state.enable(true);
+            return null;
+        }
+
+        // a trigger which is not sampled returns before any helper or binding state is touched
+
+        if (rule.sampler != null && !rule.sampler.sample(state)) {
+            state.enable(true);
+            return null;
+        }
+
+        return rule;
+    }
+
+    /**
+     * values identifying how the trigger values were passed to the rule
+     */
+    private static final int VALUE_ARRAY = 0;
+    private static final int VALUE_INT = 1;
+    private static final int VALUE_LONG = 2;
+    private static final int VALUE_FLOAT = 3;
+    private static final int VALUE_DOUBLE = 4;
+    private static final int VALUE_OBJECT = 5;
+
     /**
      * forward an execute request to a helper instance associated with the rule
+     * @param state the trigger state of the current thread which holds any helper pooled
+     * by an earlier firing of the rule in this thread
      * @param recipient the recipient of the method from which execution of this rule was
      * triggered or null if it was a static method
      * @param args the arguments of the method from which execution of this rule was
-     * triggered
+     * triggered or null if the binding values were passed directly
+     * @param valueKind identifies whether the binding values were passed in args or as
+     * a single int, long, float, double or object value
+     * @param longValue the single binding value if it is an int or long
+     * @param doubleValue the single binding value if it is a float or double
+     * @param value the single binding value if it is an object
      */
 
-    private void execute(Object recipient, Object[] args) throws ExecuteException
+    private void execute(TriggerState state, Object recipient, Object[] args, int valueKind, long longValue, double doubleValue, Object value) throws ExecuteException
     {
         // type check and createHelperAdapter the rule now if it has not already been done
 
         if (ensureTypeCheckedCompiled()) {
 
-            // create a helper and get it to execute the rule
-            // eventually we will create a subclass of helper for each rule and createHelperAdapter
-            // an implementation of execute from the rule source. for now we create a generic
-            // helper and call the generic execute method which interprets the rule
-            HelperAdapter helper;
+            metrics.triggered();
+            boolean timed = Transformer.isMetricsTiming();
+            long start = (timed ? System.nanoTime() : 0L);
+
+            // create a helper or reuse a pooled one and get it to execute the rule
+            // polling removes the helper from the pool so a recursive firing in this thread
+            // does not share the instance
+            HelperAdapter helper = null;
+            boolean pooled = poolHelpers;
+            if (pooled) {
+                helper = state.pollHelper(slotIndex(slot));
+                if (helper != null && helper.getClass() != helperImplementationClass) {
+                    // pooled before background compilation installed the compiled helper
+                    helper = null;
+                }
+            }
             try {
-                Constructor constructor = helperImplementationClass.getConstructor(Rule.class);
-                helper = (HelperAdapter)constructor.newInstance(this);
-                //helper = (RuleHelper)helperClass.newInstance();
-                //helper.setRule(this);
-                helper.execute(recipient, args);
-            } catch (NoSuchMethodException e) {
-                // should not happen!!!
-                System.out.println("cannot find constructor " + helperImplementationClass.getCanonicalName() + "(Rule) for helper class");
-                e.printStackTrace(System.out);
-                return;
+                if (helper == null) {
+                    helper = newHelperAdapter();
+                }
+                if (valueKind == VALUE_ARRAY) {
+                    helper.execute(recipient, args);
+                } else if (helper instanceof TypedHelperAdapter) {
+                    TypedHelperAdapter typedHelper = (TypedHelperAdapter)helper;
+                    switch (valueKind) {
+                        case VALUE_INT:
+                            typedHelper.execute(recipient, (int)longValue);
+                            break;
+                        case VALUE_LONG:
+                            typedHelper.execute(recipient, longValue);
+                            break;
+                        case VALUE_FLOAT:
+                            typedHelper.execute(recipient, (float)doubleValue);
+                            break;
+                        case VALUE_DOUBLE:
+                            typedHelper.execute(recipient, doubleValue);
+                            break;
+                        default:
+                            typedHelper.execute(recipient, value);
+                            break;
+                    }
+                } else {
+                    // interpreted adapters and adapters supplied by other code only accept an array
+                    helper.execute(recipient, new Object[] { boxValue(valueKind, longValue, doubleValue, value) });
+                }
             } catch (InvocationTargetException e) {
+                metrics.error();
                 e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
             } catch (InstantiationException e) {
                 // should not happen
@@ -802,18 +1214,93 @@ public class Rule
             } catch (ThrowException e) {
                 throw e;
             } catch (ExecuteException e) {
+                metrics.error();
                 System.out.println(getName() + " : " + e);
                 throw e;
             } catch (Throwable throwable) {
+                metrics.error();
                 System.out.println(getName() + " : " + throwable);
                 throw new ExecuteException(getName() + "  : caught " + throwable, throwable);
+            } finally {
+                if (timed) {
+                    metrics.elapsed(System.nanoTime() - start);
+                }
+                if (pooled && helper instanceof ReusableHelperAdapter) {
+                    ((ReusableHelperAdapter)helper).reset();
+                    state.poolHelper(slotIndex(slot), helper);
+                    // if the rule was removed while it was firing then purge may already have
+                    // discarded the pooled helpers so withdraw this one
+                    if (lookupSlot(slot) != this) {
+                        state.unpoolHelper(slotIndex(slot), helper);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * box a binding value passed directly by trigger code so that it can be passed to a helper
+     * which does not implement TypedHelperAdapter. an int value is boxed using the type of the
+     * binding so that, say, a boolean is passed as a Boolean.
+     * @param valueKind identifies whether the value was passed as an int, long, float, double
+     * or object
+     * @param longValue the value if it is an int or long
+     * @param doubleValue the value if it is a float or double
+     * @param value the value if it is an object
+     * @return the boxed value
+     */
+    private Object boxValue(int valueKind, long longValue, double doubleValue, Object value)
+    {
+        switch (valueKind) {
+            case VALUE_INT:
+            {
+                Binding binding = getTypedCallBinding();
+                Type type = (binding != null ? binding.getType() : Type.I);
+                int intValue = (int)longValue;
+                if (type == Type.Z) {
+                    return Boolean.valueOf(intValue != 0);
+                } else if (type == Type.B) {
+                    return Byte.valueOf((byte)intValue);
+                } else if (type == Type.C) {
+                    return Character.valueOf((char)intValue);
+                } else if (type == Type.S) {
+                    return Short.valueOf((short)intValue);
+                } else {
+                    return Integer.valueOf(intValue);
+                }
             }
+            case VALUE_LONG:
+                return Long.valueOf(longValue);
+            case VALUE_FLOAT:
+                return Float.valueOf((float)doubleValue);
+            case VALUE_DOUBLE:
+                return Double.valueOf(doubleValue);
+            default:
+                return value;
         }
     }
 
+    /**
+     * create a new instance of the helper implementation class for this rule
+     * @return the new helper
+     * @throws InstantiationException if the helper class cannot be instantiated
+     * @throws IllegalAccessException if the helper constructor is not accessible
+     * @throws InvocationTargetException if the helper constructor throws an exception
+     */
+    private HelperAdapter newHelperAdapter()
+            throws InstantiationException, IllegalAccessException, InvocationTargetException
+    {
+        if (helperConstructor == null) {
+            return new InterpretedHelper(this);
+        }
+
+        return (HelperAdapter)helperConstructor.newInstance(this);
+    }
+
     /**
      * called when a trigger is compiled for the rule to provide a String key which can be used
-     * at execution time to obtain a handle on the rule instance
+     * to identify the rule instance. calling this method also allocates the slot returned by
+     * {@link #getSlot()}.
      *
      * @return a key which can be used later to obtain a reference to the rule
      */
@@ -823,13 +1310,25 @@ public class Rule
         if (key != null) {
             return key;
         }
-        
-        String key = getName() + "_" + nextId();
-        this.key = key;
-        ruleKeyMap.put(key, this);
+
+        int slot = register(this);
+        this.key = getName() + "_" + slot;
         return key;
     }
 
+    /**
+     * called when a trigger is compiled for the rule to provide an integer slot which can be used
+     * at execution time to obtain a handle on the rule instance in constant time
+     *
+     * @return a slot which can be used later to obtain a reference to the rule
+     */
+
+    public int getSlot()
+    {
+        getKey();
+        return slot;
+    }
+
     /**
      * return the key under which this rule has been indexed in the rule key map
      * @return the key
@@ -847,7 +1346,13 @@ public class Rule
     {
         // nothing to do unless we actually allocated a key
         if (key != null) {
-            ruleKeyMap.remove(key);
+            if (unregister(slot, this)) {
+                if (poolHelpers) {
+                    TriggerState.discardHelpers(slotIndex(slot));
+                }
+                // the slot can only be handed out again once nothing refers to this rule through it
+                releaseSlot(slot);
+            }
             if (checked) {
                 uninstalled();
             }
@@ -855,22 +1360,155 @@ public class Rule
     }
 
     /**
-     * a hash map used to identify rules from their keys
+     * the table used to identify rules from their slots. the table is replaced with a larger copy
+     * when it fills up. updates are made under the registry lock but lookups are lock free.
+     *
+     * an entry is cleared when its rule is purged and is then reused by a later rule. purging a
+     * rule does not guarantee that its trigger calls have gone. frames which were executing a
+     * trigger method when it was retransformed carry on running the old code and a failed
+     * retransform leaves the old code in place. so, a slot carries the generation of its entry in
+     * its high bits. the generation is bumped each time the entry is reused and a lookup only
+     * succeeds if the rule in the entry was allocated the slot being looked up. a stale trigger
+     * call finds no rule rather than firing whichever rule now occupies the entry. an entry whose
+     * generation count is exhausted is retired rather than reused.
+     */
+    private static volatile AtomicReferenceArray<Rule> ruleSlots = new AtomicReferenceArray<Rule>(64);
+
+    /**
+     * the number of low order bits of a slot used to index the rule table
+     */
+    private final static int SLOT_INDEX_BITS = 20;
+
+    /**
+     * mask used to extract the rule table index from a slot
+     */
+    private final static int SLOT_INDEX_MASK = (1 << SLOT_INDEX_BITS) - 1;
+
+    /**
+     * the highest generation an entry can reach. slots must be positive so that legacy keys
+     * built from them can be parsed back
+     */
+    private final static int MAX_SLOT_GENERATION = (1 << (31 - SLOT_INDEX_BITS)) - 1;
+
+    /**
+     * lock used to serialize allocation, growth and clearing of slots in the rule table
      */
-    private static HashMap<String, Rule> ruleKeyMap = new HashMap<String, Rule>();
+    private static final Object registryLock = new Object();
 
     /**
-     * a counter used to ensure rule identifiers are unique
+     * the lowest table index which has never been allocated
      */
     private static int nextId = 0;
 
     /**
-     * a method to return the next available counter for use in constructing a key for the rule
-     * @return the next id
+     * a stack of slots released by purged rules, each already advanced to the next generation of
+     * its entry and ready to be reused
      */
-    private synchronized static int nextId()
+    private static int[] freeSlots = new int[16];
+
+    /**
+     * the number of entries in freeSlots
+     */
+    private static int freeCount = 0;
+
+    /**
+     * compute the index in the rule table identified by a slot
+     * @param slot the slot
+     * @return the index of the slot's entry in the rule table
+     */
+    private static int slotIndex(int slot)
+    {
+        return slot & SLOT_INDEX_MASK;
+    }
+
+    /**
+     * allocate a free slot in the rule table and install the rule in it. released slots are
+     * reused before the table is extended
+     * @param rule the rule to be installed
+     * @return the allocated slot
+     */
+    private static int register(Rule rule)
+    {
+        synchronized (registryLock) {
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else if (nextId <= SLOT_INDEX_MASK) {
+                slot = nextId++;
+            } else {
+                throw new IllegalStateException("Rule.register : rule table is full");
+            }
+            int index = slotIndex(slot);
+            AtomicReferenceArray<Rule> slots = ruleSlots;
+            int length = slots.length();
+            if (index >= length) {
+                AtomicReferenceArray<Rule> newSlots = new AtomicReferenceArray<Rule>(length * 2);
+                for (int i = 0; i < length; i++) {
+                    newSlots.set(i, slots.get(i));
+                }
+                slots = newSlots;
+            }
+            // the slot must be visible to lookups before the rule is
+            rule.slot = slot;
+            slots.set(index, rule);
+            // publish the table even if it has not grown so that readers see the new entry
+            ruleSlots = slots;
+            return slot;
+        }
+    }
+
+    /**
+     * clear the entry in the rule table occupied by a rule. the entry is not reused until its
+     * slot is passed to {@link #releaseSlot}
+     * @param slot the slot to be cleared
+     * @param rule the rule expected to occupy the slot
+     * @return true if the rule was cleared from the slot otherwise false
+     */
+    private static boolean unregister(int slot, Rule rule)
+    {
+        synchronized (registryLock) {
+            return ruleSlots.compareAndSet(slotIndex(slot), rule, null);
+        }
+    }
+
+    /**
+     * make the entry for a slot cleared by {@link #unregister} available for reuse under the
+     * next generation or retire it if it has reached the last generation
+     * @param slot the slot to be released
+     */
+    private static void releaseSlot(int slot)
+    {
+        synchronized (registryLock) {
+            if ((slot >>> SLOT_INDEX_BITS) == MAX_SLOT_GENERATION) {
+                return;
+            }
+            if (freeCount == freeSlots.length) {
+                int[] newFreeSlots = new int[freeCount * 2];
+                System.arraycopy(freeSlots, 0, newFreeSlots, 0, freeCount);
+                freeSlots = newFreeSlots;
+            }
+            freeSlots[freeCount++] = slot + (1 << SLOT_INDEX_BITS);
+        }
+    }
+
+    /**
+     * find the rule which was allocated a given slot of the rule table
+     * @param slot the slot to be looked up
+     * @return the rule or null if the slot is empty, was never allocated or its entry has been
+     * reused by a later rule
+     */
+    private static Rule lookupSlot(int slot)
     {
-        return nextId++;
+        AtomicReferenceArray<Rule> slots = ruleSlots;
+        int index = slotIndex(slot);
+        if (slot < 0 || index >= slots.length()) {
+            return null;
+        }
+        Rule rule = slots.get(index);
+        if (rule == null || rule.slot != slot) {
+            return null;
+        }
+        return rule;
     }
 
     /**
@@ -951,6 +1589,24 @@ public class Rule
 
     private Class helperImplementationClass;
 
+    /**
+     * the constructor used to create instances of the helper implementation class. this is looked
+     * up once when the rule is compiled. it is left null when the helper implementation class is
+     * InterpretedHelper since that can be instantiated directly. this is volatile because background
+     * compilation may replace it while triggering threads are creating helpers.
+     */
+
+    private volatile Constructor helperConstructor;
+
+    /**
+     * true if a spare helper instance is kept in the trigger state of each thread which fires this
+     * rule so that it can be reset and reused by the next firing in the same thread. pooling is
+     * only used when it has been enabled and the rule employs the default helper. pooled helpers
+     * are indexed by slot and are discarded from every thread when the rule is purged.
+     */
+
+    private boolean poolHelpers;
+
     /**
      * a getter allowing the helper class for the rule to be identified
      * 
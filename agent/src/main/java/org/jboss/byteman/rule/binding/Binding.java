@@ -263,7 +263,7 @@ public class Binding extends RuleElement
                 }
             }
             // check for new interfaces
-            Class[] interfaces = nextClazz.getInterfaces();
+            Class<?>[] interfaces = nextClazz.getInterfaces();
             for (int i = 0; i < interfaces.length; i++) {
                 Class<?> nextInterface = interfaces[i];
                 // only process new interfaces
@@ -312,22 +312,19 @@ public class Binding extends RuleElement
         } else if (isBindVar()) {
             // push the current helper instance i.e. this -- adds 1 to stack height
             mv.visitVarInsn(Opcodes.ALOAD, 0);
-            // push the variable name -- adds 1 to stack height
-            mv.visitLdcInsn(name);
             // increment stack count
-            compileContext.addStackCount(2);
-            // compile the rhs expression for the binding -- adds 1 to stack height
+            compileContext.addStackCount(1);
+            // compile the rhs expression for the binding -- adds 1 or 2 to stack height
             value.compile(mv, compileContext);
-            // make sure value is boxed if necessary
+            // make sure value is converted if necessary
             if (type.isPrimitive()) {
                 compileTypeConversion(value.getType(), type, mv, compileContext);
-                compileBox(Type.boxType(type), mv, compileContext);
             } else if (doCheckCast) {
                 mv.visitTypeInsn(Opcodes.CHECKCAST, type.getInternalName());
             }
-            // compile a setBinding call pops 3 from stack height
-            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.internalName(HelperAdapter.class), "setBinding", "(Ljava/lang/String;Ljava/lang/Object;)V");
-            compileContext.addStackCount(-3);
+            // store the value in the binding field pops the helper and the value from the stack
+            mv.visitFieldInsn(Opcodes.PUTFIELD, compileContext.getCompiledHelperName(), getFieldName(), getFieldDescriptor());
+            compileContext.addStackCount(-(1 + (type.getNBytes() > 4 ? 2 : 1)));
         }
     }
 
@@ -336,6 +333,43 @@ public class Binding extends RuleElement
         return name;
     }
 
+    /**
+     * return the name of the field used to store the value of this binding in a compiled helper
+     * adapter. characters which may not appear in a field name are replaced with an escape
+     * sequence.
+     * @return the field name
+     */
+    public String getFieldName()
+    {
+        if (alias != null) {
+            return alias.getFieldName();
+        }
+        StringBuilder builder = new StringBuilder("binding_");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                builder.append(c);
+            } else {
+                builder.append('$').append((int)c).append('$');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * return the descriptor of the field used to store the value of this binding in a compiled helper
+     * adapter. primitive values are stored unboxed. all other values are stored as an Object.
+     * @return the field descriptor
+     */
+    public String getFieldDescriptor()
+    {
+        Type fieldType = Type.dereference(getType());
+        if (fieldType.isPrimitive()) {
+            return fieldType.getInternalName();
+        }
+        return "Ljava/lang/Object;";
+    }
+
     public Expression getValue()
     {
         if (alias != null) {
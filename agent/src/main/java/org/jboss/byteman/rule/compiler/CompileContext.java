@@ -41,12 +41,24 @@ public class CompileContext
     private int localCount;
     private int localMax;
     private MethodVisitor mv;
+    private String compiledHelperName;
 
-    CompileContext(MethodVisitor mv)
+    CompileContext(MethodVisitor mv, String compiledHelperName)
     {
         sourceLine = -1;
         stackCount = stackMax = localCount = localMax = 0;
         this.mv = mv;
+        this.compiledHelperName = compiledHelperName;
+    }
+
+    /**
+     * return the internal name of the helper adapter class being generated. this is the owner
+     * of the fields in which binding values are stored.
+     * @return the internal name of the helper adapter class
+     */
+    public String getCompiledHelperName()
+    {
+        return compiledHelperName;
     }
 
     public int getSourceLine()
@@ -28,6 +28,7 @@ import org.jboss.byteman.rule.Rule;
 import org.jboss.byteman.rule.binding.Binding;
 import org.jboss.byteman.rule.binding.Bindings;
 import org.jboss.byteman.rule.exception.CompileException;
+import org.jboss.byteman.rule.helper.Helper;
 import org.jboss.byteman.agent.Transformer;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.*;
@@ -79,7 +80,7 @@ public class Compiler implements Opcodes
         }
     }
 
-    private static byte[] compileBytes(Rule rule, Class helperClass, String helperName, String compiledHelperName, boolean compileToBytecode) throws Exception
+    private static byte[] compileBytes(Rule rule, Class<?> helperClass, String helperName, String compiledHelperName, boolean compileToBytecode) throws Exception
     {
         ClassWriter cw = new ClassWriter(0);
         FieldVisitor fv;
@@ -87,11 +88,19 @@ public class Compiler implements Opcodes
         AnnotationVisitor av0;
         // create the class as a subclass of the rule helper class, appending Compiled to the front
         // of the class name and a unique number to the end of the class helperName
-        // also ensure it implements the HelperAdapter interface
+        // also ensure it implements the HelperAdapter interface and the ReusableHelperAdapter extension
+        // which allows it to be pooled. compiled adapters also implement the TypedHelperAdapter extension
+        // so they can be passed a single binding value directly
         //
-        // public class foo.bar.Compiled_<helper>_<NNN> extends foo.bar.<helper> implements HelperAdapter
+        // public class foo.bar.Compiled_<helper>_<NNN> extends foo.bar.<helper> implements ReusableHelperAdapter
 
-        cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER, compiledHelperName, null, helperName, new String[] { "org/jboss/byteman/rule/helper/HelperAdapter" });
+        String[] adapterInterfaces;
+        if (compileToBytecode) {
+            adapterInterfaces = new String[] { "org/jboss/byteman/rule/helper/ReusableHelperAdapter", "org/jboss/byteman/rule/helper/TypedHelperAdapter" };
+        } else {
+            adapterInterfaces = new String[] { "org/jboss/byteman/rule/helper/ReusableHelperAdapter" };
+        }
+        cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER, compiledHelperName, null, helperName, adapterInterfaces);
         // we need to install the source file name
         {
         String fullFileName = rule.getFile();
@@ -100,7 +109,22 @@ public class Compiler implements Opcodes
         String debug = "// compiled from: " + fullFileName + "\n// generated by Byteman\n";
         cw.visitSource(basicFileName, debug);
         }
-        {
+        Bindings bindings = rule.getBindings();
+        if (compileToBytecode) {
+        // we need a field for each binding to hold its value. primitive values are stored unboxed
+        //
+        // private <type> binding_<name>;
+        Iterator<Binding> iterator = bindings.iterator();
+        while (iterator.hasNext()) {
+            Binding binding = iterator.next();
+            if (binding.isAlias() || binding.isHelper()) {
+                // aliases use the aliased field and the helper is just this
+                continue;
+            }
+            fv = cw.visitField(ACC_PRIVATE, binding.getFieldName(), binding.getFieldDescriptor(), null, null);
+            fv.visitEnd();
+        }
+        } else {
         // we need a Hashmap field to hold the bindings
         //
         // private HashMap<String, Object> bindingMap;
@@ -121,7 +145,7 @@ public class Compiler implements Opcodes
         // if the helper implements a constructor which takes a Rule as argument then we invoke it
         // otherwise we invoke the empty helper constructor
 
-        Constructor superConstructor = null;
+        Constructor<?> superConstructor = null;
         try {
             superConstructor = helperClass.getDeclaredConstructor(Rule.class);
         } catch (NoSuchMethodException e) {
@@ -156,12 +180,14 @@ public class Compiler implements Opcodes
             mv.visitVarInsn(ALOAD, 0);
             mv.visitMethodInsn(INVOKESPECIAL, helperName, "<init>", "()V");
         }
+        if (!compileToBytecode) {
         // bindingMap = new HashMap<String, Object);
         mv.visitVarInsn(ALOAD, 0);
         mv.visitTypeInsn(NEW, "java/util/HashMap");
         mv.visitInsn(DUP);
         mv.visitMethodInsn(INVOKESPECIAL, "java/util/HashMap", "<init>", "()V");
         mv.visitFieldInsn(PUTFIELD, compiledHelperName, "bindingMap", "Ljava/util/HashMap;");
+        }
         // this.rule = rule
         mv.visitVarInsn(ALOAD, 0);
         mv.visitVarInsn(ALOAD, 1);
@@ -177,28 +203,9 @@ public class Compiler implements Opcodes
             // public void execute(Bindings bindings, Object recipient, Object[] args) throws ExecuteException
             mv = cw.visitMethod(ACC_PUBLIC, "execute", "(Ljava/lang/Object;[Ljava/lang/Object;)V", null, new String[] { "org/jboss/byteman/rule/exception/ExecuteException" });
             mv.visitCode();
-            // if (Transformer.isVerbose())
-            mv.visitMethodInsn(INVOKESTATIC, "org/jboss/byteman/agent/Transformer", "isVerbose", "()Z");
-            Label l0 = new Label();
-            mv.visitJumpInsn(IFEQ, l0);
-            // then
-            // System.out.println(rule.getName() + " execute");
-            mv.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
-            mv.visitTypeInsn(NEW, "java/lang/StringBuilder");
-            mv.visitInsn(DUP);
-            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V");
-            mv.visitVarInsn(ALOAD, 0);
-            mv.visitFieldInsn(GETFIELD, compiledHelperName, "rule", "Lorg/jboss/byteman/rule/Rule;");
-            mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/Rule", "getName", "()Ljava/lang/String;");
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
-            mv.visitLdcInsn(" execute()");
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;");
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V");
-            // end if
-            mv.visitLabel(l0);
+            // if (Transformer.isVerbose()) System.out.println(rule.getName() + " execute");
+            compileExecuteTrace(compiledHelperName, mv);
 
-            Bindings bindings = rule.getBindings();
             Iterator<Binding> iterator = bindings.iterator();
 
             while (iterator.hasNext()) {
@@ -208,7 +215,24 @@ public class Compiler implements Opcodes
                     // lookups and updates will use the aliased name
                     continue;
                 }
-                if (binding.isHelper()) {
+                if (compileToBytecode) {
+                    // compiled code refers to this directly when it needs the helper and bind
+                    // vars are initialised by execute0
+                    if (binding.isRecipient()) {
+                        // binding_<name> = recipient;
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitFieldInsn(PUTFIELD, compiledHelperName, binding.getFieldName(), binding.getFieldDescriptor());
+                    } else if (!binding.isHelper() && !binding.isBindVar()) {
+                        // binding_<name> = (<type>)args[binding.getCallArrayIndex()];
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitVarInsn(ALOAD, 2);
+                        mv.visitLdcInsn(binding.getCallArrayIndex());
+                        mv.visitInsn(AALOAD);
+                        compileFieldUnbox(binding.getType(), mv);
+                        mv.visitFieldInsn(PUTFIELD, compiledHelperName, binding.getFieldName(), binding.getFieldDescriptor());
+                    }
+                } else if (binding.isHelper()) {
                     // bindingMap.put(name, this);
                     mv.visitVarInsn(ALOAD, 0);
                     mv.visitFieldInsn(GETFIELD, compiledHelperName, "bindingMap", "Ljava/util/HashMap;");
@@ -256,7 +280,16 @@ public class Compiler implements Opcodes
 
                 if (binding.isUpdated()) {
                     // if (binding.isParam() || binding.isLocalVar() || binding.isReturn()) {
-                    if (!binding.isBindVar()) {
+                    if (!binding.isBindVar() && compileToBytecode) {
+                        int idx = binding.getCallArrayIndex();
+                        // args[idx] = binding_<name>;
+                        mv.visitVarInsn(ALOAD, 2); // args
+                        mv.visitLdcInsn(idx);
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitFieldInsn(GETFIELD, compiledHelperName, binding.getFieldName(), binding.getFieldDescriptor());
+                        compileFieldBox(binding.getType(), mv);
+                        mv.visitInsn(AASTORE);
+                    } else if (!binding.isBindVar()) {
                         int idx = binding.getCallArrayIndex();
                         // Object value = bindingMap.get(name);
                         // args[idx] = value;
@@ -276,6 +309,134 @@ public class Compiler implements Opcodes
             mv.visitMaxs(4, 3);
             mv.visitEnd();
         }
+        if (compileToBytecode) {
+            // create the execute methods which accept a single int, long, float, double or Object value
+            //
+            // public void execute(Object recipient, <type> value) throws ExecuteException
+            //
+            // trigger code only calls the variant which matches the type of the rule's typed call
+            // binding. the others are implemented by passing a boxed value to the array variant.
+            Binding typedBinding = rule.getTypedCallBinding();
+            String typedDescriptor = (typedBinding != null ? getValueDescriptor(typedBinding.getType()) : null);
+            String[] valueDescriptors = { "I", "J", "F", "D", "Ljava/lang/Object;" };
+            org.jboss.byteman.rule.type.Type[] valueTypes = {
+                    org.jboss.byteman.rule.type.Type.I, org.jboss.byteman.rule.type.Type.J,
+                    org.jboss.byteman.rule.type.Type.F, org.jboss.byteman.rule.type.Type.D,
+                    org.jboss.byteman.rule.type.Type.OBJECT };
+            for (int i = 0; i < valueDescriptors.length; i++) {
+                String valueDescriptor = valueDescriptors[i];
+                org.objectweb.asm.Type valueType = org.objectweb.asm.Type.getType(valueDescriptor);
+                int valueSize = valueType.getSize();
+                mv = cw.visitMethod(ACC_PUBLIC, "execute", "(Ljava/lang/Object;" + valueDescriptor + ")V", null, new String[] { "org/jboss/byteman/rule/exception/ExecuteException" });
+                mv.visitCode();
+                if (valueDescriptor.equals(typedDescriptor)) {
+                    // if (Transformer.isVerbose()) System.out.println(rule.getName() + " execute");
+                    compileExecuteTrace(compiledHelperName, mv);
+                    Iterator<Binding> iterator = bindings.iterator();
+                    while (iterator.hasNext()) {
+                        Binding binding = iterator.next();
+                        if (!binding.isAlias() && binding.isRecipient()) {
+                            // binding_<name> = recipient;
+                            mv.visitVarInsn(ALOAD, 0);
+                            mv.visitVarInsn(ALOAD, 1);
+                            mv.visitFieldInsn(PUTFIELD, compiledHelperName, binding.getFieldName(), binding.getFieldDescriptor());
+                        }
+                    }
+                    // binding_<name> = value;
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitVarInsn(valueType.getOpcode(ILOAD), 2);
+                    mv.visitFieldInsn(PUTFIELD, compiledHelperName, typedBinding.getFieldName(), typedBinding.getFieldDescriptor());
+                    // execute0()
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, compiledHelperName, "execute0", "()V");
+                } else {
+                    // execute(recipient, new Object[] { <box>(value) });
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitVarInsn(ALOAD, 1);
+                    mv.visitInsn(ICONST_1);
+                    mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+                    mv.visitInsn(DUP);
+                    mv.visitInsn(ICONST_0);
+                    mv.visitVarInsn(valueType.getOpcode(ILOAD), 2);
+                    if (valueDescriptor.equals(typedDescriptor)) {
+                        // box using the binding type so that e.g. a boolean is passed as a Boolean
+                        compileFieldBox(typedBinding.getType(), mv);
+                    } else {
+                        compileFieldBox(valueTypes[i], mv);
+                    }
+                    mv.visitInsn(AASTORE);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, compiledHelperName, "execute", "(Ljava/lang/Object;[Ljava/lang/Object;)V");
+                }
+                // return
+                mv.visitInsn(RETURN);
+                mv.visitMaxs(5 + valueSize, 2 + valueSize);
+                mv.visitEnd();
+            }
+        }
+        if (compileToBytecode) {
+        {
+        // create the setBinding method
+        //
+        // public void setBinding(String name, Object value)
+        mv = cw.visitMethod(ACC_PUBLIC, "setBinding", "(Ljava/lang/String;Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        Iterator<Binding> iterator = bindings.iterator();
+        while (iterator.hasNext()) {
+            Binding binding = iterator.next();
+            if (binding.isAlias() || binding.isHelper()) {
+                continue;
+            }
+            // if (name.equals("<name>")) { binding_<name> = (<type>)value; return; }
+            Label next = new Label();
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitLdcInsn(binding.getName());
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z");
+            mv.visitJumpInsn(IFEQ, next);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 2);
+            compileFieldUnbox(binding.getType(), mv);
+            mv.visitFieldInsn(PUTFIELD, compiledHelperName, binding.getFieldName(), binding.getFieldDescriptor());
+            mv.visitInsn(RETURN);
+            mv.visitLabel(next);
+        }
+        // return
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(3, 3);
+        mv.visitEnd();
+        }
+        {
+        // create the getBinding method
+        //
+        // public Object getBinding(String name)
+        mv = cw.visitMethod(ACC_PUBLIC, "getBinding", "(Ljava/lang/String;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        Iterator<Binding> iterator = bindings.iterator();
+        while (iterator.hasNext()) {
+            Binding binding = iterator.next();
+            if (binding.isAlias()) {
+                continue;
+            }
+            // if (name.equals("<name>")) { return binding_<name>; }
+            Label next = new Label();
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitLdcInsn(binding.getName());
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z");
+            mv.visitJumpInsn(IFEQ, next);
+            mv.visitVarInsn(ALOAD, 0);
+            if (!binding.isHelper()) {
+                mv.visitFieldInsn(GETFIELD, compiledHelperName, binding.getFieldName(), binding.getFieldDescriptor());
+                compileFieldBox(binding.getType(), mv);
+            }
+            mv.visitInsn(ARETURN);
+            mv.visitLabel(next);
+        }
+        // return null
+        mv.visitInsn(ACONST_NULL);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(2, 2);
+        mv.visitEnd();
+        }
+        } else {
         {
         // create the setBinding method
         //
@@ -310,6 +471,7 @@ public class Compiler implements Opcodes
         mv.visitMaxs(2, 2);
         mv.visitEnd();
         }
+        }
         {
         // create the getName method
         //
@@ -325,6 +487,40 @@ public class Compiler implements Opcodes
         mv.visitMaxs(1, 1);
         mv.visitEnd();
         }
+        {
+        // create the reset method
+        //
+        // public void reset()
+        mv = cw.visitMethod(ACC_PUBLIC, "reset", "()V", null, null);
+        mv.visitCode();
+        if (compileToBytecode) {
+            // binding_<name> = null; for each binding which holds an object
+            Iterator<Binding> iterator = bindings.iterator();
+            while (iterator.hasNext()) {
+                Binding binding = iterator.next();
+                if (binding.isAlias() || binding.isHelper() || binding.getType().isPrimitive()) {
+                    continue;
+                }
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitInsn(ACONST_NULL);
+                mv.visitFieldInsn(PUTFIELD, compiledHelperName, binding.getFieldName(), binding.getFieldDescriptor());
+            }
+        } else {
+            // bindingMap.clear();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, compiledHelperName, "bindingMap", "Ljava/util/HashMap;");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/util/HashMap", "clear", "()V");
+        }
+        if (Helper.class.isAssignableFrom(helperClass)) {
+            // resetCachedState();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/helper/Helper", "resetCachedState", "()V");
+        }
+        // return
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(2, 1);
+        mv.visitEnd();
+        }
         // create the getAccessibleField method
         //
         // public Object getAccessibleField(Object owner, int fieldIndex)
@@ -393,7 +589,7 @@ public class Compiler implements Opcodes
             // private void execute0()
             mv = cw.visitMethod(ACC_PRIVATE, "execute0", "()V", null, new String[] { "org/jboss/byteman/rule/exception/ExecuteException" });
             mv.visitCode();
-            CompileContext compileContext = new CompileContext(mv);
+            CompileContext compileContext = new CompileContext(mv, compiledHelperName);
             // make sure we set the first line number before generating any code
             compileContext.notifySourceLine(rule.getLine());
             compileContext.addLocalCount(3); // for this and 2 object args
@@ -402,13 +598,29 @@ public class Compiler implements Opcodes
             // if (test())
             rule.getCondition().compile(mv, compileContext);
             Label l0 = new Label();
+            Label l1 = new Label();
             mv.visitJumpInsn(IFEQ, l0);
             compileContext.addStackCount(-1);
             // then
+            // rule.conditionTrue();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, compiledHelperName, "rule", "Lorg/jboss/byteman/rule/Rule;");
+            compileContext.addStackCount(1);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/Rule", "conditionTrue", "()V");
+            compileContext.addStackCount(-1);
             rule.getAction().compile(mv, compileContext);
             // fire();
-            // end if
+            mv.visitJumpInsn(GOTO, l1);
+            // else
             mv.visitLabel(l0);
+            // rule.conditionFalse();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, compiledHelperName, "rule", "Lorg/jboss/byteman/rule/Rule;");
+            compileContext.addStackCount(1);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/Rule", "conditionFalse", "()V");
+            compileContext.addStackCount(-1);
+            // end if
+            mv.visitLabel(l1);
             // this will match the ENDRULE line
             compileContext.notifySourceEnd();
             // return
@@ -432,13 +644,25 @@ public class Compiler implements Opcodes
             mv.visitVarInsn(ALOAD, 0);
             mv.visitMethodInsn(INVOKESPECIAL, compiledHelperName, "test", "()Z");
             Label l0 = new Label();
+            Label l1 = new Label();
             mv.visitJumpInsn(IFEQ, l0);
             // then
+            // rule.conditionTrue();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, compiledHelperName, "rule", "Lorg/jboss/byteman/rule/Rule;");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/Rule", "conditionTrue", "()V");
             // fire();
             mv.visitVarInsn(ALOAD, 0);
             mv.visitMethodInsn(INVOKESPECIAL, compiledHelperName, "fire", "()V");
-            // end if
+            mv.visitJumpInsn(GOTO, l1);
+            // else
             mv.visitLabel(l0);
+            // rule.conditionFalse();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, compiledHelperName, "rule", "Lorg/jboss/byteman/rule/Rule;");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/Rule", "conditionFalse", "()V");
+            // end if
+            mv.visitLabel(l1);
             // return
             mv.visitInsn(RETURN);
             mv.visitMaxs(1, 1);
@@ -504,6 +728,94 @@ public class Compiler implements Opcodes
         return cw.toByteArray();
     }
 
+    /**
+     * generate code to convert an Object on top of the stack to the value stored in a binding field,
+     * casting it to the corresponding box type and unboxing it if the binding has a primitive type
+     * @param type the type of the binding
+     * @param mv the current method visitor
+     */
+    private static void compileFieldUnbox(org.jboss.byteman.rule.type.Type type, MethodVisitor mv)
+    {
+        if (!type.isPrimitive()) {
+            // the field holds an Object so no conversion is needed
+            return;
+        }
+        org.jboss.byteman.rule.type.Type boxType = org.jboss.byteman.rule.type.Type.boxType(type);
+        mv.visitTypeInsn(CHECKCAST, boxType.getInternalName());
+        if (boxType == org.jboss.byteman.rule.type.Type.BOOLEAN) {
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z");
+        } else if (boxType == org.jboss.byteman.rule.type.Type.CHARACTER) {
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Character", "charValue", "()C");
+        } else {
+            String valueMethod = type.getName() + "Value";
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", valueMethod, "()" + type.getInternalName());
+        }
+    }
+
+    /**
+     * generate code to convert the value of a binding field on top of the stack to an Object,
+     * boxing it if the binding has a primitive type
+     * @param type the type of the binding
+     * @param mv the current method visitor
+     */
+    private static void compileFieldBox(org.jboss.byteman.rule.type.Type type, MethodVisitor mv)
+    {
+        if (!type.isPrimitive()) {
+            // the field holds an Object so no conversion is needed
+            return;
+        }
+        org.jboss.byteman.rule.type.Type boxType = org.jboss.byteman.rule.type.Type.boxType(type);
+        String boxName = boxType.getInternalName();
+        mv.visitMethodInsn(INVOKESTATIC, boxName, "valueOf", "(" + type.getInternalName() + ")L" + boxName + ";");
+    }
+
+    /**
+     * generate code to print a trace message when a rule is executed in verbose mode
+     * @param compiledHelperName the internal name of the helper adapter class
+     * @param mv the current method visitor
+     */
+    private static void compileExecuteTrace(String compiledHelperName, MethodVisitor mv)
+    {
+        // if (Transformer.isVerbose())
+        mv.visitMethodInsn(INVOKESTATIC, "org/jboss/byteman/agent/Transformer", "isVerbose", "()Z");
+        Label l0 = new Label();
+        mv.visitJumpInsn(IFEQ, l0);
+        // then
+        // System.out.println(rule.getName() + " execute");
+        mv.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        mv.visitTypeInsn(NEW, "java/lang/StringBuilder");
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, compiledHelperName, "rule", "Lorg/jboss/byteman/rule/Rule;");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/Rule", "getName", "()Ljava/lang/String;");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+        mv.visitLdcInsn(" execute()");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V");
+        // end if
+        mv.visitLabel(l0);
+    }
+
+    /**
+     * return the descriptor of the value parameter of the execute method variant which trigger code
+     * uses to pass a binding of the given type. boolean, byte, char and short values are passed as int.
+     * @param type the type of the binding
+     * @return the value descriptor
+     */
+    private static String getValueDescriptor(org.jboss.byteman.rule.type.Type type)
+    {
+        if (!type.isPrimitive()) {
+            return "Ljava/lang/Object;";
+        }
+        String internalName = type.getInternalName();
+        if (internalName.equals("J") || internalName.equals("F") || internalName.equals("D")) {
+            return internalName;
+        }
+        return "I";
+    }
+
     private static int nextId = 0;
 
     private static synchronized int nextId()
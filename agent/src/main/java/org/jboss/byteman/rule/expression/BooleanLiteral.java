@@ -48,6 +48,11 @@ public class BooleanLiteral extends Expression
         this.value = (Boolean)token.getChild(0) ;
     }
 
+    public boolean getValue()
+    {
+        return value;
+    }
+
 
     /**
      * verify that variables mentioned in this expression are actually available in the supplied
@@ -202,8 +202,6 @@ public class DollarExpression extends AssignableExpression
         // make sure we are at the right source line
         compileContext.notifySourceLine(line);
 
-        String targetName = binding.getName();
-
         int currentStack = compileContext.getStackCount();
         int expected = (type.getNBytes() > 4 ? 2 : 1);
 
@@ -216,20 +214,13 @@ public class DollarExpression extends AssignableExpression
             compileContext.addStackCount(1);
         } else {
             // stack the current helper
-            // stack the name for the variable
-            // call the getBinding method
+            // load the field holding the value of the binding
             mv.visitVarInsn(Opcodes.ALOAD, 0);
-            mv.visitLdcInsn(targetName);
-            compileContext.addStackCount(2);
-            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.internalName(HelperAdapter.class), "getBinding", "(Ljava/lang/String;)Ljava/lang/Object;");
-            compileContext.addStackCount(-1);
+            compileContext.addStackCount(1);
+            mv.visitFieldInsn(Opcodes.GETFIELD, compileContext.getCompiledHelperName(), binding.getFieldName(), binding.getFieldDescriptor());
+            compileContext.addStackCount(expected - 1);
             // perform any necessary type conversion
-            if (type.isPrimitive()) {
-                // cast down to the boxed type then do an unbox
-                Type boxType = Type.boxType(type);
-                compileObjectConversion(Type.OBJECT, boxType, mv, compileContext);
-                compileUnbox(boxType, type,  mv, compileContext);
-            } else {
+            if (!type.isPrimitive()) {
                 // cast down to the required type
                 compileObjectConversion(Type.OBJECT, type, mv, compileContext);
             }
@@ -255,8 +246,6 @@ public class DollarExpression extends AssignableExpression
         // make sure we are at the right source line
         compileContext.notifySourceLine(line);
 
-        String targetName = binding.getName();
-
         int currentStack = compileContext.getStackCount();
         int size = ((type.getNBytes() > 4) ? 2 : 1);
 
@@ -273,39 +262,27 @@ public class DollarExpression extends AssignableExpression
             }
             // stack the current helper then insert it below the value
             mv.visitVarInsn(Opcodes.ALOAD, 0);
-            if (size == 2) {
-                // use a DUP_X2 to push a copy below the value then pop the redundant value
-                mv.visitInsn(Opcodes.DUP_X2);
-                mv.visitInsn(Opcodes.POP);
-            } else {
-                // we can just swap the two values
-                mv.visitInsn(Opcodes.SWAP);
-            }
-            // stack the name for the variable and swap below the value
-            mv.visitLdcInsn(targetName);
             if (size == 2) {
                 // use a DUP_X2 to push a copy below the value then pop the redundant value
                 mv.visitInsn(Opcodes.DUP_X2);
                 // this is the high water mark
-                // at this point the stack has gone from [ .. val1 val2]  to [.. val1 val2 helper name val1 val2 name]
-                compileContext.addStackCount(5);
+                // at this point the stack has gone from [ .. val1 val2]  to [.. val1 val2 helper val1 val2 helper]
+                compileContext.addStackCount(4);
                 mv.visitInsn(Opcodes.POP);
                 compileContext.addStackCount(-1);
             } else {
                 // this is the high water mark
-                // at this point the stack has gone from [ .. val]  to [.. val helper val name]
-                compileContext.addStackCount(3);
+                // at this point the stack has gone from [ .. val]  to [.. val val helper]
+                compileContext.addStackCount(2);
                 // we can just swap the two values
                 mv.visitInsn(Opcodes.SWAP);
             }
-            // ensure we have an object
-            compileObjectConversion(type, Type.OBJECT, mv, compileContext);
 
-            // call the setBinding method
-            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.internalName(HelperAdapter.class), "setBinding", "(Ljava/lang/String;Ljava/lang/Object;)V");
+            // store the value in the field for the binding
+            mv.visitFieldInsn(Opcodes.PUTFIELD, compileContext.getCompiledHelperName(), binding.getFieldName(), binding.getFieldDescriptor());
 
-            // the call will remove 3 from the stack height
-            compileContext.addStackCount(-3);
+            // the store will remove the helper and the value from the stack height
+            compileContext.addStackCount(-(1 + size));
 
             // ok, the stack height should be as it was
             if (compileContext.getStackCount() != currentStack) {
@@ -318,6 +295,15 @@ public class DollarExpression extends AssignableExpression
         stringWriter.write(name);
     }
 
+    /**
+     * return the index of the trigger method parameter referenced by this expression
+     * @return the parameter index or a negative value if this does not reference a parameter
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
     private String name;
     /**
      * index is positive or zero if this is a reference to a method param and negative if this is a reference to
@@ -114,5 +114,10 @@ public class NumericLiteral extends Expression
         stringWriter.write(value.toString());
     }
 
+    public Number getValue()
+    {
+        return value;
+    }
+
     private Number value;
 }
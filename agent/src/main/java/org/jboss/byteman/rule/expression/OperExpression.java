@@ -43,6 +43,15 @@ public abstract class OperExpression extends Expression
 
     protected int oper;
 
+    /**
+     * return the operator implemented by this expression
+     * @return the operator
+     */
+    public int getOper()
+    {
+        return oper;
+    }
+
     /**
      * return the operand with the given index or null if the index is out of range
      * @param index the index
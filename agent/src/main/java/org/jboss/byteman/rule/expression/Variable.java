@@ -142,22 +142,18 @@ public class Variable extends AssignableExpression
         // make sure we are at the right source line
         compileContext.notifySourceLine(line);
 
+        Binding binding = getBindings().lookup(name);
+        int size = ((type.getNBytes() > 4) ? 2 : 1);
+
         // stack the current helper
-        // stack the name for the variable
-        // call the getBinding method
+        // load the field holding the value of the variable
         mv.visitVarInsn(Opcodes.ALOAD, 0);
-        mv.visitLdcInsn(name);
-        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.internalName(HelperAdapter.class), "getBinding", "(Ljava/lang/String;)Ljava/lang/Object;");
-        // ok, we added 2 to the stack and then popped them leaving 1
-        compileContext.addStackCount(2);
-        compileContext.addStackCount(-1);
+        mv.visitFieldInsn(Opcodes.GETFIELD, compileContext.getCompiledHelperName(), binding.getFieldName(), binding.getFieldDescriptor());
+        // ok, we added 1 to the stack and then replaced it with the field value
+        compileContext.addStackCount(1);
+        compileContext.addStackCount(size - 1);
         // perform any necessary type conversion
-        if (type.isPrimitive()) {
-            // cast down to the boxed type then do an unbox
-            Type boxType = Type.boxType(type);
-            compileObjectConversion(Type.OBJECT, boxType, mv, compileContext);
-            compileUnbox(boxType, type,  mv, compileContext);
-        } else {
+        if (!type.isPrimitive()) {
             // cast down to the required type
             compileObjectConversion(Type.OBJECT, type, mv, compileContext);
         }
@@ -176,9 +172,9 @@ public class Variable extends AssignableExpression
         // make sure we are at the right source line
         compileContext.notifySourceLine(line);
 
+        Binding binding = getBindings().lookup(name);
         int currentStack = compileContext.getStackCount();
         int size = ((type.getNBytes() > 4) ? 2 : 1);
-        int max;
 
         // value to be assigned is TOS and will already be coerced to the correct value type
         // copy it so we leave it as a a return value on the stack
@@ -195,43 +191,24 @@ public class Variable extends AssignableExpression
             // use a DUP_X2 to push a copy below the value then pop the redundant value
             // [... val1 val2 val1 val2 helper ==> ... val1 val2 helper val1 val2 helper]
             mv.visitInsn(Opcodes.DUP_X2);
-            // [... val1 val2 helper val1 val2 helper ==> ... val1 val2 helper val1 val2]
-            mv.visitInsn(Opcodes.POP);
-        } else {
-            // we can just swap the two values
-            // [... val val helper ==> ... val helper val]
-            mv.visitInsn(Opcodes.SWAP);
-        }
-        // stack the name for the variable and swap below the value
-        mv.visitLdcInsn(name);
-        if (size == 2) {
-            // use a DUP_X2 to push a copy below the value then pop the redundant value
-            // [... val1 val2 helper val1 val2 name ==> [... val1 val2 helper name val1 val2 name]
-            mv.visitInsn(Opcodes.DUP_X2);
             // this is the high water mark
-            compileContext.addStackCount(5);
-            // [... val1 val2 helper name val1 val2 name ==> [... val1 val2 helper name val1 val2]
+            compileContext.addStackCount(4);
+            // [... val1 val2 helper val1 val2 helper ==> ... val1 val2 helper val1 val2]
             mv.visitInsn(Opcodes.POP);
             compileContext.addStackCount(-1);
-            // and now we have the desired arrangement for the call[.. val1 val2 helper name val1 val2]
         } else {
             // this is the high water mark
-            // at this point the stack has gone from [ .. val]  to [.. val helper val name]
-            compileContext.addStackCount(3);
+            compileContext.addStackCount(2);
             // we can just swap the two values
-            // [... val helper val name ==> ... val helper name val]
+            // [... val val helper ==> ... val helper val]
             mv.visitInsn(Opcodes.SWAP);
-            // and now we have the desired arrangement for the call[.. val helper name val]
         }
 
-        // ensure we have an object
-        compileObjectConversion(type, Type.OBJECT, mv, compileContext);
-
-        // call the setBinding method
-        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.internalName(HelperAdapter.class), "setBinding", "(Ljava/lang/String;Ljava/lang/Object;)V");
+        // store the value in the field for the variable
+        mv.visitFieldInsn(Opcodes.PUTFIELD, compileContext.getCompiledHelperName(), binding.getFieldName(), binding.getFieldDescriptor());
 
-        // the call will remove 3 from the stack height
-        compileContext.addStackCount(-3);
+        // the store will remove the helper and the value from the stack height
+        compileContext.addStackCount(-(1 + size));
 
         // ok, the stack height should be as it was
         if (compileContext.getStackCount() != currentStack) {
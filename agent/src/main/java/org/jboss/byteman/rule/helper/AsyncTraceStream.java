@@ -0,0 +1,273 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+package org.jboss.byteman.rule.helper;
+
+import org.jboss.byteman.agent.Transformer;
+import org.jboss.byteman.rule.Rule;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A trace stream which writes to a file asynchronously. Tracing threads append messages to a lock-free
+ * queue and a single background writer thread periodically drains the queues of all open streams,
+ * writing each batch of messages to the file channel with one call. When a queue is full the tracing
+ * thread either waits for the writer to make space or discards the message, depending upon the
+ * configured overflow policy. Discarded messages are counted and the count is written to the stream
+ * in place of the missing output.
+ */
+class AsyncTraceStream
+{
+    private final static String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /**
+     * the channel used to write to the trace file
+     */
+    private final FileChannel channel;
+
+    /**
+     * queue of messages waiting to be written
+     */
+    private final ConcurrentLinkedQueue<String> queue;
+
+    /**
+     * count of messages in the queue
+     */
+    private final AtomicInteger queued;
+
+    /**
+     * count of messages dropped since the last write
+     */
+    private final AtomicLong dropped;
+
+    /**
+     * the maximum number of messages which may be queued
+     */
+    private final int queueSize;
+
+    /**
+     * true if messages should be dropped when the queue is full or false if the tracing thread
+     * should wait for space
+     */
+    private final boolean drop;
+
+    /**
+     * true once close has been called
+     */
+    private volatile boolean closed;
+
+    AsyncTraceStream(FileOutputStream fos)
+    {
+        this.channel = fos.getChannel();
+        this.queue = new ConcurrentLinkedQueue<String>();
+        this.queued = new AtomicInteger(0);
+        this.dropped = new AtomicLong(0);
+        this.queueSize = Transformer.getAsyncTraceQueueSize();
+        this.drop = Transformer.isAsyncTraceDrop();
+        this.closed = false;
+        register(this);
+    }
+
+    /**
+     * queue a message for writing
+     * @param message the message to be written
+     * @param newLine true if a line separator should be appended to the message
+     * @return true if the message was queued or dropped according to the overflow policy or false
+     * if the stream has been closed and the message should be written elsewhere
+     */
+    boolean write(String message, boolean newLine)
+    {
+        String text = (newLine ? message + LINE_SEPARATOR : message);
+
+        while (true) {
+            if (closed) {
+                return false;
+            }
+            int count = queued.get();
+            if (count < queueSize) {
+                if (queued.compareAndSet(count, count + 1)) {
+                    break;
+                }
+            } else if (drop) {
+                dropped.incrementAndGet();
+                return true;
+            } else {
+                // wake the writer and wait for it to make some space
+                wakeWriter();
+                LockSupport.parkNanos(BLOCK_WAIT_NANOS);
+            }
+        }
+
+        queue.add(text);
+
+        // if a close drained the queue before we added our message then retract it and let the
+        // caller write it to whatever stream replaces this one
+
+        if (closed && queue.remove(text)) {
+            queued.decrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * write all queued messages to the file
+     */
+    synchronized void drain()
+    {
+        if (!channel.isOpen()) {
+            return;
+        }
+
+        StringBuilder builder = null;
+        String text;
+
+        while ((text = queue.poll()) != null) {
+            queued.decrementAndGet();
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            builder.append(text);
+        }
+
+        long count = dropped.getAndSet(0);
+
+        if (count > 0) {
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            builder.append("[dropped ").append(count).append(" trace messages]").append(LINE_SEPARATOR);
+        }
+
+        if (builder == null) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes());
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // nothing we can do except drop the output
+        }
+    }
+
+    /**
+     * write all queued messages and close the file. subsequent writes will return false.
+     */
+    void close()
+    {
+        closed = true;
+        unregister(this);
+        synchronized (this) {
+            drain();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * how long a tracing thread waits before rechecking a full queue
+     */
+    private final static long BLOCK_WAIT_NANOS = 1000000L;
+
+    /**
+     * the set of open streams serviced by the writer thread
+     */
+    private static CopyOnWriteArraySet<AsyncTraceStream> streams = new CopyOnWriteArraySet<AsyncTraceStream>();
+
+    /**
+     * the background writer thread or null if it has not yet been started
+     */
+    private static Thread writer = null;
+
+    private static synchronized void register(AsyncTraceStream stream)
+    {
+        streams.add(stream);
+        if (writer == null) {
+            writer = new Thread("Byteman async trace writer")
+            {
+                public void run()
+                {
+                    // make sure we don't trigger rules while writing trace output
+                    Rule.disableTriggersInternal();
+                    while (true) {
+                        LockSupport.parkNanos(Transformer.getAsyncTraceInterval() * 1000000L);
+                        drainAll();
+                    }
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+            // make sure queued output is not lost when the JVM exits
+            Runtime.getRuntime().addShutdownHook(new Thread("Byteman async trace shutdown")
+            {
+                public void run()
+                {
+                    Rule.disableTriggersInternal();
+                    drainAll();
+                }
+            });
+        }
+    }
+
+    private static void unregister(AsyncTraceStream stream)
+    {
+        streams.remove(stream);
+    }
+
+    private static void drainAll()
+    {
+        Iterator<AsyncTraceStream> iterator = streams.iterator();
+        while (iterator.hasNext()) {
+            iterator.next().drain();
+        }
+    }
+
+    private static void wakeWriter()
+    {
+        Thread thread;
+        synchronized (AsyncTraceStream.class) {
+            thread = writer;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+
+package org.jboss.byteman.rule.helper;
+
+import org.jboss.byteman.rule.Rule;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Walks the current thread's stack lazily using java.lang.StackWalker when the JVM provides it. Callers
+ * which only need to look at a few frames below the trigger method can stop the walk as soon as they
+ * have what they need rather than materializing every frame in the stack as Thread.getStackTrace()
+ * does. The agent is compiled for older JVMs so StackWalker is accessed reflectively, including the
+ * java.util.function.Function passed to StackWalker.walk, which is implemented using a dynamic proxy.
+ * This class is only used when isAvailable() returns true. Callers must fall back to Thread.getStackTrace() otherwise.
+ *
+ * Frames are numbered in the same way as the array returned by Thread.getStackTrace(), relative to the
+ * innermost call to Rule.execute, so that the trigger method is found 2 frames below it. Reflection
+ * frames are included for the same reason.
+ */
+class FrameWalker
+{
+    /**
+     * @return true if StackWalker is available in this JVM
+     */
+    static boolean isAvailable()
+    {
+        return WALKER != null;
+    }
+
+    /**
+     * test whether the name of any of the selected methods in the stack which called the trigger method
+     * matches the supplied pattern. this implements the same check as Helper.callerCheck but stops
+     * walking the stack once the match is found or the last selected frame has been checked.
+     * @param match the value to match
+     * @param isRegExp true if match is a regular expression
+     * @param includeClass true if the match should be against the class qualified method name
+     * @param includePackage true if the match should be against the package and class qualified method name
+     * @param startFrame the offset from the trigger frame of the first frame to check
+     * @param lastFrame the offset from the trigger frame of the first frame not to check
+     * @return TRUE or FALSE according to whether a match was found or null if the trigger frame could not
+     * be located
+     */
+    static Boolean callerCheck(final String match, final boolean isRegExp,
+                               final boolean includeClass, final boolean includePackage,
+                               final int startFrame, final int lastFrame)
+    {
+        final Pattern regExp = (isRegExp ? Helper.getPattern(match) : null);
+        return (Boolean)walk(new FrameVisitor() {
+            public Object visit(Iterator<Object> iterator)
+            {
+                int triggerOffset = findTrigger(iterator);
+                if (triggerOffset < 0) {
+                    return null;
+                }
+                // iterator is now positioned at the trigger frame
+                for (int i = 0; i < lastFrame && iterator.hasNext(); i++) {
+                    Object frame = iterator.next();
+                    if (i >= startFrame &&
+                            Helper.frameMatches(className(frame), methodName(frame), match, regExp,
+                                    includeClass, includePackage)) {
+                        return Boolean.TRUE;
+                    }
+                }
+                return Boolean.FALSE;
+            }
+        });
+    }
+
+    /**
+     * capture the frames of the current stack from the top down to the given number of frames below the
+     * trigger frame
+     * @param frameCount the number of frames to capture below and including the trigger frame
+     * @return the captured frames or null if the trigger frame could not be located
+     */
+    static StackTraceElement[] captureStack(final int frameCount)
+    {
+        return (StackTraceElement[])walk(new FrameVisitor() {
+            public Object visit(Iterator<Object> iterator)
+            {
+                List<StackTraceElement> captured = new ArrayList<StackTraceElement>();
+                boolean found = false;
+                while (iterator.hasNext()) {
+                    Object frame = iterator.next();
+                    captured.add(toStackTraceElement(frame));
+                    if (isRuleExecute(frame)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return null;
+                }
+                // the frame calling the innermost Rule.execute plus the requested frames
+                for (int i = 0; i < frameCount + 1 && iterator.hasNext(); i++) {
+                    captured.add(toStackTraceElement(iterator.next()));
+                }
+                return captured.toArray(new StackTraceElement[captured.size()]);
+            }
+        });
+    }
+
+    /**
+     * advance the iterator past the innermost Rule.execute frame and its caller so that the next frame it
+     * returns is the trigger frame
+     * @param iterator an iterator over the stack frames
+     * @return 0 if the trigger frame was located or -1 if not
+     */
+    private static int findTrigger(Iterator<Object> iterator)
+    {
+        while (iterator.hasNext()) {
+            if (isRuleExecute(iterator.next())) {
+                if (!iterator.hasNext()) {
+                    return -1;
+                }
+                iterator.next();
+                return 0;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isRuleExecute(Object frame)
+    {
+        return RULE_EXECUTE_METHOD_NAME.equals(methodName(frame)) &&
+                RULE_CLASS_NAME.equals(className(frame));
+    }
+
+    /**
+     * code which inspects the frames supplied by a stack walk
+     */
+    private static abstract class FrameVisitor
+    {
+        /**
+         * @param frames an iterator over the StackWalker.StackFrame instances for the current stack
+         * @return the result of the walk
+         */
+        abstract Object visit(Iterator<Object> frames);
+    }
+
+    /**
+     * invocation handler which implements Function.apply by passing the iterator of the supplied frame
+     * stream to a visitor
+     */
+    private static class FrameFunction implements InvocationHandler
+    {
+        private final FrameVisitor visitor;
+
+        FrameFunction(FrameVisitor visitor)
+        {
+            this.visitor = visitor;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if (name.equals("apply")) {
+                return visitor.visit((Iterator<Object>)STREAM_ITERATOR.invoke(args[0]));
+            } else if (name.equals("equals")) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if (name.equals("hashCode")) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if (name.equals("toString")) {
+                return "FrameWalker$FrameFunction@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+            throw new UnsupportedOperationException("FrameWalker.FrameFunction : unexpected method " + name);
+        }
+    }
+
+    private static Object walk(FrameVisitor visitor)
+    {
+        Object function = Proxy.newProxyInstance(FUNCTION_CLASS.getClassLoader(), new Class<?>[] { FUNCTION_CLASS }, new FrameFunction(visitor));
+        try {
+            return WALK.invoke(WALKER, function);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("FrameWalker.walk : unexpected exception walking stack", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("FrameWalker.walk : unexpected exception walking stack", e);
+        }
+    }
+
+    private static String className(Object frame)
+    {
+        return (String)invoke(GET_CLASS_NAME, frame);
+    }
+
+    private static String methodName(Object frame)
+    {
+        return (String)invoke(GET_METHOD_NAME, frame);
+    }
+
+    private static StackTraceElement toStackTraceElement(Object frame)
+    {
+        return (StackTraceElement)invoke(TO_STACK_TRACE_ELEMENT, frame);
+    }
+
+    private static Object invoke(Method method, Object frame)
+    {
+        try {
+            return method.invoke(frame);
+        } catch (Exception e) {
+            throw new IllegalStateException("FrameWalker.invoke : unexpected exception accessing stack frame", e);
+        }
+    }
+
+    private final static String RULE_CLASS_NAME = Rule.class.getName();
+    private final static String RULE_EXECUTE_METHOD_NAME = "execute";
+
+    /**
+     * the StackWalker instance or null if StackWalker is not available
+     */
+    private final static Object WALKER;
+    private final static Method WALK;
+    /**
+     * the java.util.function.Function interface implemented by the proxy passed to walk
+     */
+    private final static Class<?> FUNCTION_CLASS;
+    /**
+     * the iterator method of java.util.stream.BaseStream used to read the frame stream
+     */
+    private final static Method STREAM_ITERATOR;
+    private final static Method GET_CLASS_NAME;
+    private final static Method GET_METHOD_NAME;
+    private final static Method TO_STACK_TRACE_ELEMENT;
+
+    static {
+        Object walker = null;
+        Method walk = null;
+        Class<?> functionClass = null;
+        Method streamIterator = null;
+        Method getClassName = null;
+        Method getMethodName = null;
+        Method toStackTraceElement = null;
+        try {
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            Object showReflectFrames = null;
+            for (Object option : optionClass.getEnumConstants()) {
+                if ("SHOW_REFLECT_FRAMES".equals(option.toString())) {
+                    showReflectFrames = option;
+                }
+            }
+            functionClass = Class.forName("java.util.function.Function");
+            streamIterator = Class.forName("java.util.stream.BaseStream").getMethod("iterator");
+            walk = walkerClass.getMethod("walk", functionClass);
+            getClassName = frameClass.getMethod("getClassName");
+            getMethodName = frameClass.getMethod("getMethodName");
+            toStackTraceElement = frameClass.getMethod("toStackTraceElement");
+            walker = walkerClass.getMethod("getInstance", optionClass).invoke(null, showReflectFrames);
+        } catch (Throwable th) {
+            // StackWalker is not available in this JVM
+            walker = null;
+        }
+        WALKER = walker;
+        WALK = walk;
+        FUNCTION_CLASS = functionClass;
+        STREAM_ITERATOR = streamIterator;
+        GET_CLASS_NAME = getClassName;
+        GET_METHOD_NAME = getMethodName;
+        TO_STACK_TRACE_ELEMENT = toStackTraceElement;
+    }
+}
@@ -31,6 +31,8 @@ import org.jboss.byteman.agent.Transformer;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 /**
  * This is the default helper class which is used to define builtin operations for rules.
@@ -297,7 +299,7 @@ public class Helper
         synchronized(traceMap) {
             PrintStream stream = traceMap.get(identifier);
             String name = fileName;
-            if (stream != null) {
+            if (stream != null || asyncTraceMap.containsKey(identifier)) {
                 return false;
             }
             if (fileName == null) {
@@ -331,6 +333,11 @@ public class Helper
                 return false;
             }
 
+            if (Transformer.isAsyncTrace()) {
+                asyncTraceMap.put(identifier, new AsyncTraceStream(fos));
+                return true;
+            }
+
             PrintStream ps = new PrintStream(fos, true);
 
             traceMap.put(identifier, ps);
@@ -356,6 +363,11 @@ public class Helper
         synchronized(traceMap) {
             // need to do the close while synchronized so we ensure an open cannot
             // proceed until we have flushed all changes to disk
+            AsyncTraceStream stream = asyncTraceMap.remove(identifier);
+            if (stream != null) {
+                stream.close();
+                return true;
+            }
             PrintStream ps = traceMap.get(identifier);
             if (ps != null) {
                 // make sure not to close System.out which we may see as the
@@ -383,19 +395,7 @@ public class Helper
      */
     private static boolean dotrace(Object identifier, String message)
     {
-        synchronized(traceMap) {
-            PrintStream ps = traceMap.get(identifier);
-            if (ps == null) {
-                if (doTraceOpen(identifier, null)) {
-                    ps = traceMap.get(identifier);
-                } else {
-                    ps = System.out;
-                }
-            }
-            ps.print(message);
-            ps.flush();
-        }
-        return true;
+        return doTraceText(identifier, message, false);
     }
 
     /**
@@ -410,16 +410,72 @@ public class Helper
      */
     private static boolean dotraceln(Object identifier, String message)
     {
+        return doTraceText(identifier, message, true);
+    }
+
+    /**
+     * write the supplied message to the trace stream identified by identifier, creating a new stream
+     * if none exists, and optionally append a new line
+     * @param identifier an identifier used subsequently to identify the trace output stream
+     * @param message the message to be traced
+     * @param newLine true if a new line should be appended to the message
+     * @return true
+     */
+    private static boolean doTraceText(Object identifier, String message, boolean newLine)
+    {
+        PrintStream ps;
+
+        // the out and err streams can never be closed or reopened so there is no need to
+        // lock the trace map when writing to them
+
+        if ("out".equals(identifier)) {
+            ps = traceOut;
+        } else if ("err".equals(identifier)) {
+            ps = traceErr;
+        } else {
+            ps = null;
+            // asynchronous streams are written without locking the trace map. if the stream
+            // is closed under our feet we fall through and retry under the lock
+            if (identifier != null) {
+                AsyncTraceStream stream = asyncTraceMap.get(identifier);
+                if (stream != null && stream.write(message, newLine)) {
+                    return true;
+                }
+            }
+        }
+
+        if (ps != null) {
+            if (newLine) {
+                ps.println(message);
+            } else {
+                ps.print(message);
+            }
+            ps.flush();
+            return true;
+        }
+
         synchronized(traceMap) {
-            PrintStream ps = traceMap.get(identifier);
+            ps = traceMap.get(identifier);
             if (ps == null) {
-                if (doTraceOpen(identifier, null)) {
+                AsyncTraceStream stream = (identifier == null ? null : asyncTraceMap.get(identifier));
+                if (stream == null && doTraceOpen(identifier, null)) {
                     ps = traceMap.get(identifier);
-                } else {
+                    stream = asyncTraceMap.get(identifier);
+                }
+                if (stream != null) {
+                    // the stream cannot be closed while we hold the lock so this write will succeed
+                    stream.write(message, newLine);
+                    return true;
+                }
+                if (ps == null) {
                     ps = System.out;
                 }
             }
-            ps.println(message);
+            if (newLine) {
+                ps.println(message);
+            } else {
+                ps.print(message);
+            }
             ps.flush();
         }
         return true;
@@ -432,6 +488,16 @@ public class Helper
      */
     private static void doTraceException(Object id, Throwable th)
     {
+        if (id != null) {
+            AsyncTraceStream stream = asyncTraceMap.get(id);
+            if (stream != null) {
+                StringWriter writer = new StringWriter();
+                th.printStackTrace(new PrintWriter(writer));
+                if (stream.write(writer.toString(), false)) {
+                    return;
+                }
+            }
+        }
         PrintStream ps;
         synchronized (traceMap) {
             ps = traceMap.get(id);
@@ -450,9 +516,7 @@ public class Helper
      */
     public boolean flag(Object identifier)
     {
-        synchronized (flagSet) {
-            return flagSet.add(identifier);
-        }
+        return (flagSet.putIfAbsent(nullSafeKey(identifier), Boolean.TRUE) == null);
     }
 
     /**
@@ -462,9 +526,7 @@ public class Helper
      */
     public boolean flagged(Object identifier)
     {
-        synchronized (flagSet) {
-            return flagSet.contains(identifier);
-        }
+        return flagSet.containsKey(nullSafeKey(identifier));
     }
 
     /**
@@ -474,9 +536,7 @@ public class Helper
      */
     public boolean clear(Object identifier)
     {
-        synchronized (flagSet) {
-            return flagSet.remove(identifier);
-        }
+        return (flagSet.remove(nullSafeKey(identifier)) != null);
     }
 
     // countdown support
@@ -663,36 +723,27 @@ public class Helper
             return false;
         } else {
             Waiter waiter;
-            // may need to do test and insert atomically
-            synchronized (waitMap) {
+            // test and insert atomically, retrying if a waiter arrives between the two
+            while (true) {
                 // see if we have a waiter
-                 waiter = removeWaiter(identifier);
+                waiter = removeWaiter(identifier);
 
                 if (waiter != null) {
                     return waiter.signalWake();
-                } else {
-                    // insert a pre-signalled waiter
-                    waiter = new Waiter(identifier, true, false);
-                    waitMap.put(identifier, waiter);
+                }
+                // insert a pre-signalled waiter
+                waiter = new Waiter(identifier, true, false);
+                if (waitMap.putIfAbsent(nullSafeKey(identifier), waiter) == null) {
+                    break;
                 }
             }
 
             // ok, so we need to wait until a wait has happened
 
-            synchronized (waiter) {
-                while (!waiter.waiting()) {
-                    try {
-                        waiter.wait();
-                    } catch (InterruptedException e) {
-                        // do nothing
-                    }
-                }
-            }
+            waiter.awaitWaiting();
 
             // remove the association between the waiter and the wait map
-            synchronized (waitMap) {
-                removeWaiter(identifier);
-            }
+            waitMap.remove(nullSafeKey(identifier), waiter);
             return true;
         }
     }
@@ -781,35 +832,27 @@ public class Helper
             return false;
         } else {
             Waiter waiter;
-            // may need to do test and insert atomically
-            synchronized (waitMap) {
+            // test and insert atomically, retrying if a waiter arrives between the two
+            while (true) {
                 // see if we have a waiter
-                 waiter = removeWaiter(identifier);
+                waiter = removeWaiter(identifier);
 
                 if (waiter != null) {
                     return waiter.signalThrow();
-                } else {
-                    // insert a pre-signalled waiter
-                    waiter = new Waiter(identifier, true, false);
-                    waitMap.put(identifier, waiter);
+                }
+                // insert a pre-signalled waiter
+                waiter = new Waiter(identifier, true, false);
+                if (waitMap.putIfAbsent(nullSafeKey(identifier), waiter) == null) {
+                    break;
                 }
             }
 
             // ok, so we need to wait until a wait has happened
 
-            synchronized (waiter) {
-                while (!waiter.waiting()) {
-                    try {
-                        waiter.wait();
-                    } catch (InterruptedException e) {
-                        // do nothing
-                    }
-                }
-            }
+            waiter.awaitWaiting();
+
             // remove the association between the waiter and the wait map
-            synchronized (waitMap) {
-                removeWaiter(identifier);
-            }
+            waitMap.remove(nullSafeKey(identifier), waiter);
             return true;
         }
     }
@@ -855,17 +898,7 @@ public class Helper
      */
     public boolean createRendezvous(Object identifier, int expected, boolean restartable)
     {
-        // need to do this atomically
-        synchronized (rendezvousMap) {
-            Rendezvous rendezvous = rendezvousMap.get(identifier);
-            if (rendezvous !=  null) {
-                return false;
-            }
-            rendezvous = new Rendezvous(expected, restartable);
-            rendezvousMap.put(identifier, rendezvous);
-        }
-
-        return true;
+        return (rendezvousMap.putIfAbsent(nullSafeKey(identifier), new Rendezvous(expected, restartable)) == null);
     }
 
     /**
@@ -890,13 +923,11 @@ public class Helper
      */
     public int getRendezvous(Object identifier, int expected)
     {
-        Rendezvous rendezvous = rendezvousMap.get(identifier);
+        Rendezvous rendezvous = rendezvousMap.get(nullSafeKey(identifier));
         if (rendezvous == null || rendezvous.getExpected() != expected) {
             return -1;
         }
-        synchronized (rendezvous) {
-            return rendezvous.getArrived();
-        }
+        return rendezvous.getArrived();
     }
 
     /**
@@ -923,21 +954,19 @@ public class Helper
      */
     public int rendezvous(Object identifier, long millis)
     {
-        Rendezvous rendezvous = rendezvousMap.get(identifier);
+        Rendezvous rendezvous = rendezvousMap.get(nullSafeKey(identifier));
 
         if (rendezvous !=  null) {
-            synchronized(rendezvous) {
-                int result = rendezvous.rendezvous(millis);
-                // make sure the rendezvous is removed from the map if required
-                // n.b. this implementation makes sure the remove happens before any thread
-                // successfully passes the rendezvous call
-                if (rendezvous.needsRemove()) {
-                    rendezvousMap.remove(identifier);
-                    rendezvous.setRemoved();
-                }
-
-                return result;
+            int result = rendezvous.rendezvous(millis);
+            // make sure the rendezvous is removed from the map if required
+            // n.b. every thread leaving a completed rendezvous checks this so the remove
+            // happens before any thread successfully passes the rendezvous call
+            if (rendezvous.needsRemove()) {
+                rendezvousMap.remove(nullSafeKey(identifier), rendezvous);
+                rendezvous.setRemoved();
             }
+
+            return result;
         }
 
         return -1;
@@ -952,17 +981,15 @@ public class Helper
     */
     public boolean deleteRendezvous(Object identifier, int expected)
     {
-        Rendezvous rendezvous = rendezvousMap.get(identifier);
+        Rendezvous rendezvous = rendezvousMap.get(nullSafeKey(identifier));
         if (rendezvous == null || rendezvous.getExpected() != expected) {
             return false;
         }
-        synchronized (rendezvous) {
-            if (rendezvous.delete()) {
-                if (rendezvous.needsRemove()) {
-                    rendezvousMap.remove(identifier);
-                }
-                return true;
+        if (rendezvous.delete()) {
+            if (rendezvous.needsRemove()) {
+                rendezvousMap.remove(nullSafeKey(identifier), rendezvous);
             }
+            return true;
         }
         // hmm, completed before we got there
         return false;
@@ -974,36 +1001,19 @@ public class Helper
             return false;
         }
 
-        synchronized(joinerMap) {
-            if (joinerMap.get(key) != null) {
-                return false;
-            }
-            joinerMap.put(key, new Joiner(max));
-        }
-
-        return true;
+        return (joinerMap.putIfAbsent(nullSafeKey(key), new Joiner(max)) == null);
     }
 
     public boolean isJoin(Object key, int max)
     {
-        synchronized(joinerMap) {
-            Joiner joiner = joinerMap.get(key);
-
-            if (joiner == null || joiner.getMax() != max) {
-                return false;
-            }
-        }
+        Joiner joiner = joinerMap.get(nullSafeKey(key));
 
-        return true;
+        return (joiner != null && joiner.getMax() == max);
     }
 
     public boolean joinEnlist(Object key)
     {
-        Joiner joiner;
-        synchronized (joinerMap)
-        {
-            joiner = joinerMap.get(key);
-        }
+        Joiner joiner = joinerMap.get(nullSafeKey(key));
 
         if (joiner == null) {
             return false;
@@ -1028,9 +1038,7 @@ public class Helper
             default:
             {
                 // added child and parent was waiting so remove joiner from map now
-                synchronized (joinerMap) {
-                    joinerMap.remove(key);
-                }
+                joinerMap.remove(nullSafeKey(key), joiner);
                 return true;
             }
         }
@@ -1042,11 +1050,7 @@ public class Helper
     }
     public boolean joinWait(Object key, int count, long millis)
     {
-        Joiner joiner;
-        synchronized (joinerMap)
-        {
-            joiner = joinerMap.get(key);
-        }
+        Joiner joiner = joinerMap.get(nullSafeKey(key));
 
         if (joiner == null || joiner.getMax() != count) {
             return false;
@@ -1056,9 +1060,7 @@ public class Helper
 
         if (joiner.joinChildren(current, millis)) {
             // successfully joined all child threads so remove joiner form map
-            synchronized (joinerMap) {
-                joinerMap.remove(key);
-            }
+            joinerMap.remove(nullSafeKey(key), joiner);
             return true;
         } else {
             // hmm, another thread must have done the join so leave it do the remove
@@ -1066,7 +1068,7 @@ public class Helper
         }
     }
 
-    private static HashMap<Object, Joiner> joinerMap = new HashMap<Object, Joiner>();
+    private static ConcurrentHashMap<Object, Joiner> joinerMap = new ConcurrentHashMap<Object, Joiner>();
 
     // counter support
     /**
@@ -1087,15 +1089,7 @@ public class Helper
      */
     public boolean createCounter(Object o, int value)
     {
-        synchronized (counterMap) {
-            Counter counter = counterMap.get(o);
-            if  (counter != null) {
-                return false;
-            } else {
-                counterMap.put(o, new Counter(value));
-                return true;
-            }
-        }
+        return (counterMap.putIfAbsent(nullSafeKey(o), new Counter(value)) == null);
     }
 
     /**
@@ -1105,15 +1099,7 @@ public class Helper
      */
     public boolean deleteCounter(Object o)
     {
-        synchronized (counterMap) {
-            Counter counter = counterMap.get(o);
-            if  (counter != null) {
-                counterMap.remove(o);
-                return true;
-            } else {
-                return false;
-            }
-        }
+        return (counterMap.remove(nullSafeKey(o)) != null);
     }
 
     /**
@@ -1136,14 +1122,7 @@ public class Helper
      */
     public int readCounter(Object o, boolean zero)
     {
-        synchronized (counterMap) {
-            Counter counter = counterMap.get(o);
-            if (counter == null) {
-                counter = new Counter();
-                counterMap.put(o, counter);
-            }
-            return counter.count(zero);
-        }
+        return getCounter(o).count(zero);
     }
 
     /**
@@ -1177,14 +1156,106 @@ public class Helper
      */
     public int incrementCounter(Object o, int amount)
     {
-        synchronized (counterMap) {
-            Counter counter = counterMap.get(o);
-            if (counter == null) {
-                counter = new Counter();
-                counterMap.put(o, counter);
+        return getCounter(o).increment(amount);
+    }
+
+    /**
+     * read the 64 bit value of the counter associated with given identifier, creating a new one with count
+     * zero if none exists
+     * @param o the identifier for the counter
+     * @return the value of the counter
+     */
+    public long readLongCounter(Object o)
+    {
+        return readLongCounter(o, false);
+    }
+
+    /**
+     * read and optionally reset to zero the 64 bit value of the counter associated with given identifier,
+     * creating a new one with count zero if none exists
+     * @param o the identifier for the counter
+     * @param zero if true then zero the counter
+     * @return the value of the counter
+     */
+    public long readLongCounter(Object o, boolean zero)
+    {
+        return getCounter(o).longCount(zero);
+    }
+
+    /**
+     * increment the value of the counter associated with given identifier, creating a new one with count zero
+     * if none exists
+     * @param o the identifier for the counter
+     * @return the 64 bit value of the counter after the increment
+     */
+    public long incrementLongCounter(Object o)
+    {
+        return incrementLongCounter(o, 1L);
+    }
+
+    /**
+     * increment the value of the counter associated with given identifier by the given amount, creating a new one
+     * with count zero if none exists
+     * @param o the identifier for the counter
+     * @param amount the amount to add to the counter
+     * @return the 64 bit value of the counter after the increment
+     */
+    public long incrementLongCounter(Object o, long amount)
+    {
+        return getCounter(o).increment(amount);
+    }
+
+    /**
+     * add one to the counter associated with given identifier, creating a new one with count zero if none
+     * exists. unlike incrementCounter this does not return the resulting value which allows updates from
+     * many threads to proceed without contending with each other.
+     * @param o the identifier for the counter
+     */
+    public void addCounter(Object o)
+    {
+        addCounter(o, 1L);
+    }
+
+    /**
+     * add an amount to the counter associated with given identifier, creating a new one with count zero if
+     * none exists. unlike incrementCounter this does not return the resulting value which allows updates
+     * from many threads to proceed without contending with each other.
+     * @param o the identifier for the counter
+     * @param amount the amount to add to the counter
+     */
+    public void addCounter(Object o, long amount)
+    {
+        getCounter(o).add(amount);
+    }
+
+    /**
+     * lookup the counter associated with given identifier, creating a new one with count zero if none exists
+     * @param o the identifier for the counter
+     * @return the counter
+     */
+    private static Counter getCounter(Object o)
+    {
+        Object key = nullSafeKey(o);
+        Counter counter = counterMap.get(key);
+        if (counter == null) {
+            counter = new Counter();
+            Counter existing = counterMap.putIfAbsent(key, counter);
+            if (existing != null) {
+                counter = existing;
             }
-            return counter.increment(amount);
         }
+        return counter;
+    }
+
+    /**
+     * translate an identifier to a key in one of the flag, counter, histogram, link map, waiter, rendezvous
+     * or joiner tables, none of which allows null keys
+     * @param o the identifier
+     * @return the key
+     */
+    private static Object nullSafeKey(Object o)
+    {
+        return (o == null ? NULL_KEY : o);
     }
 
     // timer support
@@ -1260,6 +1331,196 @@ public class Helper
         }
     }
 
+    // histogram support
+
+    /**
+     * create a latency histogram identified by the given object
+     * @param o an identifier used to refer to the histogram in future
+     * @return true if a new histogram was created and false if one already existed under the given identifier
+     */
+    public boolean createHistogram(Object o)
+    {
+        return (histogramMap.putIfAbsent(nullSafeKey(o), new Histogram()) == null);
+    }
+
+    /**
+     * delete a latency histogram identified by the given object
+     * @param o the identifier for the histogram
+     * @return true if a histogram was deleted and false if no histogram existed under the given identifier
+     */
+    public boolean deleteHistogram(Object o)
+    {
+        return (histogramMap.remove(nullSafeKey(o)) != null);
+    }
+
+    /**
+     * record a duration in the histogram associated with given identifier, creating a new one if none exists
+     * @param o the identifier for the histogram
+     * @param nanos the duration to record, normally measured in nanoseconds
+     */
+    public void recordLatency(Object o, long nanos)
+    {
+        getHistogram(o).record(nanos);
+    }
+
+    /**
+     * save the current value of System.nanoTime() for a subsequent call to endLatency made by the current
+     * thread with the same identifier. calls may be nested, for example when a traced method recurses.
+     * @param o the identifier for the histogram
+     */
+    public void startLatency(Object o)
+    {
+        HashMap<Object, LatencyStarts> starts = latencyStarts.get();
+        if (starts == null) {
+            starts = new HashMap<Object, LatencyStarts>();
+            latencyStarts.set(starts);
+        }
+        LatencyStarts entry = starts.get(o);
+        if (entry == null) {
+            entry = new LatencyStarts();
+            starts.put(o, entry);
+        }
+        entry.push(System.nanoTime());
+    }
+
+    /**
+     * record the time elapsed since the most recent unmatched call to startLatency made by the current thread
+     * with the same identifier in the histogram associated with that identifier, creating a new histogram
+     * if none exists
+     * @param o the identifier for the histogram
+     * @return the elapsed time in nanoseconds or -1 if there was no matching call to startLatency
+     */
+    public long endLatency(Object o)
+    {
+        long end = System.nanoTime();
+        HashMap<Object, LatencyStarts> starts = latencyStarts.get();
+        LatencyStarts entry = (starts == null ? null : starts.get(o));
+        if (entry == null) {
+            return -1;
+        }
+        long elapsed = end - entry.pop();
+        if (entry.isEmpty()) {
+            starts.remove(o);
+        }
+        getHistogram(o).record(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * read a percentile from the histogram associated with given identifier, creating a new one if none exists
+     * @param o the identifier for the histogram
+     * @param percentile a percentage in the range 0.0 to 100.0
+     * @return the recorded value below which the given percentage of recorded values fall or zero if no values
+     * have been recorded
+     */
+    public long readHistogramPercentile(Object o, double percentile)
+    {
+        return getHistogram(o).snapshot(false).getPercentile(percentile);
+    }
+
+    /**
+     * read the number of values recorded in the histogram associated with given identifier, creating a new one
+     * if none exists
+     * @param o the identifier for the histogram
+     * @return the number of values recorded
+     */
+    public long readHistogramCount(Object o)
+    {
+        return getHistogram(o).snapshot(false).getCount();
+    }
+
+    /**
+     * read a summary of the values recorded in the histogram associated with given identifier, creating a new
+     * one if none exists. the summary lists the count, minimum, mean, 50th, 90th, 99th and 99.9th percentiles
+     * and maximum.
+     * @param o the identifier for the histogram
+     * @return the summary
+     */
+    public String readHistogram(Object o)
+    {
+        return readHistogram(o, false);
+    }
+
+    /**
+     * read a summary of the values recorded in the histogram associated with given identifier, creating a new
+     * one if none exists, and optionally reset the histogram so that it starts recording a new interval
+     * @param o the identifier for the histogram
+     * @param reset if true then reset the histogram
+     * @return the summary
+     */
+    public String readHistogram(Object o, boolean reset)
+    {
+        return getHistogram(o).snapshot(reset).toString();
+    }
+
+    /**
+     * discard all values recorded in the histogram associated with given identifier, creating a new one if
+     * none exists
+     * @param o the identifier for the histogram
+     */
+    public void resetHistogram(Object o)
+    {
+        getHistogram(o).reset();
+    }
+
+    /**
+     * lookup the histogram associated with given identifier, creating a new one if none exists
+     * @param o the identifier for the histogram
+     * @return the histogram
+     */
+    private static Histogram getHistogram(Object o)
+    {
+        Object key = nullSafeKey(o);
+        Histogram histogram = histogramMap.get(key);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = histogramMap.putIfAbsent(key, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * a stack of start times saved by one thread for one histogram identifier. the stack is bounded so that
+     * starts which are never matched by an end, for example because the traced method exited via an exception,
+     * cannot accumulate without limit. once the bound is reached the oldest start is discarded.
+     */
+    private static class LatencyStarts
+    {
+        private final static int MAX_DEPTH = 64;
+
+        private long[] times = new long[4];
+
+        private int depth = 0;
+
+        void push(long time)
+        {
+            if (depth == times.length) {
+                if (depth < MAX_DEPTH) {
+                    long[] newTimes = new long[depth * 2];
+                    System.arraycopy(times, 0, newTimes, 0, depth);
+                    times = newTimes;
+                } else {
+                    System.arraycopy(times, 1, times, 0, depth - 1);
+                    depth--;
+                }
+            }
+            times[depth++] = time;
+        }
+
+        long pop()
+        {
+            return times[--depth];
+        }
+
+        boolean isEmpty()
+        {
+            return depth == 0;
+        }
+    }
+
     // link support
 
     /**
@@ -1269,13 +1530,7 @@ public class Helper
      */
     public boolean createLinkMap(Object mapName)
     {
-        synchronized(linkMaps) {
-            if (linkMaps.get(mapName) == null) {
-                linkMaps.put(mapName, new HashMap<Object, Object>());
-                return true;
-            }
-        }
-        return false;
+        return (linkMaps.putIfAbsent(nullSafeKey(mapName), newLinkMap()) == null);
     }
 
     /**
@@ -1285,15 +1540,7 @@ public class Helper
      */
     public boolean deleteLinkMap(Object mapName)
     {
-        synchronized(linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
-                linkMaps.remove(mapName);
-                return true;
-            } else {
-                return false;
-            }
-        }
+        return (linkMaps.remove(nullSafeKey(mapName)) != null);
     }
 
     /**
@@ -1307,14 +1554,7 @@ public class Helper
      */
     public Object link(Object mapName, Object name, Object value)
     {
-        synchronized(linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map == null) {
-                linkMaps.put(mapName, new HashMap<Object, Object>());
-                map = linkMaps.get(mapName);
-            }
-            return map.put(name, value);
-        }
+        return getLinkMap(mapName).put(name, value);
     }
 
     /**
@@ -1327,11 +1567,9 @@ public class Helper
      */
     public Object linked(Object mapName, Object name)
     {
-        synchronized(linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
-                return map.get(name);
-            }
+        LinkMap map = linkMaps.get(nullSafeKey(mapName));
+        if (map != null) {
+            return map.get(name);
         }
         return null;
     }
@@ -1346,15 +1584,41 @@ public class Helper
      */
     public Object unlink(Object mapName, Object name)
     {
-        synchronized(linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
-                return map.remove(name);
-            }
+        LinkMap map = linkMaps.get(nullSafeKey(mapName));
+        if (map != null) {
+            return map.remove(name);
         }
         return null;
     }
 
+    /**
+     * lookup the LinkMap identified by mapName, creating a new one if none exists
+     * @param mapName the identifier for the map
+     * @return the map
+     */
+    private static LinkMap getLinkMap(Object mapName)
+    {
+        Object key = nullSafeKey(mapName);
+        LinkMap map = linkMaps.get(key);
+        if (map == null) {
+            map = newLinkMap();
+            LinkMap existing = linkMaps.putIfAbsent(key, map);
+            if (existing != null) {
+                map = existing;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * create a LinkMap bounded and expired according to the current configuration
+     * @return the new map
+     */
+    private static LinkMap newLinkMap()
+    {
+        return new LinkMap(Transformer.getLinkMapSize(), Transformer.getLinkMapTTL());
+    }
+
     // default link support
 
     /**
@@ -1729,8 +1993,6 @@ public class Helper
                                boolean includeClass, boolean includePackage,
                                int startFrame, int frameCount)
     {
-        StackTraceElement[] stack = getStack();
-        int triggerIndex = triggerIndex(stack);
         if (startFrame < 0) {
             return false;
         }
@@ -1740,8 +2002,20 @@ public class Helper
         } else {
             lastIndex = startFrame + frameCount;
         }
+        if (this.stack == null && FrameWalker.isAvailable()) {
+            // walk only as far down the stack as we need to
+            Boolean result = FrameWalker.callerCheck(match, isRegExp, includeClass, includePackage,
+                    startFrame, lastIndex);
+            if (result != null) {
+                return result.booleanValue();
+            }
+        }
+        StackTraceElement[] stack = getStack();
+        int triggerIndex = triggerIndex(stack);
+        // an unlimited frame count must not overflow when offset by the trigger index
+        int limit = (lastIndex > Integer.MAX_VALUE - triggerIndex ? Integer.MAX_VALUE : triggerIndex + lastIndex);
         int matched = matchIndex(stack, match, isRegExp, includeClass, includePackage,
-                triggerIndex + startFrame, triggerIndex + lastIndex);
+                triggerIndex + startFrame, limit);
 
         return (matched >= 0);
     }
@@ -2734,7 +3008,15 @@ public class Helper
     public String formatStack(String prefix, int maxFrames)
     {
         StringBuffer buffer = new StringBuffer();
-        appendStack(buffer, prefix, maxFrames, Thread.currentThread(), getStack());
+        StackTraceElement[] frames = null;
+        if (maxFrames > 0 && this.stack == null && FrameWalker.isAvailable()) {
+            // capture one frame more than we print so we know whether to append an ellipsis
+            frames = FrameWalker.captureStack(maxFrames + 1);
+        }
+        if (frames == null) {
+            frames = getStack();
+        }
+        appendStack(buffer, prefix, maxFrames, Thread.currentThread(), frames);
         return buffer.toString();
     }
 
@@ -3011,22 +3293,10 @@ public class Helper
             buffer.append(regExp);
             buffer.append('\n');
         }
+        Pattern pattern = getPattern(regExp);
         for (; i < l; i++) {
-            String fullName;
-            if (includeClass) {
-                String className = stack[i].getClassName();
-                if (!includePackage) {
-                    int dotIdx = className.lastIndexOf('.');
-                    if (dotIdx >= 0) {
-                     className  = className.substring(dotIdx + 1);
-                    }
-                }
-                fullName = className + "." + stack[i].getMethodName();
-            } else {
-                fullName = stack[i].getMethodName();
-            }
-
-            if (fullName.matches(regExp)) {
+            if (frameMatches(stack[i].getClassName(), stack[i].getMethodName(), regExp, pattern,
+                    includeClass, includePackage)) {
                 printlnFrame(buffer, stack[i]);
             }
         }
@@ -3538,6 +3808,15 @@ public class Helper
         return stack;
     }
 
+    /**
+     * discard any state cached during a previous rule firing. this is called before a pooled
+     * helper instance is reused to fire the same rule again.
+     */
+    protected void resetCachedState()
+    {
+        stack = null;
+    }
+
     private static String RULE_CLASS_NAME = Rule.class.getCanonicalName();
     private static String RULE_EXECUTE_METHOD_NAME = "execute";
 
@@ -3604,37 +3883,92 @@ public class Helper
         if (limit > l) {
             limit = l;
         }
-        // find the trigger method frame above the rule engine entry point
-        // we should see two calls to rule.execute()
+        // compile the pattern once rather than once per frame
+        Pattern regExp = (isRegExp ? getPattern(pattern) : null);
         for (; i < limit; i++) {
-            String fullName;
-            if (includeClass) {
-                String className = stack[i].getClassName();
-                if (!includePackage) {
-                    int dotIdx = className.lastIndexOf('.');
-                    if (dotIdx >= 0) {
-                     className  = className.substring(dotIdx + 1);
-                    }
-                }
-                fullName = className + "." + stack[i].getMethodName();
-            } else {
-                fullName = stack[i].getMethodName();
+            if (frameMatches(stack[i].getClassName(), stack[i].getMethodName(), pattern, regExp,
+                    includeClass, includePackage)) {
+                return i;
             }
+        }
 
-            if (isRegExp) {
-                if (fullName.matches(pattern)) {
-                    return i;
-                }
-            } else {
-                if (fullName.equals(pattern)) {
-                    return i;
-                }
+        return -1;
+    }
+
+    /**
+     * test whether the name of a stack frame method matches pattern
+     * @param className the name of the class which owns the frame method
+     * @param methodName the name of the frame method
+     * @param pattern a pattern to be matched against the frame method name
+     * @param regExp the compiled form of pattern if it should be matched
+     * as a regular expression or null if it should be matched using a
+     * String equals comparison
+     * @param includeClass true if the method name should be qualified
+     * with the class name
+     * @param includePackage true if the class name should be qualified
+     * with the package name. ignored if includeClass is not also true.
+     * @return true if the name matches otherwise false
+     */
+    static boolean frameMatches(String className, String methodName, String pattern, Pattern regExp,
+                                boolean includeClass, boolean includePackage)
+    {
+        if (!includeClass) {
+            return (regExp != null ? regExp.matcher(methodName).matches() : methodName.equals(pattern));
+        }
+
+        if (!includePackage) {
+            int dotIdx = className.lastIndexOf('.');
+            if (dotIdx >= 0) {
+                className = className.substring(dotIdx + 1);
             }
         }
 
-        return -1;
+        if (regExp != null) {
+            return regExp.matcher(className + "." + methodName).matches();
+        }
+
+        // compare the pieces in place rather than building the qualified name
+        int classLength = className.length();
+        return (pattern.length() == classLength + 1 + methodName.length() &&
+                pattern.startsWith(className) &&
+                pattern.charAt(classLength) == '.' &&
+                pattern.endsWith(methodName));
+    }
+
+    /**
+     * return the compiled form of a regular expression, compiling it only if it is not already cached.
+     * rules normally pass the same pattern on every firing so this means a regular expression supplied
+     * to the caller and stack matching builtins is compiled once rather than once per frame per firing.
+     * @param regExp the regular expression
+     * @return the compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    static Pattern getPattern(String regExp)
+    {
+        Pattern pattern = patternCache.get(regExp);
+        if (pattern == null) {
+            pattern = Pattern.compile(regExp);
+            // rules which build patterns on the fly could fill the cache without limit so drop
+            // everything once it is full and let the patterns still in use be compiled again
+            if (patternCache.size() >= MAX_PATTERNS) {
+                patternCache.clear();
+            }
+            patternCache.put(regExp, pattern);
+        }
+        return pattern;
     }
 
+    /**
+     * the maximum number of compiled patterns retained by getPattern
+     */
+    private final static int MAX_PATTERNS = 256;
+
+    /**
+     * cache of compiled regular expressions. lookups do not lock so rules firing concurrently
+     * in different threads do not contend when they match against the stack
+     */
+    private final static ConcurrentHashMap<String, Pattern> patternCache = new ConcurrentHashMap<String, Pattern>();
+
     /**
      * print the details of stack frame followed by a newline to
      * buffer by calling printlnFrame(buffer, frame) then
@@ -3681,13 +4015,13 @@ public class Helper
      */
     private Waiter getWaiter(Object object, boolean createIfAbsent)
     {
-        Waiter waiter;
+        Waiter waiter = waitMap.get(nullSafeKey(object));
 
-        synchronized(waitMap) {
-            waiter = waitMap.get(object);
-            if (waiter == null && createIfAbsent) {
-                waiter = new Waiter(object);
-                waitMap.put(object, waiter);
+        if (waiter == null && createIfAbsent) {
+            waiter = new Waiter(object);
+            Waiter existing = waitMap.putIfAbsent(nullSafeKey(object), waiter);
+            if (existing != null) {
+                waiter = existing;
             }
         }
 
@@ -3703,7 +4037,7 @@ public class Helper
      */
     private Waiter removeWaiter(Object object)
     {
-        return waitMap.remove(object);
+        return waitMap.remove(nullSafeKey(object));
     }
 
     private static int nextFileIndex = 0;
@@ -3765,12 +4099,24 @@ public class Helper
     private static HashMap<Object, PrintStream> traceMap = new HashMap<Object, PrintStream>();
 
     /**
-     * a set used to identify settings for boolean flags associated
-     * with arbitrary objects. if an object is in the set then the
-     * flag associated with the object is set (true) otherwise it is
-     * clear (false).
+     * a hash map used to identify asynchronous trace streams from their identifying objects. entries
+     * are only added or removed while holding the lock on traceMap but may be read without it.
+     */
+    private static ConcurrentHashMap<Object, AsyncTraceStream> asyncTraceMap = new ConcurrentHashMap<Object, AsyncTraceStream>();
+
+    /**
+     * the streams permanently bound to the "out" and "err" identifiers
+     */
+    private final static PrintStream traceOut = System.out;
+    private final static PrintStream traceErr = System.err;
+
+    /**
+     * a concurrent map whose key set identifies settings for boolean
+     * flags associated with arbitrary objects. if an object is a key
+     * in the map then the flag associated with the object is set (true)
+     * otherwise it is clear (false).
      */
-    private static Set<Object> flagSet = new HashSet<Object>();
+    private static ConcurrentHashMap<Object, Boolean> flagSet = new ConcurrentHashMap<Object, Boolean>();
 
     /**
      * a hash map used to identify countdowns from their identifying
@@ -3782,19 +4128,24 @@ public class Helper
      * a hash map used to identify counters from their identifying
      * objects
      */
-    private static HashMap<Object, Counter> counterMap = new HashMap<Object, Counter>();
+    private static ConcurrentHashMap<Object, Counter> counterMap = new ConcurrentHashMap<Object, Counter>();
+
+    /**
+     * key used in the concurrent builtin state tables for the entry identified by null
+     */
+    private final static Object NULL_KEY = new Object();
 
     /**
      * a hash map used to identify waiters from their identifying
      * objects
      */
-    private static HashMap<Object, Waiter> waitMap = new HashMap<Object, Waiter>();
+    private static ConcurrentHashMap<Object, Waiter> waitMap = new ConcurrentHashMap<Object, Waiter>();
 
     /**
      * a hash map used to identify rendezvous from their identifying
      * objects
      */
-    private static HashMap<Object, Rendezvous> rendezvousMap = new HashMap<Object, Rendezvous>();
+    private static ConcurrentHashMap<Object, Rendezvous> rendezvousMap = new ConcurrentHashMap<Object, Rendezvous>();
 
     /**
      * a hash map used to identify timer from their identifying
@@ -3802,11 +4153,22 @@ public class Helper
      */
     private static HashMap<Object, Timer> timerMap = new HashMap<Object, Timer>();
 
+    /**
+     * a hash map used to identify histograms from their identifying
+     * objects
+     */
+    private static ConcurrentHashMap<Object, Histogram> histogramMap = new ConcurrentHashMap<Object, Histogram>();
+
+    /**
+     * per thread record of start times saved by startLatency and awaiting a matching call to endLatency
+     */
+    private static ThreadLocal<HashMap<Object, LatencyStarts>> latencyStarts = new ThreadLocal<HashMap<Object, LatencyStarts>>();
+
     /**
      * a hash map used to identify maps from their identifying
      * objects
      */
-    private static HashMap<Object, HashMap<Object, Object>> linkMaps = new HashMap<Object, HashMap<Object, Object>>();
+    private static ConcurrentHashMap<Object, LinkMap> linkMaps = new ConcurrentHashMap<Object, LinkMap>();
 
     // initialise the trace map so it contains the system output and
     // error keyed under "out" and "err"
@@ -3814,8 +4176,8 @@ public class Helper
     static {
         // set up out and err trace streams to System.out and System.err
         // traceClose ensures they cannot be closed and hence re-opened
-        traceMap.put("out", System.out);
-        traceMap.put("err", System.err);
+        traceMap.put("out", traceOut);
+        traceMap.put("err", traceErr);
         // default dbg, vrb and nzy trace streams to System.out
         // they can be closed and re-opened
         traceMap.put("dbg", System.out);
@@ -52,7 +52,7 @@ import java.util.Iterator;
  * of the execute method dreived from the rule parse tree. As in the default case, builtin calls
  * are translated to calls of methods defined by the helper class. 
  */
-public class InterpretedHelper extends Helper implements HelperAdapter
+public class InterpretedHelper extends Helper implements ReusableHelperAdapter
 {
     protected HashMap<String, Object> bindingMap;
 
@@ -123,6 +123,15 @@ public class InterpretedHelper extends Helper implements HelperAdapter
 
     }
 
+    /**
+     * clear the bindings map and any cached helper state so that this helper can be reused
+     */
+    public void reset()
+    {
+        bindingMap.clear();
+        resetCachedState();
+    }
+
     /**
      * basic implementation of rule execution
      *
@@ -136,7 +145,10 @@ public class InterpretedHelper extends Helper implements HelperAdapter
         // System.out.println(rule.getName() + " execute0");
         bind();
         if (test()) {
+            rule.conditionTrue();
             fire();
+        } else {
+            rule.conditionFalse();
         }
     }
 
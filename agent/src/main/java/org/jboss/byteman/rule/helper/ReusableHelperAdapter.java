@@ -0,0 +1,39 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+package org.jboss.byteman.rule.helper;
+
+/**
+ * An extension of HelperAdapter implemented by helper adapters which can be reused to fire their
+ * rule again. It is kept separate from HelperAdapter so that existing implementations of that
+ * interface do not have to provide the method. Helpers are only pooled if they implement this
+ * interface.
+ */
+public interface ReusableHelperAdapter extends HelperAdapter
+{
+    /**
+     * clear any state retained from a previous call to execute so that the adapter can be
+     * reused to fire the same rule again
+     */
+    public void reset();
+}
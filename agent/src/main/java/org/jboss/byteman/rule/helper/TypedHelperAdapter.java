@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2016 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * @authors Andrew Dinn
+ */
+package org.jboss.byteman.rule.helper;
+
+import org.jboss.byteman.rule.exception.ExecuteException;
+
+/**
+ * An extension of HelperAdapter implemented by compiled helper adapters. It allows the value of a
+ * rule's single, non-updated binding to be passed from the trigger method without boxing it or
+ * allocating an argument array. It is kept separate from HelperAdapter so that existing
+ * implementations of that interface do not have to provide these methods. A rule only calls them
+ * if its adapter implements this interface. Otherwise the value is boxed and passed to
+ * {@link HelperAdapter#execute(Object, Object[])}.
+ */
+public interface TypedHelperAdapter extends HelperAdapter
+{
+    /**
+     * execute the rule passing the value of its single, non-updated binding as an int. this is used
+     * when the binding has type boolean, byte, char, short or int.
+     * @param recipient target of trigger method or null if it is static
+     * @param value the binding value
+     * @throws ExecuteException if an error occurs executing the rule
+     */
+    public void execute(Object recipient, int value)
+            throws ExecuteException;
+    /**
+     * execute the rule passing the value of its single, non-updated binding as a long
+     * @param recipient target of trigger method or null if it is static
+     * @param value the binding value
+     * @throws ExecuteException if an error occurs executing the rule
+     */
+    public void execute(Object recipient, long value)
+            throws ExecuteException;
+    /**
+     * execute the rule passing the value of its single, non-updated binding as a float
+     * @param recipient target of trigger method or null if it is static
+     * @param value the binding value
+     * @throws ExecuteException if an error occurs executing the rule
+     */
+    public void execute(Object recipient, float value)
+            throws ExecuteException;
+    /**
+     * execute the rule passing the value of its single, non-updated binding as a double
+     * @param recipient target of trigger method or null if it is static
+     * @param value the binding value
+     * @throws ExecuteException if an error occurs executing the rule
+     */
+    public void execute(Object recipient, double value)
+            throws ExecuteException;
+    /**
+     * execute the rule passing the value of its single, non-updated binding as an object
+     * @param recipient target of trigger method or null if it is static
+     * @param value the binding value
+     * @throws ExecuteException if an error occurs executing the rule
+     */
+    public void execute(Object recipient, Object value)
+            throws ExecuteException;
+}
@@ -23,20 +23,44 @@
 */
 package org.jboss.byteman.synchronization;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
- * class used to associate a counter value with a given object
+ * class used to associate a counter value with a given object. the count is held as a 64 bit base
+ * value plus an optional set of striped cells. increments which need to know the resulting value
+ * update the base. adds which do not need a result try the base once and fall back to a cell
+ * selected by the calling thread when other threads are updating the base at the same time. the
+ * cells are padded so that each occupies its own cache line. the count is the sum of the base and
+ * the cells. the first increment folds the cells into the base and seals them so that from then on
+ * all updates go to the base and every increment returns an exact count.
  */
 public class Counter
 {
-    private int count;
+    private final AtomicLong base;
+
+    private final AtomicReference<AtomicLongArray> cells;
+
+    /**
+     * true once the cells have been folded into the base by an increment
+     */
+    private volatile boolean exact;
 
     public Counter()
     {
         this(0);
     }
+
     public Counter(int count)
     {
-        this.count = count;
+        this((long)count);
+    }
+
+    public Counter(long count)
+    {
+        this.base = new AtomicLong(count);
+        this.cells = new AtomicReference<AtomicLongArray>();
     }
 
     /*
@@ -47,11 +71,35 @@ public class Counter
         return count(false);
     }
 
-    public synchronized int count(boolean zero)
+    public int count(boolean zero)
+    {
+        return (int)longCount(zero);
+    }
+
+    /**
+     * return the current count, optionally resetting it to zero
+     * @param zero true if the count should be reset to zero
+     * @return the count
+     */
+    public long longCount(boolean zero)
     {
-        int result = count;
-        if (zero) {
-            count = 0;
+        long result = (zero ? base.getAndSet(0) : base.get());
+        AtomicLongArray array = cells.get();
+        if (array != null) {
+            for (int i = 0; i < array.length(); i += CELL_STRIDE) {
+                long value = array.get(i);
+                while (value != SEALED) {
+                    if (!zero) {
+                        result += value;
+                        break;
+                    }
+                    if (array.compareAndSet(i, value, 0)) {
+                        result += value;
+                        break;
+                    }
+                    value = array.get(i);
+                }
+            }
         }
         return result;
     }
@@ -61,15 +109,132 @@ public class Counter
         return increment(1);
     }
 
-    public synchronized int increment(int amount)
+    public int increment(int amount)
     {
-        count += amount;
+        return (int)increment((long)amount);
+    }
 
-        return count;
+    /**
+     * add an amount to the count and return the resulting count
+     * @param amount the amount to add
+     * @return the count after the addition
+     */
+    public long increment(long amount)
+    {
+        if (!exact) {
+            seal();
+        }
+        return base.addAndGet(amount);
+    }
+
+    /**
+     * fold the cells into the base and seal them so that subsequent adds update the base. this
+     * is done under the counter lock so that no increment can read the base while a value is
+     * being moved from a cell into the base.
+     */
+    private synchronized void seal()
+    {
+        if (exact) {
+            return;
+        }
+        AtomicLongArray array = cells.get();
+        if (array == null) {
+            // make sure an add which has yet to spill finds a sealed array
+            cells.compareAndSet(null, newSealedCells());
+            array = cells.get();
+        }
+        long folded = 0;
+        for (int i = 0; i < array.length(); i += CELL_STRIDE) {
+            long value = array.getAndSet(i, SEALED);
+            if (value != SEALED) {
+                folded += value;
+            }
+        }
+        base.addAndGet(folded);
+        exact = true;
     }
 
     public int decrement()
     {
         return increment(-1);
     }
+
+    /**
+     * add an amount to the count without computing the resulting count. this avoids contending
+     * with other threads updating the same counter.
+     * @param amount the amount to add
+     */
+    public void add(long amount)
+    {
+        if (exact) {
+            base.addAndGet(amount);
+            return;
+        }
+        AtomicLongArray array = cells.get();
+        if (array == null) {
+            long current = base.get();
+            if (base.compareAndSet(current, current + amount)) {
+                return;
+            }
+            // another thread got in first so spread updates across cells from now on
+            cells.compareAndSet(null, new AtomicLongArray(CELL_COUNT * CELL_STRIDE));
+            array = cells.get();
+        }
+        int idx = (cellIndex(Thread.currentThread()) & (CELL_COUNT - 1)) * CELL_STRIDE;
+        long value = array.get(idx);
+        // a sealed cell has been folded into the base by an increment
+        while (value != SEALED) {
+            if (array.compareAndSet(idx, value, value + amount)) {
+                return;
+            }
+            value = array.get(idx);
+        }
+        base.addAndGet(amount);
+    }
+
+    private static AtomicLongArray newSealedCells()
+    {
+        AtomicLongArray array = new AtomicLongArray(CELL_COUNT * CELL_STRIDE);
+        for (int i = 0; i < array.length(); i += CELL_STRIDE) {
+            array.set(i, SEALED);
+        }
+        return array;
+    }
+
+    private static int cellIndex(Thread thread)
+    {
+        // spread the thread id bits so that consecutively numbered threads use different cells
+        long id = thread.getId();
+        int h = (int)(id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+    /**
+     * the value stored in a cell once it has been folded into the base. a cell never legitimately
+     * holds this value because it would mean the count had overflowed.
+     */
+    private final static long SEALED = Long.MIN_VALUE;
+
+    /**
+     * the number of cells which is the number of processors rounded up to a power of two
+     */
+    private final static int CELL_COUNT = computeCellCount();
+
+    /**
+     * the spacing between cells in the array. 8 longs is 64 bytes which keeps each cell on its own cache line
+     */
+    private final static int CELL_STRIDE = 8;
+
+    private static int computeCellCount()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int count = 1;
+        while (count < processors) {
+            count <<= 1;
+        }
+        return count;
+    }
 }
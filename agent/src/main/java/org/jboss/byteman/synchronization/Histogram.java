@@ -0,0 +1,242 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2009-10 Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.synchronization;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * class used to accumulate a distribution of recorded values, typically latencies measured in nanoseconds.
+ * values are counted in a fixed set of log-linear buckets. values below 2^SUB_BUCKET_BITS are counted
+ * exactly. larger values are counted in buckets whose width doubles with each power of two, each power
+ * of two being split into 2^(SUB_BUCKET_BITS - 1) sub-buckets. this bounds the relative error of any
+ * reported value to 1 part in 2^(SUB_BUCKET_BITS - 1) while using the same fixed amount of memory
+ * whatever the range or number of values recorded. recording a value never blocks, it only updates
+ * the bucket count plus the running sum and, occasionally, the minimum or maximum.
+ */
+public class Histogram
+{
+    private final AtomicLongArray counts;
+
+    private final Counter sum;
+
+    private final AtomicLong min;
+
+    private final AtomicLong max;
+
+    public Histogram()
+    {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.sum = new Counter();
+        this.min = new AtomicLong(Long.MAX_VALUE);
+        this.max = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * record a value. negative values are recorded as zero.
+     * @param value the value to record
+     */
+    public void record(long value)
+    {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        sum.add(value);
+        long current = min.get();
+        while (value < current && !min.compareAndSet(current, value)) {
+            current = min.get();
+        }
+        current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * take a snapshot of the values recorded so far, optionally resetting the histogram so that
+     * subsequent values are recorded in a new interval. a value recorded concurrently with a reset
+     * is included in either the returned snapshot or the next interval, never both and never neither.
+     * @param reset true if the histogram should be reset
+     * @return the snapshot
+     */
+    public Snapshot snapshot(boolean reset)
+    {
+        long[] values = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = (reset ? counts.getAndSet(i, 0) : counts.get(i));
+            values[i] = count;
+            total += count;
+        }
+        long minValue = (reset ? min.getAndSet(Long.MAX_VALUE) : min.get());
+        long maxValue = (reset ? max.getAndSet(Long.MIN_VALUE) : max.get());
+        long sumValue = sum.longCount(reset);
+        return new Snapshot(values, total, minValue, maxValue, sumValue);
+    }
+
+    /**
+     * discard all recorded values
+     */
+    public void reset()
+    {
+        snapshot(true);
+    }
+
+    /**
+     * a view of the values recorded in a histogram at some point in time
+     */
+    public static class Snapshot
+    {
+        private final long[] counts;
+        private final long total;
+        private final long min;
+        private final long max;
+        private final long sum;
+
+        private Snapshot(long[] counts, long total, long min, long max, long sum)
+        {
+            this.counts = counts;
+            this.total = total;
+            this.min = (total == 0 ? 0 : min);
+            this.max = (total == 0 ? 0 : max);
+            this.sum = sum;
+        }
+
+        /**
+         * @return the number of values recorded
+         */
+        public long getCount()
+        {
+            return total;
+        }
+
+        /**
+         * @return the smallest value recorded or zero if no values were recorded
+         */
+        public long getMin()
+        {
+            return min;
+        }
+
+        /**
+         * @return the largest value recorded or zero if no values were recorded
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * @return the mean of the values recorded or zero if no values were recorded
+         */
+        public long getMean()
+        {
+            return (total == 0 ? 0 : sum / total);
+        }
+
+        /**
+         * return the value below which the given percentage of recorded values fall. the result is the
+         * highest value counted in the bucket holding the percentile, limited by the recorded maximum.
+         * @param percentile a percentage in the range 0.0 to 100.0
+         * @return the value at the percentile or zero if no values were recorded
+         */
+        public long getPercentile(double percentile)
+        {
+            if (total == 0) {
+                return 0;
+            }
+            if (percentile <= 0.0) {
+                return min;
+            }
+            if (percentile >= 100.0) {
+                return max;
+            }
+            // round to the nearest count so that floating point error does not push the target up by one
+            long target = (long)(((percentile / 100.0) * total) + 0.5);
+            if (target < 1) {
+                target = 1;
+            }
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    long value = highestValueInBucket(i);
+                    return (value < min ? min : (value > max ? max : value));
+                }
+            }
+            return max;
+        }
+
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder();
+            builder.append("count=").append(total);
+            builder.append(" min=").append(min);
+            builder.append(" mean=").append(getMean());
+            builder.append(" p50=").append(getPercentile(50.0));
+            builder.append(" p90=").append(getPercentile(90.0));
+            builder.append(" p99=").append(getPercentile(99.0));
+            builder.append(" p999=").append(getPercentile(99.9));
+            builder.append(" max=").append(max);
+            return builder.toString();
+        }
+    }
+
+    /**
+     * the number of bits of a value used to select a sub-bucket. 7 bits gives 64 sub-buckets per power of two
+     * and hence a relative error of at most 1 in 64.
+     */
+    private final static int SUB_BUCKET_BITS = 7;
+
+    private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final static int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+    /**
+     * the number of buckets needed to cover all non-negative long values
+     */
+    private final static int BUCKET_COUNT = SUB_BUCKET_HALF_COUNT * (64 - SUB_BUCKET_BITS + 1);
+
+    private static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        // shift so that the top SUB_BUCKET_BITS bits of the value select a sub-bucket in the upper half
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int)(value >>> shift);
+        return (shift * SUB_BUCKET_HALF_COUNT) + subBucket;
+    }
+
+    private static long highestValueInBucket(int index)
+    {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index / SUB_BUCKET_HALF_COUNT) - 1;
+        long subBucket = (index % SUB_BUCKET_HALF_COUNT) + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
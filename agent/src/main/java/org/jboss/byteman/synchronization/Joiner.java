@@ -27,9 +27,14 @@ import org.jboss.byteman.rule.exception.ExecuteException;
 
 import java.util.List;
 import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * class used by default helper to implement join dependencies between threads
+ * class used by default helper to implement join dependencies between threads. the parent waits for
+ * its children to enlist on a lock condition rather than an object monitor so that a virtual thread
+ * which waits does not pin its carrier thread.
  */
 public class Joiner
 {
@@ -67,12 +72,16 @@ public class Joiner
     private List<Thread> children;
     private int max;
     private Thread parent;
+    private final ReentrantLock lock;
+    private final Condition filled;
 
     public Joiner(int max)
     {
         this.max = max;
         this.children = new LinkedList<Thread>();
         this.parent =  null;
+        this.lock = new ReentrantLock();
+        this.filled = lock.newCondition();
     }
 
     public int getMax()
@@ -80,56 +89,64 @@ public class Joiner
         return max;
     }
 
-    public synchronized Status addChild(Thread thread)
+    public Status addChild(Thread thread)
     {
-        if (children.contains(thread)) {
-            return Status.DUPLICATE;
-        }
+        lock.lock();
+        try {
+            if (children.contains(thread)) {
+                return Status.DUPLICATE;
+            }
 
-        int size = children.size();
+            int size = children.size();
 
-        if (size == max) {
-            return Status.EXCESS;
-        }
+            if (size == max) {
+                return Status.EXCESS;
+            }
 
-        children.add(thread);
-        size++;
+            children.add(thread);
+            size++;
 
-        if (size == max) {
-            if (parent ==  null) {
-                return Status.FILLED;
-            } else {
-                notifyAll();
-                return Status.DONE;
+            if (size == max) {
+                if (parent ==  null) {
+                    return Status.FILLED;
+                } else {
+                    filled.signalAll();
+                    return Status.DONE;
+                }
             }
+            return Status.ADDED;
+        } finally {
+            lock.unlock();
         }
-        return Status.ADDED;
     }
 
     public boolean joinChildren(Thread thread, long millis)
     {
-        long target_time=System.currentTimeMillis() + millis;
-        synchronized (this) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        lock.lock();
+        try {
             if (parent != null) {
                 return false;
             }
             parent = thread;
             while (children.size() < max) {
-                try {
-                    if (millis <= 0) {
-                        this.wait();
-                    } else {
-                        long wait_time=target_time - System.currentTimeMillis();
-                        if(wait_time > 0) {
-                            this.wait(wait_time);
-                        } else {
-                            throw new ExecuteException("timeout occurred in joinWait");
+                if (millis <= 0) {
+                    filled.awaitUninterruptibly();
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining > 0) {
+                        try {
+                            filled.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            // do nothing
                         }
+                    } else {
+                        throw new ExecuteException("timeout occurred in joinWait");
                     }
-                } catch (InterruptedException e) {
-                    // do nothing
                 }
             }
+        } finally {
+            lock.unlock();
         }
 
         // since we are the parent and the waiting is over we don't need to stay synchronized
@@ -139,9 +156,10 @@ public class Joiner
                 if (millis <= 0) {
                     child.join();
                 } else {
-                    long wait_time=target_time - System.currentTimeMillis();
-                    if(wait_time > 0) {
-                        child.join(wait_time);
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining > 0) {
+                        // round up so that a wait of less than a millisecond does not mean wait forever
+                        child.join(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
                     } else {
                         throw new ExecuteException("timeout occurred in joinWait");
                     }
@@ -0,0 +1,201 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2009-10 Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.synchronization;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * class used to store links between names and values on behalf of the link builtins. an unbounded map
+ * with no expiry is backed by a concurrent hash map so links can be read and updated without locking.
+ * a map created with a maximum size or a time to live is backed by an access ordered linked hash map
+ * guarded by the map's own lock. when it is full linking a new name discards the least recently used link.
+ * links which have not been relinked within the time to live are treated as absent and are discarded
+ * when next looked up or when they become the least recently used entry.
+ */
+public class LinkMap
+{
+    /**
+     * the backing map used when the map is unbounded and links do not expire or null otherwise
+     */
+    private final ConcurrentHashMap<Object, Object> concurrentMap;
+
+    /**
+     * the backing map used when the map is bounded or links expire or null otherwise
+     */
+    private final BoundedMap boundedMap;
+
+    /**
+     * the time in milliseconds for which a link is retained or 0 if links never expire
+     */
+    private final long ttl;
+
+    public LinkMap()
+    {
+        this(0, 0);
+    }
+
+    /**
+     * create a link map
+     * @param maxSize the maximum number of links to retain or 0 if the map is unbounded
+     * @param ttl the time in milliseconds for which a link is retained or 0 if links never expire
+     */
+    public LinkMap(int maxSize, long ttl)
+    {
+        this.ttl = ttl;
+        if (maxSize <= 0 && ttl <= 0) {
+            concurrentMap = new ConcurrentHashMap<Object, Object>();
+            boundedMap = null;
+        } else {
+            concurrentMap = null;
+            boundedMap = new BoundedMap(maxSize, ttl);
+        }
+    }
+
+    /**
+     * link name to value
+     * @param name the name of the key
+     * @param value the value to be stored in the map
+     * @return the previous value stored under name, if any, or null
+     */
+    public Object put(Object name, Object value)
+    {
+        if (concurrentMap != null) {
+            Object key = nullSafe(name);
+            Object previous;
+            if (value == null) {
+                previous = concurrentMap.remove(key);
+            } else {
+                previous = concurrentMap.put(key, value);
+            }
+            return previous;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (boundedMap) {
+            Link previous = boundedMap.put(name, new Link(value, now));
+            return (previous == null || isExpired(previous, now) ? null : previous.value);
+        }
+    }
+
+    /**
+     * retrieve the value linked to name
+     * @param name the name of the key
+     * @return the value stored in the map under the given key or null if there is none
+     */
+    public Object get(Object name)
+    {
+        if (concurrentMap != null) {
+            return concurrentMap.get(nullSafe(name));
+        }
+        long now = System.currentTimeMillis();
+        synchronized (boundedMap) {
+            Link link = boundedMap.get(name);
+            if (link == null) {
+                return null;
+            }
+            if (isExpired(link, now)) {
+                boundedMap.remove(name);
+                return null;
+            }
+            return link.value;
+        }
+    }
+
+    /**
+     * remove any link from name
+     * @param name the name of the key
+     * @return the previous value stored under name, if any, or null
+     */
+    public Object remove(Object name)
+    {
+        if (concurrentMap != null) {
+            return concurrentMap.remove(nullSafe(name));
+        }
+        long now = System.currentTimeMillis();
+        synchronized (boundedMap) {
+            Link previous = boundedMap.remove(name);
+            return (previous == null || isExpired(previous, now) ? null : previous.value);
+        }
+    }
+
+    private boolean isExpired(Link link, long now)
+    {
+        return isExpired(link, now, ttl);
+    }
+
+    private static boolean isExpired(Link link, long now, long ttl)
+    {
+        return (ttl > 0 && now - link.linkTime >= ttl);
+    }
+
+    private static Object nullSafe(Object name)
+    {
+        return (name == null ? NULL_NAME : name);
+    }
+
+    /**
+     * key used in the concurrent map for the link identified by null
+     */
+    private final static Object NULL_NAME = new Object();
+
+    /**
+     * an access ordered map which discards its least recently used link when it grows beyond its
+     * maximum size or when that link has expired
+     */
+    private static class BoundedMap extends LinkedHashMap<Object, Link>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+        private final long ttl;
+
+        BoundedMap(int maxSize, long ttl)
+        {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.ttl = ttl;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Object, Link> eldest)
+        {
+            return (maxSize > 0 && size() > maxSize) || isExpired(eldest.getValue(), System.currentTimeMillis(), ttl);
+        }
+    }
+
+    /**
+     * a value stored in a bounded map along with the time it was linked
+     */
+    private static class Link
+    {
+        final Object value;
+        final long linkTime;
+
+        Link(Object value, long linkTime)
+        {
+            this.value = value;
+            this.linkTime = linkTime;
+        }
+    }
+}
@@ -25,8 +25,14 @@ package org.jboss.byteman.synchronization;
 
 import org.jboss.byteman.rule.exception.ExecuteException;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
- * class used to manage rule rendezvous operations
+ * class used to manage rule rendezvous operations. threads wait for the rendezvous to complete on a
+ * lock condition rather than an object monitor so that a virtual thread which waits does not pin its
+ * carrier thread.
  */
 public class Rendezvous
 {
@@ -42,16 +48,27 @@ public class Rendezvous
         this.needsRemove = false;
         this.isDeleted = false;
         this.counter = new Counter();
+        this.lock = new ReentrantLock();
+        this.completed = lock.newCondition();
     }
 
     /**
-     * enter this rendezvous. n.b. this must be called synchronized on the rendezvous object
-     * in question
+     * enter this rendezvous
      * @param millis how long to wait (wait forever if 0)
      * @return the index in arrival order from 0 to expected of the calling thread or -1 if
      * either the rendezvous has completed and is not restartable or the rendezvous has been deleted
      */
     public int rendezvous(long millis)
+    {
+        lock.lock();
+        try {
+            return doRendezvous(millis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int doRendezvous(long millis)
     {
         Counter currentCounter = counter;
 
@@ -66,22 +83,22 @@ public class Rendezvous
         int index = currentCounter.arrived++;
 
         if (currentCounter.arrived < expected) {
-            long target_time=System.currentTimeMillis() + millis;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
             // make sure we don't return before the rendezvous has actually happened
             while (currentCounter.arrived < expected) {
-                try {
-                    if(millis <= 0) {
-                        this.wait();
-                    } else {
-                        long wait_time=target_time - System.currentTimeMillis();
-                        if(wait_time > 0) {
-                            this.wait(wait_time);
-                        } else {
-                            throw new ExecuteException("timeout occurred in rendezvous");
+                if (millis <= 0) {
+                    completed.awaitUninterruptibly();
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining > 0) {
+                        try {
+                            completed.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            // do nothing
                         }
+                    } else {
+                        throw new ExecuteException("timeout occurred in rendezvous");
                     }
-                } catch (InterruptedException e) {
-                    // do nothing
                 }
 
                 // isPoisoned may have changed because a delete happened while we were waiting
@@ -102,7 +119,7 @@ public class Rendezvous
                 isDeleted = true;
                 needsRemove = true;
             }
-            this.notifyAll();
+            completed.signalAll();
         }
 
         return index;
@@ -111,25 +128,29 @@ public class Rendezvous
 
 
     /**
-     * delete this rendezvous causing any waiting threads to return -1 form the rendezvous call. n.b. this
-     * must be called synchronized on the rendezvous object in question
+     * delete this rendezvous causing any waiting threads to return -1 form the rendezvous call.
      * @return false if a delete has already been requested otherwise true
      */
     public boolean delete()
     {
-        if (isDeleted) {
-            return false;
-        }
-        isDeleted = true;
-        needsRemove = true;
+        lock.lock();
+        try {
+            if (isDeleted) {
+                return false;
+            }
+            isDeleted = true;
+            needsRemove = true;
 
-        // if any threads arrived then make sure they are *all* poisoned
-        if (counter.arrived > 0 && counter.arrived < expected) {
-            counter.isPoisoned = true;
-            this.notifyAll();
-        }
+            // if any threads arrived then make sure they are *all* poisoned
+            if (counter.arrived > 0 && counter.arrived < expected) {
+                counter.isPoisoned = true;
+                completed.signalAll();
+            }
 
-        return true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public int getExpected() {
@@ -158,7 +179,17 @@ public class Rendezvous
     /**
      * true if a non-restartable rendezvous has completed and has not been removed from the rendezvous map
      */
-    private boolean needsRemove;
+    private volatile boolean needsRemove;
+
+    /**
+     * lock guarding the rendezvous state
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * condition signalled when the expected number of threads has arrived or the rendezvous is deleted
+     */
+    private final Condition completed;
 
     /**
      * retrieve the number of threads waiting at the rendezvous or -1 if the rendezvous has
@@ -166,10 +197,15 @@ public class Rendezvous
      * @return  number of threads waiting or -1
      */
     public int getArrived() {
-        if (isDeleted) {
-            return -1;
+        lock.lock();
+        try {
+            if (isDeleted) {
+                return -1;
+            }
+            return counter.arrived;
+        } finally {
+            lock.unlock();
         }
-        return counter.arrived;
     }
 
     /**
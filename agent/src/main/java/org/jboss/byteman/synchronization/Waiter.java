@@ -25,8 +25,13 @@ package org.jboss.byteman.synchronization;
 
 import org.jboss.byteman.rule.exception.ExecuteException;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
- * class used to manage rule wait operations
+ * class used to manage rule wait operations. waiting and signalling threads block on a lock condition
+ * rather than an object monitor so that a virtual thread which waits does not pin its carrier thread.
  */
 public class Waiter
 {
@@ -41,35 +46,37 @@ public class Waiter
         this.signalled = signalled;
         this.killed = killed;
         this.waiting = false;
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
     }
 
     public void waitFor(long millisecs)
     {
-        long start = System.currentTimeMillis();
-        long waitForMillis = millisecs;
-        synchronized(this) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millisecs);
+        lock.lock();
+        try {
             waiting = true;
-            while (!signalled && waitForMillis >= 0){
-                try {
-                	if (waitForMillis == 0 && millisecs > 0) {
-                		break;
-                	}
-                	this.wait(waitForMillis);
-                } catch (InterruptedException e) {
-                    // ignore
+            // wake any signalling thread which is waiting for a waiter to arrive
+            changed.signalAll();
+            if (millisecs == 0) {
+                while (!signalled) {
+                    changed.awaitUninterruptibly();
                 }
-                
-                if (!signalled)
-                {
-                   waitForMillis = (millisecs == 0) ? 0 : millisecs + start - System.currentTimeMillis();
+            } else {
+                long remaining = deadline - System.nanoTime();
+                while (!signalled && remaining > 0) {
+                    try {
+                        changed.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                    remaining = deadline - System.nanoTime();
                 }
             }
-            if (signalled) {
-               // notify in case a signalling thread was waiting
-               this.notifyAll();
-            }
+        } finally {
+            lock.unlock();
         }
-        
+
         // if a signalKill was used then we have to throw an exception otherwise we just return
         if (killed) {
             throw new ExecuteException("Waiter.waitFor : killed thread waiting for " + waiterFor);
@@ -78,33 +85,48 @@ public class Waiter
 
     public boolean signalWake()
     {
-        boolean result;
-
-        synchronized (this) {
-            result = signalled;
+        lock.lock();
+        try {
+            boolean result = signalled;
             if (!signalled) {
                 signalled = true;
-                this.notifyAll();
+                changed.signalAll();
             }
+            return result;
+        } finally {
+            lock.unlock();
         }
-
-        return result;
     }
 
     public boolean signalThrow()
     {
-        boolean result;
-
-        synchronized (this) {
-            result = signalled;
+        lock.lock();
+        try {
+            boolean result = signalled;
             if (!signalled) {
                 signalled = true;
                 killed = true;
-                this.notifyAll();
+                changed.signalAll();
             }
+            return result;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        return result;
+    /**
+     * suspend the calling thread until some thread has called waitFor on this waiter
+     */
+    public void awaitWaiting()
+    {
+        lock.lock();
+        try {
+            while (!waiting) {
+                changed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     public boolean waiting()
@@ -122,19 +144,31 @@ public class Waiter
      * true if this waiter has been signalled by a call to signalKill
      */
 
-    private boolean signalled;
+    private volatile boolean signalled;
 
     /**
      * true if this waiter has been signalled by a call to signal or signalKill
      */
 
-    private boolean killed;
+    private volatile boolean killed;
 
     /**
      * true if waitFor has been called
      */
 
-    private boolean waiting;
+    private volatile boolean waiting;
+
+    /**
+     * lock guarding updates to the waiter state
+     */
+
+    private final ReentrantLock lock;
+
+    /**
+     * condition signalled when the waiter is signalled or when a thread starts waiting
+     */
+
+    private final Condition changed;
 
     /**
      * getter for signalled flag
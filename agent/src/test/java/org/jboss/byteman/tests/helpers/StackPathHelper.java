@@ -0,0 +1,107 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.helpers;
+
+import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.tests.Test;
+
+/**
+ * helper used to compare the results of the stack checking builtins when they walk the stack
+ * lazily using StackWalker and when they inspect the array returned by Thread.getStackTrace()
+ */
+public class StackPathHelper extends Default
+{
+    /**
+     * names of the methods expected at the top of the stack below the rule engine
+     */
+    private final static String[] FRAME_NAMES = { "triggerMethod", "level2", "level1", "test" };
+
+    private int stackCaptures = 0;
+
+    public StackPathHelper(Rule rule)
+    {
+        super(rule);
+    }
+
+    /**
+     * count calls which capture the whole stack. the lazy stack walk never makes this call
+     * and once it has been made every later stack check in the same firing uses its result
+     */
+    @Override
+    protected StackTraceElement[] getStack()
+    {
+        stackCaptures++;
+        return super.getStack();
+    }
+
+    /**
+     * check the stack using the lazy walk, where it is available, then capture the whole stack
+     * and check it again, logging the results and any difference between them
+     * @param test the test to log to
+     */
+    public void compareStackPaths(Test test)
+    {
+        String walked = describeStack();
+        boolean walkerUsed = (stackCaptures == 0);
+        getStack();
+        String captured = describeStack();
+        test.log("stack walker used " + walkerUsed);
+        // log the summary line but not the formatted frames since they include line numbers
+        test.log(captured.substring(0, captured.indexOf('\n')));
+        if (walked.equals(captured)) {
+            test.log("stack walk agrees with stack capture");
+        } else {
+            test.log("stack walk differs from stack capture :\n" + walked + "\n" + captured);
+        }
+    }
+
+    private String describeStack()
+    {
+        StringBuilder builder = new StringBuilder("callerEquals");
+        for (int frame = 0; frame < FRAME_NAMES.length + 1; frame++) {
+            String found = "?";
+            for (String name : FRAME_NAMES) {
+                if (callerEquals(name, frame, 1)) {
+                    found = name;
+                }
+            }
+            builder.append(' ').append(frame).append(':').append(found);
+        }
+        builder.append(" callerMatches");
+        builder.append(' ').append(callerMatches("level[12]", 1, 2));
+        builder.append(' ').append(callerMatches("test", 1, 2));
+        builder.append(' ').append(callerMatches("TestStackWalk\\.test", true, 1, 3));
+        builder.append(' ').append(callerMatches("junit\\.framework\\.TestCase\\.runTest", true, true, 1, 0));
+        String formatted = formatStack("", 3);
+        int lines = 0;
+        for (int i = 0; i < formatted.length(); i++) {
+            if (formatted.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        builder.append(" formatStack ").append(lines).append(" lines");
+        // the formatted frames must also be identical
+        return builder.append('\n').append(formatted).toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Test to ensure counter builtins compute the expected values when updated from many threads
+ */
+public class TestCounters extends Test
+{
+    public TestCounters()
+    {
+        super(TestCounters.class.getCanonicalName());
+    }
+
+    final static int THREAD_COUNT = 8;
+    final static int ITERATIONS = 10000;
+
+    public void test()
+    {
+        try {
+            log("calling TestCounters.triggerMethod1");
+            triggerMethod1();
+            log("called TestCounters.triggerMethod1");
+
+            Thread[] threads = new Thread[THREAD_COUNT];
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i] = new Thread() {
+                    public void run()
+                    {
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            triggerMethod2(j);
+                        }
+                    }
+                };
+            }
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i].start();
+            }
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i].join();
+            }
+
+            log("distinct c5 increments == " + increments.size());
+
+            log("calling TestCounters.triggerMethod3");
+            triggerMethod3();
+            log("called TestCounters.triggerMethod3");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerMethod1()
+    {
+        log("inside TestCounters.triggerMethod1");
+    }
+
+    public void triggerMethod2(int iteration)
+    {
+    }
+
+    /**
+     * the values returned by incrementCounter for a counter which is also updated using addCounter
+     */
+    private final ConcurrentHashMap<Long, Long> increments = new ConcurrentHashMap<Long, Long>();
+
+    public void recordIncrement(long value)
+    {
+        increments.put(value, value);
+    }
+
+    public void triggerMethod3()
+    {
+        log("inside TestCounters.triggerMethod3");
+    }
+
+    @Override
+    public String getExpected() {
+        long total = THREAD_COUNT * ITERATIONS;
+        logExpected("calling TestCounters.triggerMethod1");
+        logExpected("triggerMethod1 : createCounter(c1, 5) == true");
+        logExpected("triggerMethod1 : incrementCounter(c1) == 6");
+        logExpected("triggerMethod1 : incrementLongCounter(c1, 10) == 16");
+        logExpected("triggerMethod1 : readLongCounter(c1, true) == 16");
+        logExpected("triggerMethod1 : readCounter(c1) == 0");
+        logExpected("inside TestCounters.triggerMethod1");
+        logExpected("called TestCounters.triggerMethod1");
+        logExpected("distinct c5 increments == " + (total / 2));
+        logExpected("calling TestCounters.triggerMethod3");
+        logExpected("triggerMethod3 : readLongCounter(c2) == " + total);
+        logExpected("triggerMethod3 : readCounter(c3) == " + total);
+        logExpected("triggerMethod3 : readLongCounter(c4) == " + (2 * total));
+        logExpected("triggerMethod3 : readLongCounter(c5) == " + (total + total / 2));
+        logExpected("inside TestCounters.triggerMethod3");
+        logExpected("called TestCounters.triggerMethod3");
+
+        return super.getExpected();
+    }
+}
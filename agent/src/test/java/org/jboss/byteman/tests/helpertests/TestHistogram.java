@@ -0,0 +1,128 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure histogram builtins record values and report the expected percentiles
+ */
+public class TestHistogram extends Test
+{
+    public TestHistogram()
+    {
+        super(TestHistogram.class.getCanonicalName());
+    }
+
+    final static int VALUE_COUNT = 1000;
+    final static int THREAD_COUNT = 8;
+    final static int ITERATIONS = 1000;
+
+    public void test()
+    {
+        try {
+            for (int i = 1; i <= VALUE_COUNT; i++) {
+                triggerMethod1(i);
+            }
+
+            log("calling TestHistogram.triggerMethod2");
+            triggerMethod2();
+            log("called TestHistogram.triggerMethod2");
+
+            Thread[] threads = new Thread[THREAD_COUNT];
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i] = new Thread() {
+                    public void run()
+                    {
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            triggerMethod3(j);
+                        }
+                    }
+                };
+            }
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i].start();
+            }
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i].join();
+            }
+
+            log("calling TestHistogram.triggerMethod4");
+            triggerMethod4();
+            log("called TestHistogram.triggerMethod4");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerMethod1(long value)
+    {
+    }
+
+    public void triggerMethod2()
+    {
+        log("inside TestHistogram.triggerMethod2");
+    }
+
+    public int triggerMethod3(int depth)
+    {
+        // recurse a little so that nested start and end calls are exercised
+        if (depth % 4 == 0) {
+            return depth;
+        }
+        return triggerMethod3(depth - 1);
+    }
+
+    public void triggerMethod4()
+    {
+        log("inside TestHistogram.triggerMethod4");
+    }
+
+    @Override
+    public String getExpected() {
+        long calls = 0;
+        for (int j = 0; j < ITERATIONS; j++) {
+            calls += (j % 4) + 1;
+        }
+        calls *= THREAD_COUNT;
+        logExpected("calling TestHistogram.triggerMethod2");
+        logExpected("triggerMethod2 : readHistogram(h1) == count=1000 min=1 mean=500 p50=503 p90=903 p99=991 p999=999 max=1000");
+        logExpected("triggerMethod2 : readHistogramPercentile(h1, 100.0) == 1000");
+        logExpected("triggerMethod2 : readHistogramCount(h1) == 1000");
+        logExpected("triggerMethod2 : readHistogram(h1, true) == count=1000 min=1 mean=500 p50=503 p90=903 p99=991 p999=999 max=1000");
+        logExpected("triggerMethod2 : readHistogram(h1) == count=0 min=0 mean=0 p50=0 p90=0 p99=0 p999=0 max=0");
+        logExpected("triggerMethod2 : endLatency(h2) == -1");
+        logExpected("inside TestHistogram.triggerMethod2");
+        logExpected("called TestHistogram.triggerMethod2");
+        logExpected("calling TestHistogram.triggerMethod4");
+        logExpected("triggerMethod4 : readHistogramCount(h2) == " + calls);
+        logExpected("triggerMethod4 : deleteHistogram(h2) == true");
+        logExpected("inside TestHistogram.triggerMethod4");
+        logExpected("called TestHistogram.triggerMethod4");
+
+        return super.getExpected();
+    }
+}
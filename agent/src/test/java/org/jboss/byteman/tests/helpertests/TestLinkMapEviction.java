@@ -0,0 +1,73 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure a link map bounded by the link.map.size property discards the least recently used link
+ */
+public class TestLinkMapEviction extends Test
+{
+    public TestLinkMapEviction()
+    {
+        super(TestLinkMapEviction.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            log("calling TestLinkMapEviction.triggerMethod1");
+            triggerMethod1();
+            log("called TestLinkMapEviction.triggerMethod1");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerMethod1()
+    {
+        log("inside TestLinkMapEviction.triggerMethod1");
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestLinkMapEviction.triggerMethod1");
+        logExpected("triggerMethod1 : link(1, one) == null");
+        logExpected("triggerMethod1 : link(2, two) == null");
+        logExpected("triggerMethod1 : linked(1) == one");
+        logExpected("triggerMethod1 : link(3, three) == null");
+        logExpected("triggerMethod1 : linked(2) == null");
+        logExpected("triggerMethod1 : linked(1) == one");
+        logExpected("triggerMethod1 : linked(3) == three");
+        logExpected("triggerMethod1 : unlink(3) == three");
+        logExpected("triggerMethod1 : deleteLinkMap(map) == true");
+        logExpected("inside TestLinkMapEviction.triggerMethod1");
+        logExpected("called TestLinkMapEviction.triggerMethod1");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test to ensure caller matching gives the right answer when rules supply more distinct regular
+ * expressions than the compiled pattern cache retains and when threads match concurrently
+ */
+public class TestPatternCache extends Test
+{
+    public TestPatternCache()
+    {
+        super(TestPatternCache.class.getCanonicalName());
+    }
+
+    /**
+     * the number of distinct matching and non matching patterns each thread supplies. this is
+     * well above the number of compiled patterns the cache retains
+     */
+    private final static int PATTERN_COUNT = 600;
+
+    private final static int THREAD_COUNT = 2;
+
+    private final AtomicInteger matchCount = new AtomicInteger();
+
+    public void test()
+    {
+        Thread[] threads = new Thread[THREAD_COUNT];
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i] = new Thread("TestPatternCache " + i)
+            {
+                public void run()
+                {
+                    callTrigger();
+                }
+            };
+        }
+
+        try {
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i].start();
+            }
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                threads[i].join();
+            }
+        } catch (Exception e) {
+            log(e);
+        }
+
+        log("matched " + matchCount.get() + " patterns");
+
+        checkOutput(true);
+    }
+
+    public void callTrigger()
+    {
+        // run through the patterns twice so some lookups find a cached pattern and some
+        // find it was discarded when the cache was cleared
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < PATTERN_COUNT; i++) {
+                triggerMethod(".*\\.TestPatternCache\\.callTrigger(?:" + i + ")?");
+                triggerMethod(".*\\.TestPatternCache\\.callOther(?:" + i + ")?");
+            }
+        }
+    }
+
+    public void triggerMethod(String regExp)
+    {
+    }
+
+    public void matched()
+    {
+        matchCount.incrementAndGet();
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("matched " + (2 * PATTERN_COUNT * THREAD_COUNT) + " patterns");
+
+        return super.getExpected();
+    }
+}
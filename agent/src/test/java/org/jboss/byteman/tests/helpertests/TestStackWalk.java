@@ -0,0 +1,89 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure the stack checking builtins give the same answers whether they walk the stack
+ * lazily using StackWalker or inspect the array returned by Thread.getStackTrace(). the lazy
+ * walk is only used when the JVM provides StackWalker, i.e. on JDK 9 and later.
+ */
+public class TestStackWalk extends Test
+{
+    public TestStackWalk()
+    {
+        super(TestStackWalk.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            log("calling TestStackWalk.level1");
+            level1();
+            log("called TestStackWalk.level1");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void level1()
+    {
+        level2();
+    }
+
+    public void level2()
+    {
+        triggerMethod();
+    }
+
+    public void triggerMethod()
+    {
+        log("inside TestStackWalk.triggerMethod");
+    }
+
+    private static boolean hasStackWalker()
+    {
+        try {
+            Class.forName("java.lang.StackWalker");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestStackWalk.level1");
+        logExpected("stack walker used " + hasStackWalker());
+        logExpected("callerEquals 0:triggerMethod 1:level2 2:level1 3:test 4:? callerMatches true false true true formatStack 4 lines");
+        logExpected("stack walk agrees with stack capture");
+        logExpected("inside TestStackWalk.triggerMethod");
+        logExpected("called TestStackWalk.level1");
+
+        return super.getExpected();
+    }
+}
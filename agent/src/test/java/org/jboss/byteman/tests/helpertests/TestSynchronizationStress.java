@@ -0,0 +1,166 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure rendezvous, waitFor/signalWake and join builtins behave correctly when many threads
+ * use them at the same time
+ */
+public class TestSynchronizationStress extends Test
+{
+    public TestSynchronizationStress()
+    {
+        super(TestSynchronizationStress.class.getCanonicalName());
+    }
+
+    final static int RENDEZVOUS_THREADS = 256;
+    final static int RENDEZVOUS_ROUNDS = 20;
+    final static int WAIT_PAIRS = 100;
+    final static int WAIT_ROUNDS = 10;
+    final static int JOIN_CHILDREN = 16;
+
+    public void test()
+    {
+        try {
+            log("calling TestSynchronizationStress.triggerSetup");
+            triggerSetup();
+            log("called TestSynchronizationStress.triggerSetup");
+
+            Thread[] threads = new Thread[RENDEZVOUS_THREADS + 2 * WAIT_PAIRS];
+            int next = 0;
+            for (int i = 0; i < RENDEZVOUS_THREADS; i++) {
+                threads[next++] = new Thread() {
+                    public void run()
+                    {
+                        for (int j = 0; j < RENDEZVOUS_ROUNDS; j++) {
+                            triggerRendezvous();
+                        }
+                    }
+                };
+            }
+            for (int i = 0; i < WAIT_PAIRS; i++) {
+                final int pair = i;
+                threads[next++] = new Thread() {
+                    public void run()
+                    {
+                        for (int j = 0; j < WAIT_ROUNDS; j++) {
+                            triggerWait("wait" + pair + "." + j);
+                        }
+                    }
+                };
+                threads[next++] = new Thread() {
+                    public void run()
+                    {
+                        for (int j = 0; j < WAIT_ROUNDS; j++) {
+                            triggerSignal("wait" + pair + "." + j);
+                        }
+                    }
+                };
+            }
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].start();
+            }
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+            }
+
+            for (int i = 0; i < JOIN_CHILDREN; i++) {
+                new Thread() {
+                    public void run()
+                    {
+                        triggerEnlist();
+                    }
+                }.start();
+            }
+
+            log("calling TestSynchronizationStress.triggerJoin");
+            triggerJoin();
+            log("called TestSynchronizationStress.triggerJoin");
+
+            log("calling TestSynchronizationStress.triggerCheck");
+            triggerCheck();
+            log("called TestSynchronizationStress.triggerCheck");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerSetup()
+    {
+        log("inside TestSynchronizationStress.triggerSetup");
+    }
+
+    public void triggerRendezvous()
+    {
+    }
+
+    public void triggerWait(String key)
+    {
+    }
+
+    public void triggerSignal(String key)
+    {
+    }
+
+    public void triggerEnlist()
+    {
+    }
+
+    public void triggerJoin()
+    {
+        log("inside TestSynchronizationStress.triggerJoin");
+    }
+
+    public void triggerCheck()
+    {
+        log("inside TestSynchronizationStress.triggerCheck");
+    }
+
+    @Override
+    public String getExpected() {
+        long indexSum = RENDEZVOUS_ROUNDS * ((long)RENDEZVOUS_THREADS * (RENDEZVOUS_THREADS - 1) / 2);
+        logExpected("calling TestSynchronizationStress.triggerSetup");
+        logExpected("triggerSetup : createRendezvous(stress) == true");
+        logExpected("triggerSetup : createJoin(join) == true");
+        logExpected("inside TestSynchronizationStress.triggerSetup");
+        logExpected("called TestSynchronizationStress.triggerSetup");
+        logExpected("calling TestSynchronizationStress.triggerJoin");
+        logExpected("triggerJoin : joinWait(join) == true");
+        logExpected("inside TestSynchronizationStress.triggerJoin");
+        logExpected("called TestSynchronizationStress.triggerJoin");
+        logExpected("calling TestSynchronizationStress.triggerCheck");
+        logExpected("triggerCheck : readLongCounter(rendezvousIndexSum) == " + indexSum);
+        logExpected("triggerCheck : readLongCounter(woken) == " + (WAIT_PAIRS * WAIT_ROUNDS));
+        logExpected("triggerCheck : readLongCounter(signalled) == " + (WAIT_PAIRS * WAIT_ROUNDS));
+        logExpected("triggerCheck : readLongCounter(enlisted) == " + JOIN_CHILDREN);
+        logExpected("inside TestSynchronizationStress.triggerCheck");
+        logExpected("called TestSynchronizationStress.triggerCheck");
+
+        return super.getExpected();
+    }
+}
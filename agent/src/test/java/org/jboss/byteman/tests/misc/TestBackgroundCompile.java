@@ -0,0 +1,122 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.agent.RulePreparer;
+import org.jboss.byteman.tests.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Test to ensure a rule compiled in the background is interpreted until its compiled helper is ready
+ * and then executed using the compiled helper. the background compile is held back until after the
+ * first firing by keeping every rule preparer thread busy.
+ */
+public class TestBackgroundCompile extends Test
+{
+    public TestBackgroundCompile()
+    {
+        super(TestBackgroundCompile.class.getCanonicalName());
+    }
+
+    private boolean compiled = false;
+
+    private int firings = 0;
+
+    public void test()
+    {
+        try {
+            // occupy all the rule preparer threads so the compile task queues behind them
+            int threadCount = Runtime.getRuntime().availableProcessors();
+            final CountDownLatch started = new CountDownLatch(threadCount);
+            final CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < threadCount; i++) {
+                RulePreparer.background(new Runnable() {
+                    public void run()
+                    {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            // just let the preparer continue
+                        }
+                    }
+                });
+            }
+            started.await();
+
+            log("calling TestBackgroundCompile.triggerMethod");
+            try {
+                triggerMethod(0);
+            } finally {
+                release.countDown();
+            }
+            if (firings == 1 && !compiled) {
+                log("first firing interpreted");
+            }
+            // give the background compiler a while to install the compiled helper
+            for (int i = 1; i < 500 && !compiled; i++) {
+                Thread.sleep(10);
+                triggerMethod(i);
+            }
+            if (compiled) {
+                log("later firing compiled");
+            }
+            log("called TestBackgroundCompile.triggerMethod");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerMethod(int i)
+    {
+    }
+
+    /**
+     * called from the rule action to record whether the rule is executing via a compiled helper
+     */
+    public void fired()
+    {
+        firings++;
+        for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+            if (element.getClassName().contains("_HelperAdapter_Compiled_")) {
+                compiled = true;
+                return;
+            }
+        }
+        compiled = false;
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestBackgroundCompile.triggerMethod");
+        logExpected("first firing interpreted");
+        logExpected("later firing compiled");
+        logExpected("called TestBackgroundCompile.triggerMethod");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure rules with simple conditions fire only when the condition holds
+ */
+public class TestInlineConditions extends Test
+{
+    public TestInlineConditions()
+    {
+        super(TestInlineConditions.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            triggerMethod1(1000, 6L);
+            triggerMethod1(1001, 5L);
+            triggerMethod1(1001, 6L);
+
+            triggerMethod2(3.0F, 1.0D);
+            triggerMethod2(1.0F, 1.0D);
+            triggerMethod2(3.0F, -1.0D);
+            triggerMethod2(Float.NaN, 1.0D);
+
+            triggerMethod3(false, (short)65);
+            triggerMethod3(true, (short)66);
+            triggerMethod3(true, (short)65);
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerMethod1(int i, long l)
+    {
+        log("inside TestInlineConditions.triggerMethod1(" + i + ", " + l + ")");
+    }
+
+    public void triggerMethod2(float f, double d)
+    {
+        log("inside TestInlineConditions.triggerMethod2(" + f + ", " + d + ")");
+    }
+
+    public void triggerMethod3(boolean b, short s)
+    {
+        log("inside TestInlineConditions.triggerMethod3(" + b + ", " + s + ")");
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("inside TestInlineConditions.triggerMethod1(1000, 6)");
+        logExpected("inside TestInlineConditions.triggerMethod1(1001, 5)");
+        logExpected("triggerMethod1 : triggered with 1001, 6");
+        logExpected("inside TestInlineConditions.triggerMethod1(1001, 6)");
+
+        logExpected("inside TestInlineConditions.triggerMethod2(3.0, 1.0)");
+        logExpected("triggerMethod2 : triggered with 1.0, 1.0");
+        logExpected("inside TestInlineConditions.triggerMethod2(1.0, 1.0)");
+        logExpected("triggerMethod2 : triggered with 3.0, -1.0");
+        logExpected("inside TestInlineConditions.triggerMethod2(3.0, -1.0)");
+        logExpected("inside TestInlineConditions.triggerMethod2(NaN, 1.0)");
+
+        logExpected("inside TestInlineConditions.triggerMethod3(false, 65)");
+        logExpected("inside TestInlineConditions.triggerMethod3(true, 66)");
+        logExpected("triggerMethod3 : triggered with true, 65");
+        logExpected("inside TestInlineConditions.triggerMethod3(true, 65)");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.agent.RetransformPlanner;
+import org.jboss.byteman.agent.RuleScript;
+import org.jboss.byteman.agent.ScriptRepository;
+import org.jboss.byteman.tests.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Test to ensure the classes selected for retransformation by looking up candidates in the retransform
+ * planner and matching them against the uploaded rules are the same as those selected by matching every
+ * loaded class
+ */
+public class TestRetransformPlanner extends Test
+{
+    public TestRetransformPlanner()
+    {
+        super(TestRetransformPlanner.class.getCanonicalName());
+    }
+
+    private final static String PREFIX = TestRetransformPlanner.class.getName() + "$";
+
+    private final static Class<?>[] LOADED = new Class<?>[] {
+            Object.class, String.class, Thread.class, Runnable.class, ArrayList.class, HashMap.class, List.class,
+            int[].class, Integer.TYPE,
+            PlannerI1.class, PlannerI2.class, PlannerA.class, PlannerB.class, PlannerC.class, PlannerD.class,
+            TestRetransformPlanner.class
+    };
+
+    public void test()
+    {
+        try {
+            compare("CLASS", "CLASS " + PREFIX + "PlannerB");
+            compare("CLASS ^", "CLASS ^" + PREFIX + "PlannerA");
+            compare("INTERFACE", "INTERFACE " + PREFIX + "PlannerI1");
+            compare("INTERFACE ^", "INTERFACE ^" + PREFIX + "PlannerI2");
+            compare("package-less CLASS", "CLASS TestRetransformPlanner$PlannerC");
+            compare("package-less INTERFACE ^", "INTERFACE ^Runnable");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    /**
+     * log the classes matched by a rule with the given target clause using the planner and using a
+     * full scan, noting whether they differ
+     * @param label text identifying the kind of target
+     * @param targetClause the CLASS or INTERFACE clause of the rule
+     * @throws Exception if the rule cannot be processed
+     */
+    private void compare(String label, String targetClause) throws Exception
+    {
+        ScriptRepository repository = new ScriptRepository(false);
+        List<RuleScript> ruleScripts = repository.processScripts(getRuleText(targetClause), "planner");
+        for (RuleScript ruleScript : ruleScripts) {
+            repository.addScript(ruleScript);
+        }
+
+        Set<String> scanned = new TreeSet<String>();
+        for (Class<?> clazz : LOADED) {
+            if (!clazz.isArray() && !clazz.isPrimitive() && repository.matchClass(clazz)) {
+                scanned.add(simpleName(clazz));
+            }
+        }
+
+        RetransformPlanner planner = new RetransformPlanner(LOADED);
+        Set<String> planned = new TreeSet<String>();
+        for (Class<?> clazz : planner.candidatesFor(ruleScripts)) {
+            if (repository.matchClass(clazz)) {
+                planned.add(simpleName(clazz));
+            }
+        }
+
+        if (planned.equals(scanned)) {
+            log(label + " matched " + planned);
+        } else {
+            log(label + " planner matched " + planned + " but scan matched " + scanned);
+        }
+    }
+
+    private static String simpleName(Class<?> clazz)
+    {
+        String name = clazz.getName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private static String getRuleText(String targetClause)
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("RULE planner rule\n");
+        buffer.append(targetClause + "\n");
+        buffer.append("METHOD run\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO traceln(\"planner\")\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public static interface PlannerI1
+    {
+    }
+
+    public static interface PlannerI2 extends PlannerI1
+    {
+    }
+
+    public static class PlannerA implements PlannerI2
+    {
+        public void run()
+        {
+        }
+    }
+
+    public static class PlannerB extends PlannerA
+    {
+        public void run()
+        {
+        }
+    }
+
+    public static class PlannerC
+    {
+        public void run()
+        {
+        }
+    }
+
+    // does not declare the target method so it is never matched
+    public static class PlannerD extends PlannerB
+    {
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("CLASS matched [TestRetransformPlanner$PlannerB]");
+        logExpected("CLASS ^ matched [TestRetransformPlanner$PlannerA, TestRetransformPlanner$PlannerB]");
+        logExpected("INTERFACE matched [TestRetransformPlanner$PlannerA]");
+        logExpected("INTERFACE ^ matched [TestRetransformPlanner$PlannerA, TestRetransformPlanner$PlannerB]");
+        logExpected("package-less CLASS matched [TestRetransformPlanner$PlannerC]");
+        logExpected("package-less INTERFACE ^ matched [Thread]");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure SAMPLE and RATE clauses limit the number of triggers which execute a rule
+ */
+public class TestSampling extends Test
+{
+    public TestSampling()
+    {
+        super(TestSampling.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            log("calling TestSampling.triggerMethod1");
+            for (int i = 0; i < 10000; i++) {
+                triggerMethod1(i);
+            }
+            log("called TestSampling.triggerMethod1");
+            checkMethod1();
+            log("calling TestSampling.triggerMethod2");
+            for (int i = 0; i < 10000; i++) {
+                triggerMethod2(i);
+            }
+            log("called TestSampling.triggerMethod2");
+            checkMethod2();
+            log("calling TestSampling.triggerMethod3");
+            for (int i = 0; i < 100; i++) {
+                triggerMethod3(i);
+            }
+            log("called TestSampling.triggerMethod3");
+            checkMethod3();
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerMethod1(int i)
+    {
+    }
+
+    public void triggerMethod2(int i)
+    {
+    }
+
+    public void triggerMethod3(int i)
+    {
+    }
+
+    public void checkMethod1()
+    {
+    }
+
+    public void checkMethod2()
+    {
+    }
+
+    public void checkMethod3()
+    {
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestSampling.triggerMethod1");
+        logExpected("called TestSampling.triggerMethod1");
+        logExpected("checkMethod1 : sampled count in range");
+        logExpected("calling TestSampling.triggerMethod2");
+        logExpected("called TestSampling.triggerMethod2");
+        logExpected("checkMethod2 : rate limited count in range");
+        logExpected("calling TestSampling.triggerMethod3");
+        logExpected("called TestSampling.triggerMethod3");
+        logExpected("checkMethod3 : unsampled count 100");
+
+        return super.getExpected();
+    }
+}
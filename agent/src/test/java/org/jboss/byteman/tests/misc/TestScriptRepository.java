@@ -0,0 +1,202 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.agent.RuleScript;
+import org.jboss.byteman.agent.ScriptRepository;
+import org.jboss.byteman.tests.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test to ensure the script repository indexes are updated correctly when a new snapshot is
+ * published and that lists obtained from an earlier snapshot are not modified by later updates
+ */
+public class TestScriptRepository extends Test
+{
+    public TestScriptRepository()
+    {
+        super(TestScriptRepository.class.getCanonicalName());
+    }
+
+    private final static String TARGET = "RepositoryTarget";
+
+    public void test()
+    {
+        try {
+            duplicateInBatch();
+            classRedefinedAsInterface();
+            overrideCount();
+            snapshotIsolation();
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    /**
+     * add two rules with the same name in one batch. only the second may remain indexed and the
+     * first must be returned as the previous script and deactivated
+     */
+    private void duplicateInBatch() throws Exception
+    {
+        ScriptRepository repository = new ScriptRepository(false);
+        RuleScript first = parse(repository, "dup", "CLASS " + TARGET);
+        RuleScript second = parse(repository, "dup", "CLASS " + TARGET);
+        List<RuleScript> batch = new ArrayList<RuleScript>();
+        batch.add(first);
+        batch.add(second);
+        long generation = repository.getGeneration();
+        List<RuleScript> previous = repository.addScripts(batch);
+        log("duplicate batch previous " + describe(previous.get(0), first, second) + " " + describe(previous.get(1), first, second));
+        log("duplicate batch first deleted " + first.isDeleted() + " second deleted " + second.isDeleted());
+        log("duplicate batch named " + describe(repository.scriptForRuleName("dup"), first, second));
+        log("duplicate batch indexed " + count(repository.scriptsForClassName(TARGET)) + " " + describe(repository.scriptsForClassName(TARGET).get(0), first, second));
+        log("duplicate batch generation advanced by " + (repository.getGeneration() - generation));
+    }
+
+    /**
+     * replace a class rule with an interface rule of the same name. the rule must move from the
+     * class index to the interface index
+     */
+    private void classRedefinedAsInterface() throws Exception
+    {
+        ScriptRepository repository = new ScriptRepository(false);
+        RuleScript classRule = parse(repository, "redefine", "CLASS " + TARGET);
+        repository.addScript(classRule);
+        log("class rule class index " + count(repository.scriptsForClassName(TARGET)) +
+                " interface index " + count(repository.scriptsForInterfaceName(TARGET)) +
+                " check interfaces " + repository.checkInterfaces());
+        RuleScript interfaceRule = parse(repository, "redefine", "INTERFACE " + TARGET);
+        RuleScript previous = repository.addScript(interfaceRule);
+        log("interface rule class index " + count(repository.scriptsForClassName(TARGET)) +
+                " interface index " + count(repository.scriptsForInterfaceName(TARGET)) +
+                " check interfaces " + repository.checkInterfaces() +
+                " replaced class rule " + (previous == classRule));
+        log("interface rule target names class " + repository.isTargetName(TARGET, false) +
+                " interface " + repository.isTargetName(TARGET, true));
+    }
+
+    /**
+     * add, redefine and remove overriding rules checking whether the repository still reports
+     * that override injection can be skipped
+     */
+    private void overrideCount() throws Exception
+    {
+        ScriptRepository repository = new ScriptRepository(false);
+        long generation = repository.getGeneration();
+        log("override initial skip " + repository.skipOverrideRules());
+        repository.addScript(parse(repository, "override", "CLASS ^" + TARGET));
+        log("override added skip " + repository.skipOverrideRules());
+        repository.addScript(parse(repository, "override", "CLASS " + TARGET));
+        log("override redefined as plain skip " + repository.skipOverrideRules());
+        List<RuleScript> batch = new ArrayList<RuleScript>();
+        batch.add(parse(repository, "override", "INTERFACE ^" + TARGET));
+        batch.add(parse(repository, "override", "CLASS ^" + TARGET));
+        repository.addScripts(batch);
+        log("override redefined twice in batch skip " + repository.skipOverrideRules());
+        RuleScript removed = repository.removeScript("override");
+        log("override removed skip " + repository.skipOverrideRules() + " removed override " + removed.isOverride());
+        log("override removed again " + repository.removeScript(removed));
+        log("override generation advanced by " + (repository.getGeneration() - generation));
+    }
+
+    /**
+     * lists returned by an earlier snapshot must not change when later scripts are added or removed
+     */
+    private void snapshotIsolation() throws Exception
+    {
+        ScriptRepository repository = new ScriptRepository(false);
+        RuleScript one = parse(repository, "one", "CLASS " + TARGET);
+        RuleScript two = parse(repository, "two", "CLASS " + TARGET);
+        repository.addScript(one);
+        List<RuleScript> before = repository.scriptsForClassName(TARGET);
+        repository.addScript(two);
+        List<RuleScript> after = repository.scriptsForClassName(TARGET);
+        repository.removeScript(one);
+        List<RuleScript> removed = repository.scriptsForClassName(TARGET);
+        log("snapshot lists " + count(before) + " " + count(after) + " " + count(removed));
+        repository.removeScript(two);
+        log("snapshot emptied " + count(repository.scriptsForClassName(TARGET)) +
+                " target name " + repository.isTargetName(TARGET, false) +
+                " generation " + repository.getGeneration());
+    }
+
+    private RuleScript parse(ScriptRepository repository, String name, String targetClause) throws Exception
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("RULE " + name + "\n");
+        buffer.append(targetClause + "\n");
+        buffer.append("METHOD run\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO traceln(\"repository\")\n");
+        buffer.append("ENDRULE\n");
+
+        return repository.processScripts(buffer.toString(), "repository").get(0);
+    }
+
+    private static int count(List<RuleScript> scripts)
+    {
+        return (scripts == null ? 0 : scripts.size());
+    }
+
+    private static String describe(RuleScript script, RuleScript first, RuleScript second)
+    {
+        if (script == null) {
+            return "none";
+        } else if (script == first) {
+            return "first";
+        } else if (script == second) {
+            return "second";
+        }
+        return "other";
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("duplicate batch previous none first");
+        logExpected("duplicate batch first deleted true second deleted false");
+        logExpected("duplicate batch named second");
+        logExpected("duplicate batch indexed 1 second");
+        logExpected("duplicate batch generation advanced by 1");
+        logExpected("class rule class index 1 interface index 0 check interfaces false");
+        logExpected("interface rule class index 0 interface index 1 check interfaces true replaced class rule true");
+        logExpected("interface rule target names class false interface true");
+        logExpected("override initial skip true");
+        logExpected("override added skip false");
+        logExpected("override redefined as plain skip true");
+        logExpected("override redefined twice in batch skip false");
+        logExpected("override removed skip true removed override true");
+        logExpected("override removed again null");
+        logExpected("override generation advanced by 4");
+        logExpected("snapshot lists 1 2 1");
+        logExpected("snapshot emptied 0 target name false generation 4");
+
+        return super.getExpected();
+    }
+}
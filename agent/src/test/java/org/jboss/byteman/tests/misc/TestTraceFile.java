@@ -0,0 +1,101 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+/**
+ * Test to ensure output written to a trace file is complete once the trace stream has been closed
+ */
+public class TestTraceFile extends Test
+{
+    public TestTraceFile()
+    {
+        super(TestTraceFile.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        File file = new File("TestTraceFile.log");
+
+        try {
+            if (file.exists()) {
+                file.delete();
+            }
+            openTrace(file.getAbsolutePath());
+            for (int i = 0; i < 3; i++) {
+                traceLine(i);
+            }
+            closeTrace();
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log("read " + line);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            log(e);
+        } finally {
+            file.delete();
+        }
+
+        checkOutput(true);
+    }
+
+    public void openTrace(String fileName)
+    {
+        log("inside TestTraceFile.openTrace");
+    }
+
+    public void traceLine(int i)
+    {
+        log("inside TestTraceFile.traceLine(" + i + ")");
+    }
+
+    public void closeTrace()
+    {
+        log("inside TestTraceFile.closeTrace");
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("inside TestTraceFile.openTrace");
+        logExpected("inside TestTraceFile.traceLine(0)");
+        logExpected("inside TestTraceFile.traceLine(1)");
+        logExpected("inside TestTraceFile.traceLine(2)");
+        logExpected("inside TestTraceFile.closeTrace");
+        logExpected("read [0] trace line 0");
+        logExpected("read [1] trace line 1");
+        logExpected("read [2] trace line 2");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.tests.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Test to ensure that disabling triggering, either from rule code using setTriggering or from
+ * application code using Rule.disableTriggers, only affects the current thread
+ */
+public class TestTriggerState extends Test
+{
+    public TestTriggerState()
+    {
+        super(TestTriggerState.class.getCanonicalName());
+    }
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    public void test()
+    {
+        try {
+            // a rule disables triggering in its own thread then waits while this thread fires a rule
+            Thread ruleThread = new Thread("TestTriggerState rule thread")
+            {
+                public void run()
+                {
+                    blockingMethod();
+                }
+            };
+            ruleThread.start();
+            blocked.await();
+            triggerMethod("main thread while rule thread disabled");
+            release.countDown();
+            ruleThread.join();
+
+            // now disable triggering in this thread from outside any rule
+            boolean wasEnabled = Rule.disableTriggers();
+            log("disableTriggers : was enabled " + wasEnabled + " now enabled " + Rule.isTriggeringEnabled());
+            triggerMethod("main thread disabled");
+            Thread otherThread = new Thread("TestTriggerState other thread")
+            {
+                public void run()
+                {
+                    log("other thread enabled " + Rule.isTriggeringEnabled());
+                    triggerMethod("other thread while main thread disabled");
+                }
+            };
+            otherThread.start();
+            otherThread.join();
+            wasEnabled = Rule.enableTriggers();
+            log("enableTriggers : was enabled " + wasEnabled + " now enabled " + Rule.isTriggeringEnabled());
+            triggerMethod("main thread reenabled");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void blockingMethod()
+    {
+        log("inside TestTriggerState.blockingMethod");
+    }
+
+    public void triggerMethod(String caller)
+    {
+        log("inside TestTriggerState.triggerMethod for " + caller);
+    }
+
+    /**
+     * called from the rule injected into blockingMethod to let the main thread fire a rule
+     * while triggering is disabled in the rule thread
+     */
+    public void waitForMain() throws InterruptedException
+    {
+        blocked.countDown();
+        release.await();
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("inside TestTriggerState.triggerMethod for rule thread disabled");
+        logExpected("rule fired for main thread while rule thread disabled");
+        logExpected("inside TestTriggerState.triggerMethod for main thread while rule thread disabled");
+        logExpected("rule fired for rule thread reenabled");
+        logExpected("inside TestTriggerState.triggerMethod for rule thread reenabled");
+        logExpected("inside TestTriggerState.blockingMethod");
+        logExpected("disableTriggers : was enabled true now enabled false");
+        logExpected("inside TestTriggerState.triggerMethod for main thread disabled");
+        logExpected("other thread enabled true");
+        logExpected("rule fired for other thread while main thread disabled");
+        logExpected("inside TestTriggerState.triggerMethod for other thread while main thread disabled");
+        logExpected("enableTriggers : was enabled false now enabled true");
+        logExpected("rule fired for main thread reenabled");
+        logExpected("inside TestTriggerState.triggerMethod for main thread reenabled");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * class used to test bindings stored in the typed fields of a compiled helper adapter, including
+ * long and double values which occupy two stack slots and parameter, local and return value
+ * bindings whose names must be escaped to form a field name
+ */
+public class TestTypedBindings extends Test
+{
+    public TestTypedBindings()
+    {
+        super(TestTypedBindings.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            log("calling TestTypedBindings.compute(10, 1.5, 3)");
+            long result = compute(10L, 1.5D, 3);
+            log("called TestTypedBindings.compute(10, 1.5, 3) ==> " + result);
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public long compute(long a, double b, int c)
+    {
+        long sum = a + c;
+        log("inside TestTypedBindings.compute(" + a + ", " + b + ", " + c + ")");
+        return sum;
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestTypedBindings.compute(10, 1.5, 3)");
+        logExpected("entry wide 20 half 0.75 narrow 3");
+        logExpected("inside TestTypedBindings.compute(23, 23.75, 3)");
+        logExpected("exit total 26 params 23 23.75 count 4");
+        logExpected("called TestTypedBindings.compute(10, 1.5, 3) ==> 52");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Test to ensure a compiled rule whose only trigger value is an int parameter is passed that value
+ * directly. the trigger passes an Object array holding a boxed value when the direct path is not
+ * used so the test checks that firing the rule with a pooled helper allocates no memory.
+ */
+public class TestTypedCall extends Test
+{
+    public TestTypedCall()
+    {
+        super(TestTypedCall.class.getCanonicalName());
+    }
+
+    private final static int WARMUP = 20000;
+
+    private final static int ITERATIONS = 100000;
+
+    public void test()
+    {
+        try {
+            log("calling TestTypedCall.triggerMethod");
+            triggerMethod(-1);
+            // values outside the Integer cache so that boxing them would allocate
+            for (int i = 0; i < WARMUP; i++) {
+                triggerMethod(i + 1000);
+            }
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+            long id = Thread.currentThread().getId();
+            long before = threadBean.getThreadAllocatedBytes(id);
+            for (int i = 0; i < ITERATIONS; i++) {
+                triggerMethod(i + 1000);
+            }
+            long allocated = threadBean.getThreadAllocatedBytes(id) - before;
+            // every array path firing allocates at least an array and a boxed value
+            if (allocated < ITERATIONS) {
+                log("typed firings did not allocate");
+            } else {
+                log("typed firings allocated " + allocated + " bytes");
+            }
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerMethod(int value)
+    {
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestTypedCall.triggerMethod");
+        logExpected("triggered with -1");
+        logExpected("typed firings did not allocate");
+
+        return super.getExpected();
+    }
+}
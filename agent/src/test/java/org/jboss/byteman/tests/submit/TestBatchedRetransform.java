@@ -0,0 +1,133 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.tests.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test to ensure a rule which affects several classes is injected in batches when a retransform
+ * batch size is configured and that progress is reported back to the client
+ */
+public class TestBatchedRetransform extends Test
+{
+    public TestBatchedRetransform()
+    {
+        super(TestBatchedRetransform.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        Worker[] workers = new Worker[] { new FirstWorker(), new SecondWorker(), new ThirdWorker() };
+        Submit submit = new Submit();
+        List<ScriptText> scripts = new ArrayList<ScriptText>();
+        scripts.add(new ScriptText("batched", getRuleText()));
+
+        try {
+            String response = submit.addScripts(scripts);
+            if (response.contains("retransformed 3 of 3 classes")) {
+                log("progress reported");
+            }
+        } catch (Exception e) {
+            System.out.println("exception submitting script");
+            fail();
+        }
+
+        for (Worker worker : workers) {
+            worker.work(this);
+        }
+
+        try {
+            submit.deleteScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception deleting script");
+            fail();
+        }
+
+        checkOutput(true);
+    }
+
+    public String getRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("HELPER org.jboss.byteman.tests.helpers.Default\n");
+
+        buffer.append("RULE batched rule\n");
+        buffer.append("INTERFACE org.jboss.byteman.tests.submit.TestBatchedRetransform$Worker\n");
+        buffer.append("METHOD work\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"triggered in \" + $0.getClass().getSimpleName())\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public static interface Worker
+    {
+        public void work(TestBatchedRetransform test);
+    }
+
+    public static class FirstWorker implements Worker
+    {
+        public void work(TestBatchedRetransform test)
+        {
+            test.log("inside FirstWorker.work");
+        }
+    }
+
+    public static class SecondWorker implements Worker
+    {
+        public void work(TestBatchedRetransform test)
+        {
+            test.log("inside SecondWorker.work");
+        }
+    }
+
+    public static class ThirdWorker implements Worker
+    {
+        public void work(TestBatchedRetransform test)
+        {
+            test.log("inside ThirdWorker.work");
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("progress reported");
+        logExpected("triggered in FirstWorker");
+        logExpected("inside FirstWorker.work");
+        logExpected("triggered in SecondWorker");
+        logExpected("inside SecondWorker.work");
+        logExpected("triggered in ThirdWorker");
+        logExpected("inside ThirdWorker.work");
+
+        return super.getExpected();
+    }
+}
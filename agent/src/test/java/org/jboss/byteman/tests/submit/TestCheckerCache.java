@@ -0,0 +1,248 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.tests.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test to ensure the transformer can still check a super class which was loaded after the index of
+ * classes initiated by its loader was built and after many other classes were loaded by the same
+ * loader. the classes are generated and defined by a private loader which cannot supply class file
+ * resources. so, the only way to check the super is to use the checker recorded when it was
+ * transformed.
+ */
+public class TestCheckerCache extends Test
+{
+    public TestCheckerCache()
+    {
+        super(TestCheckerCache.class.getCanonicalName());
+    }
+
+    private final static String PACKAGE = "org/jboss/byteman/tests/submit/generated/";
+
+    /**
+     * the number of classes loaded between the super and its subclass
+     */
+    private final static int FILLER_COUNT = 5000;
+
+    private static boolean fired = false;
+
+    /**
+     * called from the rule injected into the subclass
+     */
+    public static void fired()
+    {
+        fired = true;
+    }
+
+    public void test()
+    {
+        Submit submit = new Submit();
+        List<ScriptText> scripts = new ArrayList<ScriptText>();
+        scripts.add(new ScriptText("checker", getRuleText()));
+
+        try {
+            submit.addScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception submitting script");
+            fail();
+        }
+
+        GeneratingLoader loader = new GeneratingLoader(TestCheckerCache.class.getClassLoader());
+        try {
+            // a class whose super cannot be found makes the transformer index the classes
+            // initiated by the loader before the super of interest is loaded
+            try {
+                loader.define("CheckerMissingSuper", PACKAGE + "CheckerMissing", false);
+            } catch (NoClassDefFoundError e) {
+                // expected
+            }
+            loader.define("CheckerBase", "java/lang/Object", true);
+            for (int i = 0; i < FILLER_COUNT; i++) {
+                loader.define("CheckerFiller" + i, "java/lang/Object", false);
+            }
+            log("defined " + FILLER_COUNT + " filler classes");
+            Class<?> subClass = loader.define("CheckerSub", PACKAGE + "CheckerBase", true);
+            Runnable runnable = (Runnable)subClass.newInstance();
+            runnable.run();
+            if (fired) {
+                log("rule fired in CheckerSub.run");
+            } else {
+                log("rule did not fire in CheckerSub.run");
+            }
+        } catch (Exception e) {
+            log(e);
+        }
+
+        try {
+            submit.deleteScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception deleting script");
+            fail();
+        }
+
+        checkOutput(true);
+    }
+
+    public String getRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("RULE checker cache rule\n");
+        buffer.append("CLASS ^" + PACKAGE.replace('/', '.') + "CheckerBase\n");
+        buffer.append("METHOD run\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO org.jboss.byteman.tests.submit.TestCheckerCache.fired()\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    /**
+     * a loader which defines generated classes and supplies no class file resources of its own
+     */
+    private static class GeneratingLoader extends ClassLoader
+    {
+        GeneratingLoader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        Class<?> define(String simpleName, String superName, boolean runnable) throws IOException
+        {
+            String name = PACKAGE + simpleName;
+            byte[] bytes = generate(name, superName, runnable);
+            return defineClass(name.replace('/', '.'), bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * generate the bytecode for a public class with a no-args constructor which optionally
+     * implements Runnable with an empty run method
+     * @param name the internal name of the class
+     * @param superName the internal name of the super
+     * @param runnable true if the class should implement Runnable
+     * @return the class file bytes
+     * @throws IOException never
+     */
+    private static byte[] generate(String name, String superName, boolean runnable) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(50);
+        // constant pool
+        out.writeShort(13);
+        writeUtf8(out, name);                   // 1
+        writeRef(out, 7, 1);                    // 2 this class
+        writeUtf8(out, superName);              // 3
+        writeRef(out, 7, 3);                    // 4 super class
+        writeUtf8(out, "<init>");               // 5
+        writeUtf8(out, "()V");                  // 6
+        writeRefs(out, 12, 5, 6);               // 7 <init>:()V
+        writeRefs(out, 10, 4, 7);               // 8 super.<init>:()V
+        writeUtf8(out, "Code");                 // 9
+        writeUtf8(out, "run");                  // 10
+        writeUtf8(out, "java/lang/Runnable");   // 11
+        writeRef(out, 7, 11);                   // 12 Runnable
+        // access, this and super
+        out.writeShort(0x21);
+        out.writeShort(2);
+        out.writeShort(4);
+        // interfaces
+        if (runnable) {
+            out.writeShort(1);
+            out.writeShort(12);
+        } else {
+            out.writeShort(0);
+        }
+        // fields
+        out.writeShort(0);
+        // methods
+        out.writeShort(runnable ? 2 : 1);
+        // public <init>() { super(); }
+        writeMethod(out, 5, 1, new byte[] { 0x2a, (byte)0xb7, 0x00, 0x08, (byte)0xb1 });
+        if (runnable) {
+            // public void run() { }
+            writeMethod(out, 10, 0, new byte[] { (byte)0xb1 });
+        }
+        // attributes
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeUtf8(DataOutputStream out, String value) throws IOException
+    {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void writeRef(DataOutputStream out, int tag, int index) throws IOException
+    {
+        out.writeByte(tag);
+        out.writeShort(index);
+    }
+
+    private static void writeRefs(DataOutputStream out, int tag, int index1, int index2) throws IOException
+    {
+        out.writeByte(tag);
+        out.writeShort(index1);
+        out.writeShort(index2);
+    }
+
+    private static void writeMethod(DataOutputStream out, int nameIndex, int maxStack, byte[] code) throws IOException
+    {
+        out.writeShort(0x01);
+        out.writeShort(nameIndex);
+        out.writeShort(6);
+        out.writeShort(1);
+        out.writeShort(9);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(1);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("defined " + FILLER_COUNT + " filler classes");
+        logExpected("rule fired in CheckerSub.run");
+
+        return super.getExpected();
+    }
+}
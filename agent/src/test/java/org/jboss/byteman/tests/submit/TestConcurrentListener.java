@@ -0,0 +1,280 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.tests.Test;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test to ensure the agent listener serves read only requests while a slow upload is in progress
+ * and applies overlapping uploads in order. the upload is slowed down by configuring a retransform
+ * batch size of one and a long pause between batches. the test also ensures read only requests are
+ * served while more update requests than the listener has update workers are stalled by their clients.
+ */
+public class TestConcurrentListener extends Test
+{
+    public TestConcurrentListener()
+    {
+        super(TestConcurrentListener.class.getCanonicalName());
+    }
+
+    private volatile boolean firstLoaded = false;
+
+    private volatile boolean firstLoadedBeforeSecond = false;
+
+    private volatile boolean failed = false;
+
+    /**
+     * the number of stalled update requests. this exceeds the number of listener update workers
+     */
+    private final static int STALLED_UPDATES = 9;
+
+    public void test()
+    {
+        Worker[] workers = new Worker[] { new FirstWorker(), new SecondWorker(), new ThirdWorker() };
+        Ordered ordered = new Ordered();
+        final Submit submit = new Submit();
+        final List<ScriptText> firstScripts = new ArrayList<ScriptText>();
+        firstScripts.add(new ScriptText("concurrent", getRuleText()));
+        firstScripts.add(new ScriptText("ordered", getOrderedRuleText("first")));
+        final List<ScriptText> secondScripts = new ArrayList<ScriptText>();
+        secondScripts.add(new ScriptText("ordered", getOrderedRuleText("second")));
+
+        Thread firstLoader = new Thread("TestConcurrentListener first loader")
+        {
+            public void run()
+            {
+                try {
+                    submit.addScripts(firstScripts);
+                } catch (Exception e) {
+                    failed = true;
+                }
+                firstLoaded = true;
+            }
+        };
+
+        Thread secondLoader = new Thread("TestConcurrentListener second loader")
+        {
+            public void run()
+            {
+                try {
+                    submit.addScripts(secondScripts);
+                } catch (Exception e) {
+                    failed = true;
+                }
+                firstLoadedBeforeSecond = firstLoaded;
+            }
+        };
+
+        firstLoader.start();
+
+        try {
+            // the rules are listed as soon as the upload has installed them and before
+            // it starts retransforming so wait until they show up
+            String rules = submit.listAllRules();
+            for (int i = 0; i < 100 && !firstLoaded && rules.indexOf("concurrent rule") < 0; i++) {
+                Thread.sleep(20);
+                rules = submit.listAllRules();
+            }
+            if (!firstLoaded && rules.indexOf("concurrent rule") >= 0) {
+                log("rules listed during upload");
+            }
+            String version = submit.getAgentVersion();
+            if (!firstLoaded && version != null) {
+                log("version served during upload");
+            }
+            // a second upload sent now has to wait for the first one to be applied
+            if (!firstLoaded) {
+                log("second upload sent during first upload");
+            }
+            secondLoader.start();
+            firstLoader.join();
+            secondLoader.join();
+        } catch (Exception e) {
+            System.out.println("exception querying agent " + e);
+            fail();
+        }
+
+        if (failed) {
+            System.out.println("exception submitting script");
+            fail();
+        }
+
+        if (firstLoadedBeforeSecond) {
+            log("uploads applied in order");
+        }
+
+        listWhileStalled(submit);
+
+        for (Worker worker : workers) {
+            worker.work(this);
+        }
+
+        ordered.order(this);
+
+        try {
+            submit.deleteScripts(secondScripts);
+            submit.deleteScripts(firstScripts.subList(0, 1));
+        } catch (Exception e) {
+            System.out.println("exception deleting script");
+            fail();
+        }
+
+        checkOutput(true);
+    }
+
+    /**
+     * open connections which start an upload and then send nothing more and check that a listing
+     * is served without waiting for them to time out
+     * @param submit the client used to request the listing
+     */
+    private void listWhileStalled(Submit submit)
+    {
+        List<Socket> stalled = new ArrayList<Socket>();
+        try {
+            for (int i = 0; i < STALLED_UPDATES; i++) {
+                Socket socket = new Socket(Submit.DEFAULT_ADDRESS, Submit.DEFAULT_PORT);
+                stalled.add(socket);
+                Writer writer = new OutputStreamWriter(socket.getOutputStream());
+                writer.write("LOAD\nSCRIPT stalled\n");
+                writer.flush();
+            }
+            long start = System.currentTimeMillis();
+            String rules = submit.listAllRules();
+            // a listing queued behind the stalled uploads would only be served once they time out
+            if (rules.indexOf("concurrent rule") >= 0 && System.currentTimeMillis() - start < 10000) {
+                log("rules listed while uploads stalled");
+            }
+        } catch (Exception e) {
+            System.out.println("exception listing rules " + e);
+            fail();
+        } finally {
+            for (Socket socket : stalled) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    public String getRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("HELPER org.jboss.byteman.tests.helpers.Default\n");
+
+        buffer.append("RULE concurrent rule\n");
+        buffer.append("INTERFACE org.jboss.byteman.tests.submit.TestConcurrentListener$Worker\n");
+        buffer.append("METHOD work\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"triggered in \" + $0.getClass().getSimpleName())\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public String getOrderedRuleText(String version)
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("HELPER org.jboss.byteman.tests.helpers.Default\n");
+
+        buffer.append("RULE ordered rule\n");
+        buffer.append("CLASS org.jboss.byteman.tests.submit.TestConcurrentListener$Ordered\n");
+        buffer.append("METHOD order\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"triggered " + version + " version\")\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public static class Ordered
+    {
+        public void order(TestConcurrentListener test)
+        {
+            test.log("inside Ordered.order");
+        }
+    }
+
+    public static interface Worker
+    {
+        public void work(TestConcurrentListener test);
+    }
+
+    public static class FirstWorker implements Worker
+    {
+        public void work(TestConcurrentListener test)
+        {
+            test.log("inside FirstWorker.work");
+        }
+    }
+
+    public static class SecondWorker implements Worker
+    {
+        public void work(TestConcurrentListener test)
+        {
+            test.log("inside SecondWorker.work");
+        }
+    }
+
+    public static class ThirdWorker implements Worker
+    {
+        public void work(TestConcurrentListener test)
+        {
+            test.log("inside ThirdWorker.work");
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("rules listed during upload");
+        logExpected("version served during upload");
+        logExpected("second upload sent during first upload");
+        logExpected("uploads applied in order");
+        logExpected("rules listed while uploads stalled");
+        logExpected("triggered in FirstWorker");
+        logExpected("inside FirstWorker.work");
+        logExpected("triggered in SecondWorker");
+        logExpected("inside SecondWorker.work");
+        logExpected("triggered in ThirdWorker");
+        logExpected("inside ThirdWorker.work");
+        logExpected("triggered second version");
+        logExpected("inside Ordered.order");
+
+        return super.getExpected();
+    }
+}
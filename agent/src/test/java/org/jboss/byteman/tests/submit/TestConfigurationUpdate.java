@@ -0,0 +1,157 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.Transformer;
+import org.jboss.byteman.agent.submit.RuleMetrics;
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.tests.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Test to ensure that a configuration property updated by the listener is published in a new
+ * configuration snapshot which the agent observes immediately, that the new snapshot retains the
+ * values of settings which were not updated and that deleting a property reverts its setting.
+ * metrics timing is used because a rule consults it on every firing.
+ */
+public class TestConfigurationUpdate extends Test
+{
+    public TestConfigurationUpdate()
+    {
+        super(TestConfigurationUpdate.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        Submit submit = new Submit();
+        List<ScriptText> scripts = new ArrayList<ScriptText>();
+        scripts.add(new ScriptText("configuration", getRuleText()));
+
+        try {
+            submit.addScripts(scripts);
+
+            logConfiguration("initial");
+            fireAndCheckTiming(submit, 1);
+
+            setProperty(submit, Transformer.METRICS_TIMING, "true");
+            logConfiguration("timing set");
+            fireAndCheckTiming(submit, 2);
+
+            setProperty(submit, Transformer.DEBUG, "true");
+            logConfiguration("debug set");
+
+            // an empty value deletes the property
+            setProperty(submit, Transformer.METRICS_TIMING, "");
+            logConfiguration("timing deleted");
+            fireAndCheckTiming(submit, 3);
+
+            setProperty(submit, Transformer.DEBUG, "");
+
+            submit.deleteScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception updating configuration " + e);
+            fail();
+        }
+
+        checkOutput(true);
+    }
+
+    private void setProperty(Submit submit, String name, String value) throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty(name, value);
+        submit.setSystemProperties(properties);
+    }
+
+    private void logConfiguration(String label)
+    {
+        log(label + " : metrics timing " + Transformer.isMetricsTiming() + " debug " + Transformer.isDebug());
+    }
+
+    /**
+     * fire the rule and check whether its execution was timed
+     * @param submit the client used to retrieve the rule metrics
+     * @param value the value to pass to the trigger method
+     */
+    private void fireAndCheckTiming(Submit submit, int value) throws Exception
+    {
+        long before = getElapsedNanos(submit);
+        triggerMethod(value);
+        long after = getElapsedNanos(submit);
+        log("firing " + value + " timed " + (after > before));
+    }
+
+    private long getElapsedNanos(Submit submit) throws Exception
+    {
+        for (RuleMetrics ruleMetrics : submit.getRuleMetrics()) {
+            if (ruleMetrics.getRuleName().equals("configuration rule")) {
+                return ruleMetrics.getElapsedNanos();
+            }
+        }
+        throw new Exception("no metrics for configuration rule");
+    }
+
+    public String getRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("RULE configuration rule\n");
+        buffer.append("CLASS TestConfigurationUpdate\n");
+        buffer.append("METHOD triggerMethod\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $0.log(\"fired for \" + $1)\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public void triggerMethod(int value)
+    {
+        log("inside triggerMethod " + value);
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("initial : metrics timing false debug false");
+        logExpected("fired for 1");
+        logExpected("inside triggerMethod 1");
+        logExpected("firing 1 timed false");
+        logExpected("timing set : metrics timing true debug false");
+        logExpected("fired for 2");
+        logExpected("inside triggerMethod 2");
+        logExpected("firing 2 timed true");
+        logExpected("debug set : metrics timing true debug true");
+        logExpected("timing deleted : metrics timing false debug true");
+        logExpected("fired for 3");
+        logExpected("inside triggerMethod 3");
+        logExpected("firing 3 timed false");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.tests.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test to ensure rules uploaded to an already loaded class are type checked and compiled before
+ * they are first triggered when eager loading is enabled
+ */
+public class TestEagerLoad extends Test
+{
+    public TestEagerLoad()
+    {
+        super(TestEagerLoad.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        Target target = new Target();
+        Submit submit = new Submit();
+        List<ScriptText> scripts = new ArrayList<ScriptText>();
+        scripts.add(new ScriptText("eager", getRuleText()));
+
+        try {
+            submit.addScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception submitting script");
+            fail();
+        }
+
+        // preparation happens in the background so allow it a little time to complete
+
+        try {
+            int compiled = 0;
+            for (int i = 0; i < 100 && compiled < 2; i++) {
+                String listing = submit.listAllRules();
+                compiled = countOccurrences(listing, "compiled successfully");
+                if (compiled < 2) {
+                    Thread.sleep(50);
+                }
+            }
+            if (compiled == 2) {
+                log("rules prepared before triggering");
+            }
+        } catch (Exception e) {
+            System.out.println("exception listing rules " + e);
+            fail();
+        }
+
+        target.first(this);
+        target.second(this);
+
+        try {
+            submit.deleteScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception deleting script");
+            fail();
+        }
+
+        checkOutput(true);
+    }
+
+    private static int countOccurrences(String text, String pattern)
+    {
+        int count = 0;
+        int idx = text.indexOf(pattern);
+        while (idx >= 0) {
+            count++;
+            idx = text.indexOf(pattern, idx + pattern.length());
+        }
+        return count;
+    }
+
+    public String getRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("HELPER org.jboss.byteman.tests.helpers.Default\n");
+
+        buffer.append("RULE eager rule 1\n");
+        buffer.append("CLASS org.jboss.byteman.tests.submit.TestEagerLoad$Target\n");
+        buffer.append("METHOD first\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"triggered first\")\n");
+        buffer.append("ENDRULE\n");
+
+        buffer.append("RULE eager rule 2\n");
+        buffer.append("CLASS org.jboss.byteman.tests.submit.TestEagerLoad$Target\n");
+        buffer.append("METHOD second\n");
+        buffer.append("AT EXIT\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"triggered second\")\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public static class Target
+    {
+        public void first(TestEagerLoad test)
+        {
+            test.log("inside first");
+        }
+
+        public void second(TestEagerLoad test)
+        {
+            test.log("inside second");
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("rules prepared before triggering");
+        logExpected("triggered first");
+        logExpected("inside first");
+        logExpected("inside second");
+        logExpected("triggered second");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.tests.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test to ensure that a class hierarchy which the transformer found to contain no rule targets
+ * is checked again once new rules are loaded. class Rejected is loaded with no rules installed,
+ * recording a no match verdict for it and its super. rules are then loaded for the super and for
+ * an interface Rejected implements. class Late, a subclass of Rejected loaded afterwards, must be
+ * injected with both rules.
+ */
+public class TestNoMatchGeneration extends Test
+{
+    public TestNoMatchGeneration()
+    {
+        super(TestNoMatchGeneration.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        Submit submit = new Submit();
+        List<ScriptText> scripts = new ArrayList<ScriptText>();
+        scripts.add(new ScriptText("nomatch", getRuleText()));
+
+        // load the rejected hierarchy before any rules exist
+        new Rejected().run(this);
+
+        try {
+            submit.addScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception submitting script");
+            fail();
+        }
+
+        Late late = new Late();
+        late.run(this);
+        late.call(this);
+
+        try {
+            submit.deleteScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception deleting script");
+            fail();
+        }
+
+        checkOutput(true);
+    }
+
+    public String getRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("RULE superclass rule\n");
+        buffer.append("CLASS ^org.jboss.byteman.tests.submit.TestNoMatchGeneration$NoMatchBase\n");
+        buffer.append("METHOD run\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"superclass rule fired in \" + $0.getClass().getSimpleName())\n");
+        buffer.append("ENDRULE\n");
+        buffer.append("RULE interface rule\n");
+        buffer.append("INTERFACE ^org.jboss.byteman.tests.submit.TestNoMatchGeneration$NoMatchInterface\n");
+        buffer.append("METHOD call\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"interface rule fired in \" + $0.getClass().getSimpleName())\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public interface NoMatchInterface
+    {
+        public void call(TestNoMatchGeneration test);
+    }
+
+    public static class NoMatchBase
+    {
+        public void run(TestNoMatchGeneration test)
+        {
+            test.log("inside NoMatchBase.run");
+        }
+
+        public void call(TestNoMatchGeneration test)
+        {
+            test.log("inside NoMatchBase.call");
+        }
+    }
+
+    public static class Rejected extends NoMatchBase implements NoMatchInterface
+    {
+    }
+
+    public static class Late extends Rejected
+    {
+        public void run(TestNoMatchGeneration test)
+        {
+            test.log("inside Late.run");
+        }
+
+        public void call(TestNoMatchGeneration test)
+        {
+            test.log("inside Late.call");
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("inside NoMatchBase.run");
+        logExpected("superclass rule fired in Late");
+        logExpected("inside Late.run");
+        logExpected("interface rule fired in Late");
+        logExpected("inside Late.call");
+
+        return super.getExpected();
+    }
+}
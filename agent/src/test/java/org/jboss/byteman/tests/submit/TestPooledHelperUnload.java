@@ -0,0 +1,197 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.tests.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Test to ensure that a helper pooled by a rule firing in this thread does not stop the rule, and
+ * the loader of the class it was injected into, being collected once the rule has been unloaded
+ */
+public class TestPooledHelperUnload extends Test
+{
+    public TestPooledHelperUnload()
+    {
+        super(TestPooledHelperUnload.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        Submit submit = new Submit();
+        List<ScriptText> scripts = new ArrayList<ScriptText>();
+        scripts.add(new ScriptText("pooled", getRuleText()));
+
+        try {
+            submit.addScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception submitting script");
+            fail();
+        }
+
+        WeakReference<ClassLoader> loaderRef = fireInLoader(3);
+
+        try {
+            submit.deleteScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception deleting script");
+            fail();
+        }
+
+        for (int i = 0; i < 20 && loaderRef.get() != null; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+
+        if (loaderRef.get() == null) {
+            log("loader collected");
+        } else {
+            log("loader still reachable");
+        }
+
+        checkOutput(true);
+    }
+
+    /**
+     * load the target class into a private loader and call it so that the rule fires and pools
+     * its helper in this thread
+     * @param count the number of times to call the target
+     * @return a weak reference to the private loader
+     */
+    private WeakReference<ClassLoader> fireInLoader(int count)
+    {
+        TargetLoader loader = new TargetLoader(TestPooledHelperUnload.class.getClassLoader());
+        try {
+            Class<?> targetClass = loader.loadClass(TARGET_NAME);
+            Callable<?> target = (Callable<?>)targetClass.newInstance();
+            for (int i = 0; i < count; i++) {
+                log("target returned " + target.call());
+            }
+        } catch (Exception e) {
+            log(e);
+            fail();
+        }
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    public String getRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("RULE pooled helper rule\n");
+        buffer.append("CLASS " + TARGET_NAME + "\n");
+        buffer.append("METHOD call\n");
+        buffer.append("AT EXIT\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO return \"fired\"\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    private static final String TARGET_NAME = Target.class.getName();
+
+    public static class Target implements Callable<Object>
+    {
+        public Object call()
+        {
+            return "not fired";
+        }
+    }
+
+    /**
+     * a loader which defines its own copy of the target class and delegates everything else
+     */
+    private static class TargetLoader extends ClassLoader
+    {
+        TargetLoader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            if (!TARGET_NAME.equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                byte[] bytes = readClassBytes(name);
+                clazz = defineClass(name, bytes, 0, bytes.length);
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+
+        private byte[] readClassBytes(String name) throws ClassNotFoundException
+        {
+            InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (is == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, read);
+                }
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            } finally {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("target returned fired");
+        logExpected("target returned fired");
+        logExpected("target returned fired");
+        logExpected("loader collected");
+
+        return super.getExpected();
+    }
+}
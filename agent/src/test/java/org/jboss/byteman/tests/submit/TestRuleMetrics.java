@@ -0,0 +1,204 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2009, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.submit.RuleMetrics;
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.rule.exception.ExecuteException;
+import org.jboss.byteman.tests.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test to ensure per rule execution metrics are reported by the agent listener. rule 3 has a
+ * condition which is evaluated by the trigger code when inline conditions are enabled so its
+ * counts must be the same whether or not the rule engine is called when the condition fails.
+ */
+public class TestRuleMetrics extends Test
+{
+    public TestRuleMetrics()
+    {
+        super(TestRuleMetrics.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        Submit submit = new Submit();
+        List<ScriptText> scripts = new ArrayList<ScriptText>();
+        scripts.add(new ScriptText("metrics", getRuleText()));
+
+        try {
+            submit.addScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception submitting script");
+            fail();
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            triggerMethod(i);
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            inlineMethod(i);
+        }
+
+        try {
+            errorMethod();
+        } catch (ExecuteException e) {
+            log("caught ExecuteException");
+        }
+
+        try {
+            List<RuleMetrics> metrics = submit.getRuleMetrics();
+            // the agent does not list rules in any specific order
+            for (String ruleName : new String[] { "metrics rule 1", "metrics rule 2", "metrics rule 3" }) {
+                for (RuleMetrics ruleMetrics : metrics) {
+                    if (ruleMetrics.getRuleName().equals(ruleName)) {
+                        checkMBean(ruleMetrics);
+                        log(ruleMetrics.getRuleName() +
+                                " triggered " + ruleMetrics.getTriggerCount() +
+                                " true " + ruleMetrics.getConditionTrueCount() +
+                                " false " + ruleMetrics.getConditionFalseCount() +
+                                " errors " + ruleMetrics.getErrorCount());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("exception retrieving metrics " + e);
+            fail();
+        }
+
+        try {
+            submit.deleteScripts(scripts);
+        } catch (Exception e) {
+            System.out.println("exception deleting script");
+            fail();
+        }
+
+        checkOutput(true);
+    }
+
+    /**
+     * when the agent has registered a metrics MBean check that it reports the same counts
+     * @param ruleMetrics the metrics retrieved via the listener
+     */
+    private void checkMBean(RuleMetrics ruleMetrics) throws Exception
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.jboss.byteman:type=RuleMetrics");
+        if (!server.isRegistered(name)) {
+            return;
+        }
+        Object[] params = new Object[] { ruleMetrics.getRuleName() };
+        String[] signature = new String[] { String.class.getName() };
+        Long triggerCount = (Long)server.invoke(name, "getTriggerCount", params, signature);
+        Long errorCount = (Long)server.invoke(name, "getErrorCount", params, signature);
+        Long elapsedNanos = (Long)server.invoke(name, "getElapsedNanos", params, signature);
+        if (triggerCount.longValue() != ruleMetrics.getTriggerCount() ||
+                errorCount.longValue() != ruleMetrics.getErrorCount() ||
+                elapsedNanos.longValue() <= 0) {
+            log("MBean metrics mismatch for " + ruleMetrics.getRuleName());
+        }
+    }
+
+    public String getRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("HELPER org.jboss.byteman.tests.helpers.Default\n");
+
+        buffer.append("RULE metrics rule 1\n");
+        buffer.append("CLASS TestRuleMetrics\n");
+        buffer.append("METHOD triggerMethod\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("BIND test : TestRuleMetrics = $0\n");
+        buffer.append("IF $1 > 1\n");
+        buffer.append("DO test.log(\"fired for \" + $1)\n");
+        buffer.append("ENDRULE\n");
+
+        buffer.append("RULE metrics rule 2\n");
+        buffer.append("CLASS TestRuleMetrics\n");
+        buffer.append("METHOD errorMethod\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("BIND test : TestRuleMetrics = $0\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO test.explode()\n");
+        buffer.append("ENDRULE\n");
+
+        buffer.append("RULE metrics rule 3\n");
+        buffer.append("CLASS TestRuleMetrics\n");
+        buffer.append("METHOD inlineMethod\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("IF $1 < 3\n");
+        buffer.append("DO $0.log(\"inline fired for \" + $1)\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public void triggerMethod(int value)
+    {
+        log("inside triggerMethod " + value);
+    }
+
+    public void inlineMethod(int value)
+    {
+        log("inside inlineMethod " + value);
+    }
+
+    public void errorMethod()
+    {
+        log("inside errorMethod");
+    }
+
+    public void explode()
+    {
+        throw new IllegalStateException("explode");
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("inside triggerMethod 1");
+        logExpected("fired for 2");
+        logExpected("inside triggerMethod 2");
+        logExpected("fired for 3");
+        logExpected("inside triggerMethod 3");
+        logExpected("inline fired for 1");
+        logExpected("inside inlineMethod 1");
+        logExpected("inline fired for 2");
+        logExpected("inside inlineMethod 2");
+        logExpected("inside inlineMethod 3");
+        logExpected("caught ExecuteException");
+        logExpected("metrics rule 1 triggered 3 true 2 false 1 errors 0");
+        logExpected("metrics rule 2 triggered 1 true 1 false 0 errors 1");
+        logExpected("metrics rule 3 triggered 3 true 2 false 1 errors 0");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2016, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*
+* @authors Andrew Dinn
+*/
+package org.jboss.byteman.tests.submit;
+
+import org.jboss.byteman.agent.submit.ScriptText;
+import org.jboss.byteman.agent.submit.Submit;
+import org.jboss.byteman.tests.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Test to ensure that a trigger call left behind in a frame which was running when its rule was
+ * unloaded does not fire a different rule loaded afterwards. the old trigger method is still
+ * executing the original code when the rule is deleted so retransformation cannot remove the
+ * call. the new rule is loaded before the old code reaches the call so it is allocated the
+ * rule table entry released by the old rule.
+ */
+public class TestStaleTrigger extends Test
+{
+    public TestStaleTrigger()
+    {
+        super(TestStaleTrigger.class.getCanonicalName());
+    }
+
+    private volatile boolean failed = false;
+
+    public void test()
+    {
+        Submit submit = new Submit();
+        List<ScriptText> oldScripts = new ArrayList<ScriptText>();
+        oldScripts.add(new ScriptText("old", getOldRuleText()));
+        List<ScriptText> newScripts = new ArrayList<ScriptText>();
+        newScripts.add(new ScriptText("new", getNewRuleText()));
+
+        final Parked parked = new Parked();
+        // load the target of the new rule now so the rule is injected as soon as it is uploaded
+        Other other = new Other();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final TestStaleTrigger test = this;
+
+        Thread parker = new Thread("TestStaleTrigger parker")
+        {
+            public void run()
+            {
+                try {
+                    parked.park(test, entered, release);
+                } catch (Throwable t) {
+                    System.out.println("parked thread caught " + t);
+                    failed = true;
+                }
+            }
+        };
+
+        try {
+            submit.addScripts(oldScripts);
+            parker.start();
+            entered.await();
+            // the parked frame keeps running the injected code after this
+            submit.deleteScripts(oldScripts);
+            submit.addScripts(newScripts);
+            release.countDown();
+            parker.join();
+            other.other(this, 5);
+            submit.deleteScripts(newScripts);
+        } catch (Exception e) {
+            System.out.println("exception updating rules " + e);
+            fail();
+        }
+
+        if (failed) {
+            fail();
+        }
+
+        checkOutput(true);
+    }
+
+    public String getOldRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("RULE old rule\n");
+        buffer.append("CLASS org.jboss.byteman.tests.submit.TestStaleTrigger$Parked\n");
+        buffer.append("METHOD park\n");
+        buffer.append("AT EXIT\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"old rule fired\")\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public String getNewRuleText()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("RULE new rule\n");
+        buffer.append("CLASS org.jboss.byteman.tests.submit.TestStaleTrigger$Other\n");
+        buffer.append("METHOD other(TestStaleTrigger, int)\n");
+        buffer.append("AT ENTRY\n");
+        buffer.append("BIND value : int = $2\n");
+        buffer.append("IF TRUE\n");
+        buffer.append("DO $1.log(\"new rule fired with \" + value)\n");
+        buffer.append("ENDRULE\n");
+
+        return buffer.toString();
+    }
+
+    public static class Parked
+    {
+        public void park(TestStaleTrigger test, CountDownLatch entered, CountDownLatch release) throws InterruptedException
+        {
+            test.log("inside Parked.park");
+            entered.countDown();
+            release.await();
+            test.log("leaving Parked.park");
+        }
+    }
+
+    public static class Other
+    {
+        public void other(TestStaleTrigger test, int value)
+        {
+            test.log("inside Other.other");
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("inside Parked.park");
+        logExpected("leaving Parked.park");
+        logExpected("new rule fired with 5");
+        logExpected("inside Other.other");
+
+        return super.getExpected();
+    }
+}
@@ -30,6 +30,7 @@
 @rem        bmsubmit [-o outfile] [-p port] [-h host] -c
 @rem        bmsubmit [-o outfile] [-p port] [-h host] -y [prop1[=[value1]]. . .]
 @rem        bmsubmit [-o outfile] [-p port] [-h host] -v
+@rem        bmsubmit [-o outfile] [-p port] [-h host] -m
 @rem   -o redirects output from System.out to outfile
 @rem   -p specifies the listener port (default 9091)
 @rem   -h specifies the listener host name (default localhost)
@@ -52,6 +53,8 @@
 @rem
 @rem   -v print the version of the byteman agent and this client 
 @rem
+@rem   -m print the execution metrics of all installed rules
+@rem
 @rem -----------------------------------------------------------------------------------
 if "%OS%" == "Windows_NT" setlocal
 
@@ -84,6 +87,7 @@ echo        bmsubmit [-o outfile] [-p port] [-h host] [-b ^| -s] bootjar1 . . .
 echo        bmsubmit [-o outfile] [-p port] [-h host] -c
 echo        bmsubmit [-o outfile] [-p port] [-h host] -y [prop1[=[value1]]. . .]
 echo        bmsubmit [-o outfile] [-p port] [-h host] -v
+echo        bmsubmit [-o outfile] [-p port] [-h host] -m
 echo   -o redirects output from System.out to outfile
 echo   -p specifies the listener port (default 9091)
 echo   -h specifies the listener host name (default localhost)
@@ -105,4 +109,6 @@ echo        prop= sets system property 'prop' to an empty string
 echo        prop unsets system property 'prop'
 echo.
 echo   -v print the version of the byteman agent and this client 
+echo.
+echo   -m print the execution metrics of all installed rules
 goto exitBatch
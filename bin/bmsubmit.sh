@@ -29,6 +29,7 @@
 #        bmsubmit [-o outfile] [-p port] [-h host] -c
 #        bmsubmit [-o outfile] [-p port] [-h host] -y [prop1[=[value1]]. . .]
 #        bmsubmit [-o outfile] [-p port] [-h host] -v
+#        bmsubmit [-o outfile] [-p port] [-h host] -m
 #   -o redirects output from System.out to outfile
 #   -p specifies the listener port (default 9091)
 #   -h specifies the listener host name (default localhost)
@@ -51,6 +52,8 @@
 #
 #   -v print the version of the byteman agent and this client 
 #
+#   -m print the execution metrics of all installed rules
+#
 # use BYTEMAN_HOME to locate installed byteman release
 if [ -z "$BYTEMAN_HOME" ]; then
 # use the root of the path to this file to locate the byteman jar
@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ * (C) 2010,
+ * @authors Andrew Dinn
+ */
+
+
+package org.jboss.byteman.agent.submit;
+
+/**
+ * storage for the execution metrics reported by the agent for an installed rule
+ */
+public class RuleMetrics
+{
+    private String ruleName;
+    private long triggerCount;
+    private long conditionTrueCount;
+    private long conditionFalseCount;
+    private long errorCount;
+    private long elapsedNanos;
+
+    public RuleMetrics(String ruleName, long triggerCount, long conditionTrueCount, long conditionFalseCount, long errorCount, long elapsedNanos)
+    {
+        this.ruleName = ruleName;
+        this.triggerCount = triggerCount;
+        this.conditionTrueCount = conditionTrueCount;
+        this.conditionFalseCount = conditionFalseCount;
+        this.errorCount = errorCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    /**
+     * @return the number of times the rule was entered from trigger code
+     */
+    public long getTriggerCount() {
+        return triggerCount;
+    }
+
+    /**
+     * @return the number of times the rule condition was true and the rule action was executed
+     */
+    public long getConditionTrueCount() {
+        return conditionTrueCount;
+    }
+
+    /**
+     * @return the number of times the rule condition was false
+     */
+    public long getConditionFalseCount() {
+        return conditionFalseCount;
+    }
+
+    /**
+     * @return the number of times execution of the rule failed with an unexpected exception
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the cumulative time in nanoseconds spent executing the rule or 0 if timing was not enabled
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
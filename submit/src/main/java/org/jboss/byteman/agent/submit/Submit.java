@@ -176,6 +176,72 @@ public class Submit
         return submitRequest("LIST\n");
     }
 
+    /**
+     * Tells the Byteman agent to list the execution metrics for all deployed rules.
+     *
+     * @return the metrics for all the rules deployed in the Byteman agent
+     *
+     * @throws Exception
+     *             if the request failed
+     */
+    public String listRuleMetrics() throws Exception {
+        return submitRequest("METRICS\n");
+    }
+
+    /**
+     * Gets the execution metrics for all deployed rules from the agent just as
+     * {@link #listRuleMetrics()}, but returns them as one metrics object per rule.
+     *
+     * @return the metrics for all the rules deployed in the Byteman agent
+     *         in the order in which the agent listed them
+     *
+     * @throws Exception
+     *             if the request failed
+     */
+    public List<RuleMetrics> getRuleMetrics() throws Exception {
+        List<RuleMetrics> metrics = new ArrayList<RuleMetrics>();
+        Map<String, Long> values = null;
+        String ruleName = null;
+
+        String results = listRuleMetrics();
+        BufferedReader reader = new BufferedReader(new StringReader(results));
+        String line = reader.readLine();
+        while (line != null) {
+            if (line.startsWith("RULE ")) {
+                if (ruleName != null) {
+                    metrics.add(createRuleMetrics(ruleName, values));
+                }
+                ruleName = line.substring("RULE ".length());
+                values = new HashMap<String, Long>();
+            } else if (ruleName != null) {
+                int idx = line.lastIndexOf(": ");
+                if (idx < 0) {
+                    throw new Exception("Invalid metrics line [" + line + "]. Full response below:\n" + results);
+                }
+                values.put(line.substring(0, idx), Long.valueOf(line.substring(idx + 2).trim()));
+            }
+            line = reader.readLine();
+        }
+        if (ruleName != null) {
+            metrics.add(createRuleMetrics(ruleName, values));
+        }
+        return metrics;
+    }
+
+    private static RuleMetrics createRuleMetrics(String ruleName, Map<String, Long> values) {
+        return new RuleMetrics(ruleName,
+                metricsValue(values, "triggered"),
+                metricsValue(values, "condition true"),
+                metricsValue(values, "condition false"),
+                metricsValue(values, "errors"),
+                metricsValue(values, "elapsed nanos"));
+    }
+
+    private static long metricsValue(Map<String, Long> values, String key) {
+        Long value = values.get(key);
+        return (value != null ? value.longValue() : 0L);
+    }
+
     /**
      * Gets all deployed rules from the agent just as
      * {@link #listAllRules()}, but will return the rules
@@ -987,6 +1053,7 @@ public class Submit
         boolean showVersion = false;
         boolean showAddedClassloaderJars = false;
         boolean sysProps = false;
+        boolean showMetrics = false;
         int optionCount = 0;
         PrintStream out = System.out;
 
@@ -1059,6 +1126,10 @@ public class Submit
                 sysProps = true;
                 startIdx++;
                 optionCount++;
+            } else if (args[startIdx].equals("-m")) {
+                showMetrics = true;
+                startIdx++;
+                optionCount++;
             } else {
                 break;
             }
@@ -1074,6 +1145,12 @@ public class Submit
             usage(out, 1);
         }
 
+        // metrics are always listed for all rules
+
+        if (startIdx != maxIdx && showMetrics) {
+            usage(out, 1);
+        }
+
         Submit client = new Submit(hostname, port, out);
         String results = null;
         List<String> argsList = null;
@@ -1083,6 +1160,8 @@ public class Submit
                 String agentVersion = client.getAgentVersion();
                 String clientVersion = client.getClientVersion();
                 results = "Agent Version: " + agentVersion + "\nClient Version: " + clientVersion;
+            } else if (showMetrics) {
+                results = client.listRuleMetrics();
             } else if (showAddedClassloaderJars) {
                 List<String> bootJars = client.getLoadedBootClassloaderJars();
                 List<String> sysJars = client.getLoadedSystemClassloaderJars();
@@ -1175,6 +1254,7 @@ public class Submit
         out.println("        Submit [-o outfile] [-p port] [-h hostname] [-c]");
         out.println("        Submit [-o outfile] [-p port] [-h hostname] [-y] [prop1[=[value1]]. . .]");
         out.println("        Submit [-o outfile] [-p port] [-h hostname] [-v]");
+        out.println("        Submit [-o outfile] [-p port] [-h hostname] [-m]");
         out.println("        -o redirects output from System.out to outfile");
         out.println("        -p specifies listener port");
         out.println("        -h specifies listener host");
@@ -1191,6 +1271,7 @@ public class Submit
         out.println("             prop= sets system property 'prop' to an empty string");
         out.println("             prop unsets system property 'prop'");
         out.println("        -v prints the version of the byteman agent and this client");
+        out.println("        -m prints the execution metrics of all currently loaded rules");
         if (out != System.out) {
             out.close();
         }